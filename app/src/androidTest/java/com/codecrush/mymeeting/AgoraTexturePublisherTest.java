@@ -0,0 +1,28 @@
+package com.codecrush.mymeeting;
+
+import android.graphics.Matrix;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pins the texture transform to the readback path's orientation: glReadPixels delivers the
+ * composite bottom row first, so texture frames must be sent with t flipped for both publish
+ * modes to stream the same way up.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AgoraTexturePublisherTest {
+    @Test
+    public void transform_flipsRowsAndKeepsColumns() {
+        Matrix flip = AgoraTexturePublisher.verticalFlip();
+        float[] points = {0f, 0f, 1f, 1f, 0.25f, 0.75f};
+
+        flip.mapPoints(points);
+
+        assertArrayEquals(new float[]{0f, 1f, 1f, 0f, 0.25f, 0.25f}, points, 1e-6f);
+    }
+}
@@ -0,0 +1,85 @@
+package com.codecrush.mymeeting;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.ConversionKernel;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks every conversion kernel against the byte-wise Java kernel on ART, then logs how long
+ * each takes per 1080x1920 frame (tag "ConversionKernel"), since the JMH numbers come from a
+ * desktop JVM and ART compiles buffer reads differently.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConversionKernelTest {
+    private static final String TAG = "ConversionKernel";
+
+    @Test
+    public void kernels_matchByteKernelOnArt() {
+        int width = 641, height = 479;
+        byte[] rgba = new byte[width * height * 4];
+        new Random(5).nextBytes(rgba);
+        byte[] expected = new byte[YUVConverter.nv21Size(width, height)];
+        YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, ColorSpec.BT601_LIMITED, 0, height);
+
+        for (ConversionKernel kernel : new ConversionKernel[]{YUVConverter.SWAR_KERNEL, NV21Converter.selectKernel()}) {
+            byte[] actual = new byte[expected.length];
+            kernel.convertRows(rgba, width, height, actual, ColorSpec.BT601_LIMITED, 0, height);
+            assertArrayEquals(kernel.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void logKernelTimings() {
+        int width = 1080, height = 1920;
+        byte[] rgba = new byte[width * height * 4];
+        new Random(9).nextBytes(rgba);
+        byte[] nv21 = new byte[YUVConverter.nv21Size(width, height)];
+        ByteBuffer rgbaDirect = ByteBuffer.allocateDirect(rgba.length);
+        rgbaDirect.put(rgba).clear();
+        ByteBuffer nv21Direct = ByteBuffer.allocateDirect(nv21.length);
+
+        String[] names = {"byte", "swar", "native"};
+        ConversionKernel[] kernels = {YUVConverter.JAVA_KERNEL, YUVConverter.SWAR_KERNEL, NV21Converter.selectKernel()};
+        for (int i = 0; i < kernels.length; i++) {
+            long arrayNs = time(kernels[i], rgba, nv21, width, height);
+            long directNs = time(kernels[i], rgbaDirect, nv21Direct, width, height);
+            Log.i(TAG, names[i] + ": array " + arrayNs / 1000 + " us, direct " + directNs / 1000 + " us");
+        }
+        Log.i(TAG, "NV21Converter: " + NV21Converter.getStatus());
+    }
+
+    private static long time(ConversionKernel kernel, byte[] rgba, byte[] nv21, int width, int height) {
+        for (int i = 0; i < 10; i++) { // Warm up so the JIT compiles the loop
+            kernel.convertRows(rgba, width, height, nv21, ColorSpec.BT601_LIMITED, 0, height);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < 20; i++) {
+            kernel.convertRows(rgba, width, height, nv21, ColorSpec.BT601_LIMITED, 0, height);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / 20;
+    }
+
+    private static long time(ConversionKernel kernel, ByteBuffer rgba, ByteBuffer nv21, int width, int height) {
+        for (int i = 0; i < 10; i++) {
+            kernel.convertRows(rgba, width, height, nv21, 0, ColorSpec.BT601_LIMITED, 0, height);
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < 20; i++) {
+            kernel.convertRows(rgba, width, height, nv21, 0, ColorSpec.BT601_LIMITED, 0, height);
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / 20;
+    }
+}
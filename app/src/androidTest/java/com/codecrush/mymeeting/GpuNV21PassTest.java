@@ -0,0 +1,146 @@
+package com.codecrush.mymeeting;
+
+import android.content.Context;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES30;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the NV21 packing shader on an offscreen EGL context (the emulator's software GL works)
+ * and checks it against the CPU converter byte for byte.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GpuNV21PassTest {
+    private EGLDisplay display;
+    private EGLContext eglContext;
+    private EGLSurface surface;
+
+    @Before
+    public void setUp() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        assertTrue(EGL14.eglInitialize(display, version, 0, version, 1));
+
+        int[] configAttributes = {
+                EGL14.EGL_RENDERABLE_TYPE, EGLExt.EGL_OPENGL_ES3_BIT_KHR,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_RED_SIZE, 8, EGL14.EGL_GREEN_SIZE, 8, EGL14.EGL_BLUE_SIZE, 8, EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        assertTrue(EGL14.eglChooseConfig(display, configAttributes, 0, configs, 0, 1, configCount, 0));
+        assertEquals(1, configCount[0]);
+
+        eglContext = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+                new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 3, EGL14.EGL_NONE}, 0);
+        surface = EGL14.eglCreatePbufferSurface(display, configs[0],
+                new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0);
+        assertTrue(EGL14.eglMakeCurrent(display, surface, surface, eglContext));
+    }
+
+    @After
+    public void tearDown() {
+        EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(display, surface);
+        EGL14.eglDestroyContext(display, eglContext);
+        EGL14.eglTerminate(display);
+    }
+
+    @Test
+    public void packedNV21_matchesCpuConverter() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        GpuNV21Pass pass = new GpuNV21Pass(context);
+        int[][] sizes = {{4, 2}, {64, 48}, {640, 480}, {720, 1280}};
+
+        for (int[] size : sizes) {
+            int width = size[0], height = size[1];
+            byte[] rgba = new byte[width * height * 4];
+            new Random(width * 31L + height).nextBytes(rgba);
+
+            int[] composite = new int[2];
+            GlUtil.createFramebuffer(width, height, composite);
+            GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, composite[1]);
+            GLES30.glTexSubImage2D(GLES30.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                    GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, ByteBuffer.wrap(rgba));
+
+            pass.draw(composite[1], width, height, fullScreenQuad());
+            ByteBuffer packed = ByteBuffer.allocateDirect(YUVConverter.nv21Size(width, height));
+            GLES30.glReadPixels(0, 0, pass.getReadWidth(), pass.getReadHeight(),
+                    GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, packed);
+            assertEquals(GLES30.GL_NO_ERROR, GLES30.glGetError());
+
+            byte[] gpu = new byte[packed.capacity()];
+            packed.get(gpu);
+            assertArrayEquals(width + "x" + height, YUVConverter.rgbaToNV21(rgba, width, height), gpu);
+            GlUtil.deleteFramebuffer(composite);
+        }
+        pass.release();
+    }
+
+    @Test
+    public void everyColorSpec_matchesCpuConverter() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        GpuNV21Pass pass = new GpuNV21Pass(context);
+        int width = 64, height = 48;
+        byte[] rgba = new byte[width * height * 4];
+        new Random(13).nextBytes(rgba);
+        int[] composite = new int[2];
+        GlUtil.createFramebuffer(width, height, composite);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, composite[1]);
+        GLES30.glTexSubImage2D(GLES30.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, ByteBuffer.wrap(rgba));
+
+        for (ColorSpec.Matrix matrix : ColorSpec.Matrix.values()) {
+            for (ColorSpec.Range range : ColorSpec.Range.values()) {
+                ColorSpec spec = ColorSpec.of(matrix, range);
+                pass.draw(composite[1], width, height, spec, fullScreenQuad());
+                ByteBuffer packed = ByteBuffer.allocateDirect(YUVConverter.nv21Size(width, height));
+                GLES30.glReadPixels(0, 0, pass.getReadWidth(), pass.getReadHeight(),
+                        GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, packed);
+
+                byte[] gpu = new byte[packed.capacity()];
+                packed.get(gpu);
+                byte[] cpu = new byte[gpu.length];
+                YUVConverter.rgbaToNV21(rgba, width, height, cpu, spec);
+                assertArrayEquals(spec.toString(), cpu, gpu);
+            }
+        }
+        GlUtil.deleteFramebuffer(composite);
+        pass.release();
+    }
+
+    private static FloatBuffer fullScreenQuad() {
+        float[] vertices = {
+                -1.0f, 1.0f, 0.0f, 1.0f,
+                1.0f, 1.0f, 1.0f, 1.0f,
+                -1.0f, -1.0f, 0.0f, 0.0f,
+                1.0f, -1.0f, 1.0f, 0.0f
+        };
+        FloatBuffer quad = ByteBuffer.allocateDirect(vertices.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        quad.put(vertices).position(0);
+        return quad;
+    }
+}
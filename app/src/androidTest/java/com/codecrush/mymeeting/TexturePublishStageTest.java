@@ -0,0 +1,128 @@
+package com.codecrush.mymeeting;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES30;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.codecrush.mymeeting.pipeline.TextureFrame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the texture publish stage on an offscreen EGL context with a fake publisher in place of
+ * the SDK, checking that published textures hold the composite and are reused only after the
+ * publisher releases them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TexturePublishStageTest {
+    private EGLDisplay display;
+    private EGLContext eglContext;
+    private EGLSurface surface;
+
+    @Before
+    public void setUp() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        assertTrue(EGL14.eglInitialize(display, version, 0, version, 1));
+
+        int[] configAttributes = {
+                EGL14.EGL_RENDERABLE_TYPE, EGLExt.EGL_OPENGL_ES3_BIT_KHR,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_RED_SIZE, 8, EGL14.EGL_GREEN_SIZE, 8, EGL14.EGL_BLUE_SIZE, 8, EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        assertTrue(EGL14.eglChooseConfig(display, configAttributes, 0, configs, 0, 1, configCount, 0));
+        eglContext = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT,
+                new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 3, EGL14.EGL_NONE}, 0);
+        surface = EGL14.eglCreatePbufferSurface(display, configs[0],
+                new int[]{EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE}, 0);
+        assertTrue(EGL14.eglMakeCurrent(display, surface, surface, eglContext));
+    }
+
+    @After
+    public void tearDown() {
+        EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(display, surface);
+        EGL14.eglDestroyContext(display, eglContext);
+        EGL14.eglTerminate(display);
+    }
+
+    @Test
+    public void publishedTexture_holdsComposite() {
+        int width = 64, height = 48;
+        byte[] rgba = new byte[width * height * 4];
+        new Random(3).nextBytes(rgba);
+        int[] composite = new int[2];
+        GlUtil.createFramebuffer(width, height, composite);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, composite[1]);
+        GLES30.glTexSubImage2D(GLES30.GL_TEXTURE_2D, 0, 0, 0, width, height,
+                GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, ByteBuffer.wrap(rgba));
+
+        List<TextureFrame> published = new ArrayList<>();
+        TexturePublishStage stage = new TexturePublishStage(2);
+        stage.setPublisher(published::add);
+        assertTrue(stage.copy(composite[0], width, height, 42));
+        GLES30.glFinish();
+        stage.publishReady();
+
+        assertEquals(1, published.size());
+        TextureFrame frame = published.get(0);
+        assertEquals(42, frame.getTimestampNs());
+        assertArrayEquals(rgba, readTexture(frame.getFramebufferId(), width, height));
+
+        published.remove(0).release();
+        stage.release();
+        GlUtil.deleteFramebuffer(composite);
+    }
+
+    @Test
+    public void heldTextures_skipComposite() {
+        int[] composite = new int[2];
+        GlUtil.createFramebuffer(16, 16, composite);
+        List<TextureFrame> published = new ArrayList<>();
+        TexturePublishStage stage = new TexturePublishStage(2);
+        stage.setPublisher(published::add);
+
+        assertTrue(stage.copy(composite[0], 16, 16, 1));
+        assertTrue(stage.copy(composite[0], 16, 16, 2));
+        assertFalse(stage.copy(composite[0], 16, 16, 3));
+        assertEquals(1, stage.getFramesSkipped());
+
+        GLES30.glFinish();
+        stage.publishReady();
+        assertEquals(2, published.size());
+        published.remove(0).release();
+        assertTrue(stage.copy(composite[0], 16, 16, 4));
+
+        stage.release();
+        GlUtil.deleteFramebuffer(composite);
+    }
+
+    private static byte[] readTexture(int framebuffer, int width, int height) {
+        ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4);
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebuffer);
+        GLES30.glReadPixels(0, 0, width, height, GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, pixels);
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, 0);
+        byte[] bytes = new byte[pixels.capacity()];
+        pixels.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,95 @@
+package com.codecrush.mymeeting;
+
+import android.graphics.Matrix;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+
+import com.codecrush.mymeeting.pipeline.LatencyTracker;
+import com.codecrush.mymeeting.pipeline.TextureFrame;
+import com.codecrush.mymeeting.pipeline.TexturePublisher;
+
+import io.agora.base.TextureBuffer;
+import io.agora.base.TextureBufferHelper;
+import io.agora.base.VideoFrame;
+import io.agora.base.internal.video.EglBase;
+import io.agora.base.internal.video.EglBase14;
+import io.agora.base.internal.video.YuvConverter;
+import io.agora.rtc2.RtcEngine;
+
+/**
+ * Pushes composite textures to Agora as texture-backed video frames, so frames reach the
+ * encoder without a readback or a CPU conversion. The SDK reads the texture through an EGL
+ * context shared with the renderer's: the helper thread that hosts it is created on the first
+ * publish, from the GL thread's current context, and recreated when that context changes. The
+ * buffer's release callback gives the frame back to the renderer's pool once the SDK drops
+ * its last reference.
+ *
+ * <p>The texture is sent with a vertical flip. glReadPixels returns the composite bottom row
+ * first, so the frames the readback path pushes start from the composite's bottom row; the flip
+ * makes texture frames start there too, and both publish modes stream the same way up. With a
+ * {@link LatencyTracker}, each push is recorded as {@link LatencyTracker.Stage#PUBLISHED}
+ * measured from capture, since texture frames carry no per-stage marks. Requires the custom track to be set up with
+ * {@code setExternalVideoSource(true, true, ...)}. Must be used on the GL thread.
+ */
+class AgoraTexturePublisher implements TexturePublisher {
+    private final RtcEngine engine;
+    private final int trackId;
+    private final Matrix transform = verticalFlip();
+    private final LatencyTracker latencyTracker;
+    private EGLContext sharedContext;
+    private EglBase.Context eglBaseContext;
+    private TextureBufferHelper helper;
+    private YuvConverter yuvConverter;
+
+    AgoraTexturePublisher(RtcEngine engine, int trackId, LatencyTracker latencyTracker) {
+        this.engine = engine;
+        this.trackId = trackId;
+        this.latencyTracker = latencyTracker;
+    }
+
+    /** Maps texture coordinate t to 1 - t, leaving s alone. */
+    static Matrix verticalFlip() {
+        Matrix flip = new Matrix();
+        flip.setScale(1f, -1f, 0.5f, 0.5f);
+        return flip;
+    }
+
+    @Override
+    public void publish(TextureFrame frame) {
+        EGLContext current = EGL14.eglGetCurrentContext();
+        if (helper == null || !current.equals(sharedContext)) {
+            release();
+            sharedContext = current;
+            eglBaseContext = new EglBase14.Context(current);
+            helper = TextureBufferHelper.create("AgoraTexture", eglBaseContext);
+            // For when the SDK needs I420 after all, e.g. for a software encoder
+            yuvConverter = helper.invoke(YuvConverter::new);
+        }
+        TextureBuffer buffer = new TextureBuffer(eglBaseContext, frame.getWidth(), frame.getHeight(),
+                VideoFrame.TextureBuffer.Type.RGB, frame.getTextureId(), transform,
+                helper.getHandler(), yuvConverter, frame::release);
+        // Stamp the frame with its capture time, carried over onto the SDK's monotonic clock
+        long ageNs = System.nanoTime() - frame.getTimestampNs();
+        long timestampNs = engine.getCurrentMonotonicTimeInMs() * 1000000 - ageNs;
+        VideoFrame videoFrame = new VideoFrame(buffer, 0, timestampNs);
+        engine.pushExternalVideoFrameById(videoFrame, trackId);
+        if (latencyTracker != null) {
+            latencyTracker.record(frame.getTimestampNs(), LatencyTracker.Stage.PUBLISHED, System.nanoTime());
+        }
+        videoFrame.release();
+    }
+
+    /** Stops the helper thread; the next publish starts a new one. */
+    void release() {
+        if (helper != null) {
+            YuvConverter converter = yuvConverter;
+            helper.invoke(() -> {
+                converter.release();
+                return null;
+            });
+            helper.dispose();
+            helper = null;
+            yuvConverter = null;
+        }
+    }
+}
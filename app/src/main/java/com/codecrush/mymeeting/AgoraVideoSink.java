@@ -0,0 +1,53 @@
+package com.codecrush.mymeeting;
+
+import com.codecrush.mymeeting.pipeline.Frame;
+import com.codecrush.mymeeting.pipeline.LatencyTracker;
+import com.codecrush.mymeeting.pipeline.VideoSink;
+
+import io.agora.base.NV12Buffer;
+import io.agora.base.NV21Buffer;
+import io.agora.base.VideoFrame;
+import io.agora.rtc2.RtcEngine;
+
+/**
+ * Pushes frames to a custom Agora video track. Heap frames go as NV21; direct frames, filled
+ * straight from a PBO, go as NV12, the only direct layout the SDK takes. Either way the SDK
+ * wraps the frame's memory without copying, and the buffer's release callback hands the frame
+ * back to its pool once the SDK drops its last reference.
+ *
+ * <p>Each frame is stamped with its capture time carried over onto the SDK's monotonic clock,
+ * so the encoder sees when it was taken rather than when it was pushed; frames without a
+ * capture timestamp are stamped now. With a {@link LatencyTracker}, frames are marked
+ * {@link LatencyTracker.Stage#PUBLISHED} and recorded as they are pushed.
+ */
+class AgoraVideoSink implements VideoSink {
+    private final RtcEngine engine;
+    private final int trackId;
+    private final LatencyTracker latencyTracker;
+
+    AgoraVideoSink(RtcEngine engine, int trackId, LatencyTracker latencyTracker) {
+        this.engine = engine;
+        this.trackId = trackId;
+        this.latencyTracker = latencyTracker;
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        VideoFrame.Buffer buffer;
+        if (frame.isDirect()) {
+            buffer = new NV12Buffer(frame.getWidth(), frame.getHeight(), frame.getWidth(), frame.getHeight(),
+                    frame.getBuffer(), frame::release);
+        } else {
+            buffer = new NV21Buffer(frame.getData(), frame.getWidth(), frame.getHeight(), frame::release);
+        }
+        long ageNs = frame.getTimestampNs() != 0 ? System.nanoTime() - frame.getTimestampNs() : 0;
+        long timestampNs = engine.getCurrentMonotonicTimeInMs() * 1000000 - ageNs;
+        VideoFrame videoFrame = new VideoFrame(buffer, 0, timestampNs);
+        engine.pushExternalVideoFrameById(videoFrame, trackId);
+        if (latencyTracker != null) {
+            frame.mark(LatencyTracker.Stage.PUBLISHED);
+            latencyTracker.record(frame); // Before release, which clears the marks
+        }
+        videoFrame.release();
+    }
+}
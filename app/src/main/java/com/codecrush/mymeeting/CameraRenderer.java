@@ -12,15 +12,23 @@ import android.util.Log;
 
 import androidx.annotation.RequiresApi;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.CompositeLayout;
+import com.codecrush.mymeeting.pipeline.Frame;
+import com.codecrush.mymeeting.pipeline.FramePairSynchronizer;
+import com.codecrush.mymeeting.pipeline.FramePool;
+import com.codecrush.mymeeting.pipeline.FrameRateController;
+import com.codecrush.mymeeting.pipeline.LatencyHistogram;
+import com.codecrush.mymeeting.pipeline.LatencyTracker;
+import com.codecrush.mymeeting.pipeline.ParallelNV21Converter;
+import com.codecrush.mymeeting.pipeline.TexturePublisher;
+import com.codecrush.mymeeting.pipeline.TraceRing;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -28,11 +36,31 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class CameraRenderer implements GLSurfaceView.Renderer {
+    /** How composites leave the GPU. */
+    public enum PublishMode {
+        /** Read back through the PBO ring and converted to NV21/NV12 frames for the frame listener. */
+        READBACK,
+        /** Copied into pooled textures and handed to the texture publisher; nothing is read back. */
+        TEXTURE
+    }
+
+    // Older camera timestamps than this are taken to be on a different clock
+    private static final long MAX_CAPTURE_AGE_NS = 1_000_000_000L;
+    // Camera images closer than this are paired without waiting for a better partner
+    private static final long PAIR_TOLERANCE_NS = 10_000_000L;
+    // Longest one camera's image waits for the other's before it is composited alone
+    private static final long PAIR_MAX_WAIT_NS = 50_000_000L;
     private final Context context;
     private SurfaceTexture frontSurfaceTexture, backSurfaceTexture;
     private int frontTextureId = -1, backTextureId = -1;
     private final float[] mvpMatrix = new float[16];
     private int screenWidth, screenHeight;
+    // The stream is composited and read back at a fixed size, independent of the display
+    private volatile int requestedOutputWidth = 720, requestedOutputHeight = 1280;
+    private int outputWidth, outputHeight;
+    private int previewX, previewY, previewWidth, previewHeight;
+    // Swapped whole by setLayout; only viewports depend on it, so switching allocates nothing
+    private volatile CompositeLayout layout = CompositeLayout.split(FramePairSynchronizer.FRONT, FramePairSynchronizer.BACK);
     private int shaderProgram;
     private int aPositionHandle, aTexCoordHandle, uTextureHandle;
     private final float[] vertices = {
@@ -48,18 +76,54 @@ public class CameraRenderer implements GLSurfaceView.Renderer {
     private int uTextureMatrixHandle;
     private SurfaceTexturesListener listener;
     private OnFrameListener frameListener;
-    private int[] pboIds = new int[2]; // Two PBOs
-    private int currentPboIndex = 0;
-    private ByteBuffer[] mappedBuffers = new ByteBuffer[2];
-    private boolean pbosInitialized = false;
+    private volatile RenderRequester renderRequester;
+    private final FramePairSynchronizer frameSync = new FramePairSynchronizer(PAIR_TOLERANCE_NS, PAIR_MAX_WAIT_NS);
+    private int blitProgram;
+    private int blitPositionHandle, blitTexCoordHandle, blitTextureHandle, blitTextureMatrixHandle;
+    // Both cameras are composited offscreen, then blitted to the screen and read back from here
+    private final int[] compositeFramebuffer = new int[2]; // {framebuffer, texture}
+    private GpuNV21Pass nv21Pass;
+    private volatile boolean gpuConversionEnabled = false;
+    private volatile ColorSpec colorSpec = ColorSpec.BT601_LIMITED;
+    private volatile PublishMode publishMode = PublishMode.READBACK;
+    // Texture frames the SDK may hold at once, plus one being drawn and one waiting on its fence
+    private final TexturePublishStage texturePublish = new TexturePublishStage(4);
+    // Readbacks in flight; deeper rings ride out slower GPUs at the cost of latency
+    private final PboRing pboRing = new PboRing();
+    private volatile int requestedPboDepth = 3;
+    // Frames beyond what the encoder sends are shown on screen but never read back
+    private final FrameRateController rateController = new FrameRateController(30);
     private ExecutorService frameProcessor = Executors.newSingleThreadExecutor();
-    private BufferPool bufferPool;
+    // Output frames for every output size: GPU packing fills heap NV21 frames, the CPU path
+    // direct NV12 ones. Enough per size to cover the listener's queue plus the frame being pushed
+    private final FramePool packedPool = new FramePool(8, null);
+    private final FramePool directPool = new FramePool(8, Frame.Format.NV12);
+    // RGBA copies of mapped readbacks waiting for conversion; the GL thread only copies, so a
+    // mapped PBO is held for a memcpy rather than a whole conversion
+    private static final int STAGING_BUFFERS = 3;
+    private final ArrayBlockingQueue<ByteBuffer> stagingBuffers = new ArrayBlockingQueue<>(STAGING_BUFFERS);
+    private volatile int stagingBytes;
+    // Metrics, each written on one thread only: produced on the GL thread, converted on the
+    // frame processor
+    private volatile long framesProduced, framesConverted;
+    // Per-frame diagnostics without logging on the GL thread; off unless enabled
+    private final TraceRing trace = new TraceRing(512);
+    private final int traceReadback = trace.defineEvent("readback", "pending", "bytes");
+    private final int traceMapped = trace.defineEvent("mapped", "bytes", "captureNs");
+    private final int traceSkipped = trace.defineEvent("skipped", "pending", "depth");
+    private final int tracePaced = trace.defineEvent("paced", "targetFps", "captureNs");
+    // The frame processor converts a band itself; the rest go to workers.
+    // Native kernel when libnv21_converter loaded and checked out, else the Java one
+    private final ParallelNV21Converter nv21Converter = new ParallelNV21Converter(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            ColorSpec.BT601_LIMITED, NV21Converter.selectKernel());
 
 
     public CameraRenderer(Context context, SurfaceTexturesListener listener) {
         this.context = context;
         this.listener = listener;
         Matrix.setIdentityM(mvpMatrix, 0);
+        Log.i("CameraRenderer", "NV21 kernel: " + NV21Converter.getStatus());
     }
 
     public interface SurfaceTexturesListener {
@@ -67,44 +131,118 @@ public class CameraRenderer implements GLSurfaceView.Renderer {
         void onSurfaceTexturesCreated(SurfaceTexture front, SurfaceTexture back);
     }
 
+    /**
+     * Receives converted frames on the frame processor thread. Frames come from the renderer's
+     * output pool; release them once published or dropped so streaming does not allocate per
+     * frame. CPU-converted frames are direct NV12 buffers converted from a copy of the mapped PBO;
+     * GPU-packed frames are heap NV21 (see {@link Frame#getFormat()}).
+     */
     public interface OnFrameListener {
-        void onFrameAvailable(byte[] rgbaPixels);
+        void onFrameAvailable(Frame frame);
     }
 
     public void setOnFrameListener(OnFrameListener listener) {
         this.frameListener = listener;
     }
 
+    /**
+     * Asks the view to draw a frame, e.g. GLSurfaceView.requestRender(). The renderer calls it
+     * from camera callback threads whenever a camera delivers a new image, so the view can use
+     * RENDERMODE_WHEN_DIRTY instead of drawing continuously.
+     */
+    public interface RenderRequester {
+        void requestRender();
+    }
+
+    public void setRenderRequester(RenderRequester requester) {
+        this.renderRequester = requester;
+    }
+
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         screenWidth = width;
         screenHeight = height;
         GLES30.glViewport(0, 0, width, height);
 
-        int bufferSize = screenWidth * screenHeight * 4;
+        allocateOutput(requestedOutputWidth, requestedOutputHeight);
+    }
+
+    /**
+     * Sets the resolution the composite is rendered, read back and streamed at. The display
+     * only shows a scaled copy, so per-frame readback and conversion cost stays the same on
+     * every device. Applied on the GL thread before the next frame; both sizes must be even.
+     */
+    public void setOutputSize(int width, int height) {
+        if (width <= 0 || height <= 0 || width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("Output size must be positive and even: " + width + "x" + height);
+        }
+        requestedOutputWidth = width;
+        requestedOutputHeight = height;
+    }
+
+    /**
+     * Sets where each camera appears in the composite (sources are
+     * {@link FramePairSynchronizer#FRONT} and {@link FramePairSynchronizer#BACK}). Takes effect on
+     * the next composite; nothing is reallocated, so switching, e.g. to picture-in-picture,
+     * costs nothing per frame beyond drawing the tiles.
+     */
+    public void setLayout(CompositeLayout layout) {
+        if (layout == null) {
+            throw new IllegalArgumentException("layout must not be null");
+        }
+        this.layout = layout;
+    }
+
+    public CompositeLayout getLayout() {
+        return layout;
+    }
 
-        if (pbosInitialized && pboIds[0] != 0)
-        {
-            // Add check for valid PBO IDs
-            GLES30.glDeleteBuffers(2, pboIds, 0);
+    /**
+     * Sets how many readbacks may be in flight at once (at least 2). A buffer is only mapped
+     * once the GPU has finished writing it, and a frame is skipped rather than waited for when
+     * all of them are busy. Applied on the GL thread before the next frame.
+     */
+    public void setPboRingDepth(int depth) {
+        if (depth < 2) {
+            throw new IllegalArgumentException("PBO ring depth must be at least 2: " + depth);
         }
+        requestedPboDepth = depth;
+    }
+
+    private void allocateOutput(int width, int height) {
+        outputWidth = width;
+        outputHeight = height;
+        updatePreviewViewport();
+
+        int bufferSize = outputWidth * outputHeight * 4;
 
         // Initialize PBOs
-        GLES30.glGenBuffers(2, pboIds, 0);
-        for (int i = 0; i < 2; i++) {
-            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pboIds[i]);
-            GLES30.glBufferData(
-                    GLES30.GL_PIXEL_PACK_BUFFER,
-                    bufferSize, // Use pre-calculated size
-                    null,
-                    GLES30.GL_STREAM_READ
-            );
+        pboRing.allocate(requestedPboDepth, bufferSize);
+        if (stagingBytes != bufferSize) {
+            // Copies of the old size still converting are dropped when they come back
+            stagingBytes = bufferSize;
+            stagingBuffers.clear();
+            for (int i = 0; i < STAGING_BUFFERS; i++) {
+                // Little-endian, so the word-at-a-time kernel reads it without a view
+                stagingBuffers.offer(ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+            }
         }
-        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
-        pbosInitialized = true;
 
-        // Initialize buffer pool with the correct size
-        bufferPool = new BufferPool(3, bufferSize); // 3 buffers, each of size bufferSize
+        GlUtil.deleteFramebuffer(compositeFramebuffer);
+        GlUtil.createFramebuffer(outputWidth, outputHeight, compositeFramebuffer);
+    }
+
+    /** Fits the output's aspect ratio inside the screen, centred, for the on-screen blit. */
+    private void updatePreviewViewport() {
+        if ((long) screenWidth * outputHeight > (long) screenHeight * outputWidth) {
+            previewHeight = screenHeight;
+            previewWidth = (int) ((long) screenHeight * outputWidth / outputHeight);
+        } else {
+            previewWidth = screenWidth;
+            previewHeight = (int) ((long) screenWidth * outputHeight / outputWidth);
+        }
+        previewX = (screenWidth - previewWidth) / 2;
+        previewY = (screenHeight - previewHeight) / 2;
     }
 
     @Override
@@ -115,32 +253,27 @@ public class CameraRenderer implements GLSurfaceView.Renderer {
         frontTextureId = textures[0];
         backTextureId = textures[1];
 
-        // Load and compile shaders
-        String vertexShaderCode = loadShader(context, R.raw.vertex);
-        String fragmentShaderCode = loadShader(context, R.raw.fragment);
-
-        // Compile shaders
-        int vertexShader = compileShader(GLES30.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = compileShader(GLES30.GL_FRAGMENT_SHADER, fragmentShaderCode);
-
-        // Link shaders into a program using GLES30
-        shaderProgram = GLES30.glCreateProgram();
-        GLES30.glAttachShader(shaderProgram, vertexShader);
-        GLES30.glAttachShader(shaderProgram, fragmentShader);
-        GLES30.glLinkProgram(shaderProgram);
-
-        // Check for linking errors
-        int[] linkStatus = new int[1];
-        GLES30.glGetProgramiv(shaderProgram, GLES30.GL_LINK_STATUS, linkStatus, 0);
-        if (linkStatus[0] != GLES30.GL_TRUE) {
-            Log.e("Shader", "Linking failed: " + GLES30.glGetProgramInfoLog(shaderProgram));
-        }
+        // Load, compile and link the camera shaders
+        String vertexShaderCode = GlUtil.loadShader(context, R.raw.vertex);
+        shaderProgram = GlUtil.createProgram(vertexShaderCode, GlUtil.loadShader(context, R.raw.fragment));
 
         // Get attribute/uniform locations
         aPositionHandle = GLES30.glGetAttribLocation(shaderProgram, "aPosition");
         aTexCoordHandle = GLES30.glGetAttribLocation(shaderProgram, "aTexCoord");
         uTextureHandle = GLES30.glGetUniformLocation(shaderProgram, "uTexture");
 
+        // Same vertex stage, sampling the 2D composite texture for the on-screen blit
+        blitProgram = GlUtil.createProgram(vertexShaderCode, GlUtil.loadShader(context, R.raw.fragment_2d));
+        blitPositionHandle = GLES30.glGetAttribLocation(blitProgram, "aPosition");
+        blitTexCoordHandle = GLES30.glGetAttribLocation(blitProgram, "aTexCoord");
+        blitTextureHandle = GLES30.glGetUniformLocation(blitProgram, "uTexture");
+        blitTextureMatrixHandle = GLES30.glGetUniformLocation(blitProgram, "uTextureMatrix");
+
+        nv21Pass = new GpuNV21Pass(context);
+        // Handles from a previous context are gone with it
+        compositeFramebuffer[0] = 0;
+        compositeFramebuffer[1] = 0;
+
         // Prepare vertex buffer
         ByteBuffer bb = ByteBuffer.allocateDirect(vertices.length * 4);
         bb.order(ByteOrder.nativeOrder());
@@ -151,42 +284,95 @@ public class CameraRenderer implements GLSurfaceView.Renderer {
         // Initialize SurfaceTextures
         frontSurfaceTexture = new SurfaceTexture(frontTextureId);
         backSurfaceTexture = new SurfaceTexture(backTextureId);
+        frameSync.reset();
+        frontSurfaceTexture.setOnFrameAvailableListener(surfaceTexture -> onCameraFrame(FramePairSynchronizer.FRONT));
+        backSurfaceTexture.setOnFrameAvailableListener(surfaceTexture -> onCameraFrame(FramePairSynchronizer.BACK));
         listener.onSurfaceTexturesCreated(frontSurfaceTexture, backSurfaceTexture);
 
         uTextureMatrixHandle = GLES30.glGetUniformLocation(shaderProgram, "uTextureMatrix");
 
-        // Initialize PBOs (Buffer data allocation happens in onSurfaceChanged)
-        GLES30.glGenBuffers(2, pboIds, 0);
-        pbosInitialized = true;
-
-        // Unbind PBO (Use GLES30)
-        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        // PBOs are allocated in onSurfaceChanged
+        pboRing.invalidate();
+        texturePublish.invalidate();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.N)
     @Override
     public void onDrawFrame(GL10 gl) {
-        // Update texture images and get transformation matrices
-        if (frontSurfaceTexture != null) {
-            frontSurfaceTexture.updateTexImage();
-            frontSurfaceTexture.getTransformMatrix(frontTransformMatrix);
+        if (outputWidth != requestedOutputWidth || outputHeight != requestedOutputHeight
+                || pboRing.getDepth() != requestedPboDepth) {
+            allocateOutput(requestedOutputWidth, requestedOutputHeight);
+        }
+
+        // Latch new camera images, holding one back while its partner from the other camera is due
+        long now = System.nanoTime();
+        latch(FramePairSynchronizer.FRONT, frontSurfaceTexture, frontTransformMatrix, now);
+        latch(FramePairSynchronizer.BACK, backSurfaceTexture, backTransformMatrix, now);
+        boolean newComposite = frameSync.shouldComposite(now);
+        long captureNs = 0;
+
+        if (newComposite) {
+            frameSync.onComposited();
+            captureNs = captureTimestampNs();
+            GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, compositeFramebuffer[0]);
+            drawLayout(layout);
         }
-        if (backSurfaceTexture != null) {
-            backSurfaceTexture.updateTexImage();
-            backSurfaceTexture.getTransformMatrix(backTransformMatrix);
+
+        // Show a scaled copy of the composite on screen
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, 0);
+        GLES30.glClear(GLES30.GL_COLOR_BUFFER_BIT);
+        GLES30.glViewport(previewX, previewY, previewWidth, previewHeight);
+        drawComposite();
+
+        // Stream the new composite, as a texture or through a readback; without one there is
+        // nothing new to stream
+        if (newComposite && publishMode == PublishMode.TEXTURE) {
+            publishTexture(captureNs);
+        } else if (newComposite) {
+            captureWithPBO(captureNs);
+        } else {
+            drainReadbacks();
         }
+        texturePublish.publishReady();
 
-        // Draw front camera (top half) with its matrix
-        GLES30.glViewport(0, screenHeight / 2, screenWidth, screenHeight / 2);
-        drawTexture(frontTextureId, frontTransformMatrix);
+    }
 
-        // Draw back camera (bottom half) with its matrix
-        GLES30.glViewport(0, 0, screenWidth, screenHeight / 2);
-        drawTexture(backTextureId, backTransformMatrix);
+    private void onCameraFrame(int camera) {
+        frameSync.onFrameAvailable(camera);
+        RenderRequester requester = renderRequester;
+        if (requester != null) {
+            requester.requestRender();
+        }
+    }
 
-        // Capture using PBOs
-        captureWithPBO();
+    private void latch(int camera, SurfaceTexture surfaceTexture, float[] transformMatrix, long nowNs) {
+        if (surfaceTexture != null && frameSync.beginLatch(camera, nowNs)) {
+            surfaceTexture.updateTexImage();
+            surfaceTexture.getTransformMatrix(transformMatrix);
+            frameSync.onLatched(camera, surfaceTexture.getTimestamp(), nowNs);
+        }
+    }
 
+    /** Draws each camera into its tile of the composite, lowest z first. */
+    private void drawLayout(CompositeLayout layout) {
+        if (!layout.coversCanvas()) {
+            GLES30.glViewport(0, 0, outputWidth, outputHeight);
+            GLES30.glClear(GLES30.GL_COLOR_BUFFER_BIT);
+        }
+        for (int i = 0; i < layout.getTileCount(); i++) {
+            CompositeLayout.Tile tile = layout.getTile(i);
+            int left = tile.left(outputWidth);
+            int top = tile.top(outputHeight);
+            int width = tile.right(outputWidth) - left;
+            int height = tile.bottom(outputHeight) - top;
+            // Layouts measure from the top; GL viewports from the bottom
+            GLES30.glViewport(left, outputHeight - top - height, width, height);
+            if (tile.getSource() == FramePairSynchronizer.FRONT) {
+                drawTexture(frontTextureId, frontTransformMatrix);
+            } else if (tile.getSource() == FramePairSynchronizer.BACK) {
+                drawTexture(backTextureId, backTransformMatrix);
+            }
+        }
     }
 
     private void drawTexture(int textureId, float[] transformMatrix)
@@ -220,85 +406,250 @@ public class CameraRenderer implements GLSurfaceView.Renderer {
         GLES30.glDisableVertexAttribArray(aTexCoordHandle);
     }
 
-    private int compileShader(int type, String shaderCode) {
-        int shader = GLES30.glCreateShader(type);
-        GLES30.glShaderSource(shader, shaderCode);
-        GLES30.glCompileShader(shader);
-        return shader;
+    private void drawComposite() {
+        GLES30.glUseProgram(blitProgram);
+        GLES30.glUniformMatrix4fv(blitTextureMatrixHandle, 1, false, mvpMatrix, 0); // Identity
+
+        GLES30.glActiveTexture(GLES30.GL_TEXTURE0);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, compositeFramebuffer[1]);
+        GLES30.glUniform1i(blitTextureHandle, 0);
+
+        vertexBuffer.position(0);
+        GLES30.glVertexAttribPointer(blitPositionHandle, 2, GLES30.GL_FLOAT, false, 16, vertexBuffer);
+        GLES30.glEnableVertexAttribArray(blitPositionHandle);
+
+        vertexBuffer.position(2);
+        GLES30.glVertexAttribPointer(blitTexCoordHandle, 2, GLES30.GL_FLOAT, false, 16, vertexBuffer);
+        GLES30.glEnableVertexAttribArray(blitTexCoordHandle);
+
+        GLES30.glDrawArrays(GLES30.GL_TRIANGLE_STRIP, 0, 4);
+        GLES30.glDisableVertexAttribArray(blitPositionHandle);
+        GLES30.glDisableVertexAttribArray(blitTexCoordHandle);
     }
 
-    private String loadShader(Context context, int resourceId) {
-        try (InputStream is = context.getResources().openRawResource(resourceId)) {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-            return sb.toString();
-        } catch (IOException e) {
-            throw new RuntimeException("Could not load shader: " + resourceId, e);
+    /**
+     * Capture time of the older of the two camera images being composited, so latency is measured
+     * from the stalest content in the composite. Camera SurfaceTexture timestamps are on the
+     * monotonic clock System.nanoTime() uses; if a device reports another timebase the value is
+     * not usable and the current time is taken instead.
+     */
+    private long captureTimestampNs() {
+        long now = System.nanoTime();
+        long capture = Long.MAX_VALUE;
+        if (frontSurfaceTexture != null && frontSurfaceTexture.getTimestamp() > 0) {
+            capture = frontSurfaceTexture.getTimestamp();
+        }
+        if (backSurfaceTexture != null && backSurfaceTexture.getTimestamp() > 0) {
+            capture = Math.min(capture, backSurfaceTexture.getTimestamp());
         }
+        if (capture > now || now - capture > MAX_CAPTURE_AGE_NS) {
+            return now;
+        }
+        return capture;
     }
 
     @RequiresApi(api = Build.VERSION_CODES.N)
-    private void captureWithPBO() {
-        int pboId = pboIds[currentPboIndex];
-        int nextPboIndex = (currentPboIndex + 1) % 2;
-
-        // Log PBO IDs and screen dimensions
-        Log.d("PBO", "Current PBO ID: " + pboId + ", Next PBO ID: " + pboIds[nextPboIndex]);
-        Log.d("PBO", "Screen size: " + screenWidth + "x" + screenHeight);
-
-        // Bind PBO to read pixels into
-        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pboId);
-        GLES30.glReadPixels(
-                0, 0, screenWidth, screenHeight,
-                GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, 0
-        );
-
-        // Map the previous PBO to CPU memory
-        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pboIds[nextPboIndex]);
-        ByteBuffer buffer = (ByteBuffer) GLES30.glMapBufferRange(
-                GLES30.GL_PIXEL_PACK_BUFFER,
-                0,
-                screenWidth * screenHeight * 4,
-                GLES30.GL_MAP_READ_BIT
-        );
-
-        if (buffer == null) {
-            Log.e("PBO", "Failed to map PBO buffer!");
-            int error = GLES30.glGetError();
-            Log.e("PBO", "OpenGL error: " + error); // Check for GL errors
+    private void captureWithPBO(long captureNs) {
+        drainReadbacks();
+
+        if (!rateController.shouldCapture(captureNs)) {
+            // Not due yet at the target rate; the frame is only shown on screen
+            trace.record(tracePaced, rateController.getTargetFps(), captureNs);
+            return;
         }
 
-        // Process the buffer
-        if (buffer != null && frameListener != null) {
-            byte[] rgbaBytes = bufferPool.acquire(); // Reuse buffer
-            if (rgbaBytes == null) {
-                rgbaBytes = new byte[screenWidth * screenHeight * 4]; // Fallback
-            }
+        if (pboRing.isFull()) {
+            // Every buffer is still in flight; drop this frame rather than stall the GL thread
+            pboRing.skipFrame();
+            trace.record(traceSkipped, pboRing.getPending(), pboRing.getDepth());
+            return;
+        }
+
+        // Either pack NV21 on the GPU, or read the RGBA composite for the CPU converters
+        boolean gpuConversion = gpuConversionEnabled && GpuNV21Pass.supports(outputWidth, outputHeight);
+        int readWidth = outputWidth, readHeight = outputHeight;
+        if (gpuConversion) {
+            nv21Pass.draw(compositeFramebuffer[1], outputWidth, outputHeight, colorSpec, vertexBuffer);
+            readWidth = nv21Pass.getReadWidth();
+            readHeight = nv21Pass.getReadHeight();
+        } else {
+            GLES30.glBindFramebuffer(GLES30.GL_READ_FRAMEBUFFER, compositeFramebuffer[0]);
+        }
+
+        if (pboRing.read(readWidth, readHeight, captureNs)) {
+            framesProduced++;
+            trace.record(traceReadback, pboRing.getPending(), readWidth * readHeight * 4);
+        }
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Copies the composite into a pooled texture for the texture publisher, which gets it once
+     * the GPU has finished the copy. Paced like readbacks; skipped when the publisher still
+     * holds every texture.
+     */
+    private void publishTexture(long captureNs) {
+        drainReadbacks(); // Readbacks issued before switching modes still go out
+
+        if (!rateController.shouldCapture(captureNs)) {
+            trace.record(tracePaced, rateController.getTargetFps(), captureNs);
+            return;
+        }
+        if (texturePublish.copy(compositeFramebuffer[0], outputWidth, outputHeight, captureNs)) {
+            framesProduced++;
+        } else {
+            trace.record(traceSkipped, texturePublish.getPending(), texturePublish.getPoolSize());
+        }
+    }
 
-            buffer.get(rgbaBytes);
-            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+    /** Hands over every readback the GPU has already finished, without waiting on the rest. */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private void drainReadbacks() {
+        ByteBuffer buffer;
+        while ((buffer = pboRing.mapReady()) != null) {
+            trace.record(traceMapped, pboRing.getMappedBytes(), pboRing.getMappedTimestampNs());
+            dispatchReadback(buffer, pboRing.getMappedBytes(), pboRing.getMappedTimestampNs());
+            pboRing.unmap();
+        }
+    }
 
-            byte[] finalRgbaBytes = rgbaBytes;
+    /**
+     * Hands a mapped readback on before the PBO is unmapped. GPU-packed readbacks are already
+     * NV21 and are copied into an output frame as is. RGBA readbacks are copied into a staging
+     * buffer, a plain memcpy, and converted into a direct output frame on the frame processor,
+     * so the GL thread never waits on a conversion. When every staging buffer is still queued
+     * for conversion the readback is dropped, as a full PBO ring drops a frame. Either way the
+     * frame belongs to the listener until it is released.
+     */
+    private void dispatchReadback(ByteBuffer buffer, int readBytes, long captureNs) {
+        if (frameListener == null) {
+            return;
+        }
+        int width = outputWidth, height = outputHeight;
+        if (readBytes == YUVConverter.nv21Size(width, height)) {
+            // Packed on the GPU: the mapped bytes already are the NV21 frame
+            Frame frame = packedPool.acquire(width, height);
+            frame.setTimestampNs(captureNs);
+            frame.mark(LatencyTracker.Stage.MAPPED);
+            buffer.get(frame.getData(), 0, readBytes);
+            frame.mark(LatencyTracker.Stage.CONVERTED);
             frameProcessor.execute(() -> {
-                byte[] nv21Bytes = YUVConverter.rgbaToNV21(finalRgbaBytes, screenWidth, screenHeight);
-                frameListener.onFrameAvailable(nv21Bytes);
-                bufferPool.release(finalRgbaBytes); // Return to pool
+                framesConverted++;
+                frameListener.onFrameAvailable(frame);
             });
+            return;
+        }
+
+        ByteBuffer staging = stagingBuffers.poll();
+        if (staging == null) {
+            pboRing.skipFrame();
+            trace.record(traceSkipped, STAGING_BUFFERS, pboRing.getDepth());
+            return;
         }
+        staging.clear();
+        staging.put(buffer);
+        Frame frame = directPool.acquire(width, height);
+        frame.setTimestampNs(captureNs);
+        frame.mark(LatencyTracker.Stage.MAPPED);
+        frameProcessor.execute(() -> {
+            nv21Converter.rgbaToNV12(staging, width, height, frame.getBuffer());
+            if (staging.capacity() == stagingBytes) {
+                stagingBuffers.offer(staging);
+            }
+            frame.mark(LatencyTracker.Stage.CONVERTED);
+            framesConverted++;
+            frameListener.onFrameAvailable(frame);
+        });
+    }
+
+    /**
+     * Selects whether composites are read back and converted for the frame listener, or
+     * published as textures to the texture publisher, which skips readback and conversion
+     * entirely. Can be switched while rendering; readbacks already in flight still complete.
+     */
+    public void setPublishMode(PublishMode mode) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode must not be null");
+        }
+        publishMode = mode;
+    }
+
+    public PublishMode getPublishMode() {
+        return publishMode;
+    }
+
+    /**
+     * Receives composite textures in {@link PublishMode#TEXTURE}, on the GL thread with the
+     * renderer's EGL context current. Null releases finished textures unpublished.
+     */
+    public void setTexturePublisher(TexturePublisher publisher) {
+        texturePublish.setPublisher(publisher);
+    }
+
+    /**
+     * Caps how many frames per second are read back and converted; 0 reads back every rendered
+     * frame. Frames in between are still drawn to the screen. Can be changed while rendering.
+     */
+    public void setMaxOutputFps(int fps) {
+        rateController.setMaxFps(fps);
+    }
+
+    /**
+     * Lowers the readback rate to what the encoder is currently producing, as reported by the
+     * streaming SDK, so frames it would drop are not converted. 0 removes the limit.
+     */
+    public void setEncoderFps(int fps) {
+        rateController.setEncoderFps(fps);
+    }
+
+    /** Frames rendered but not read back because they were ahead of the target frame rate. */
+    public long getRateSkippedFrames() {
+        return rateController.getSkippedFrames();
+    }
+
+    /**
+     * Selects where RGBA to NV21 conversion happens. When enabled (and the output width is a
+     * multiple of 4 with an even height) a shader pass packs NV21 before readback, so the PBOs
+     * carry 1.5 bytes per pixel instead of 4 and the CPU conversion is skipped. Can be toggled
+     * while rendering; the switch takes effect on the next frame.
+     */
+    public void setGpuConversionEnabled(boolean enabled) {
+        gpuConversionEnabled = enabled;
+    }
+
+    /**
+     * Selects the matrix and range of the streamed NV21, for both the CPU converter and the
+     * GPU pass. Can be changed while rendering; takes effect on the next frame.
+     */
+    public void setColorSpec(ColorSpec spec) {
+        colorSpec = spec;
+        nv21Converter.setColorSpec(spec);
+    }
+
+    public ColorSpec getColorSpec() {
+        return colorSpec;
+    }
+
+    /**
+     * Turns the render-thread trace on or off. While off, tracing costs one volatile read per
+     * event; while on, events go into a preallocated ring without logging or allocating.
+     */
+    public void setTracingEnabled(boolean enabled) {
+        trace.setEnabled(enabled);
+    }
 
-        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
-        currentPboIndex = nextPboIndex;
+    /** The most recent trace events, oldest first, one per line. */
+    public String dumpTrace() {
+        return trace.dump();
     }
 
     // Add this method
     public void cleanup() {
-        if (pbosInitialized) {
-            GLES30.glDeleteBuffers(2, pboIds, 0);
-            pbosInitialized = false;
+        pboRing.release();
+        texturePublish.release();
+        GlUtil.deleteFramebuffer(compositeFramebuffer);
+        if (nv21Pass != null) {
+            nv21Pass.release();
         }
     }
 
@@ -310,26 +661,93 @@ public class CameraRenderer implements GLSurfaceView.Renderer {
         return screenHeight;
     }
 
-    private static class BufferPool {
-        private final Queue<byte[]> pool = new ArrayDeque<>();
-        private final int bufferSize;
+    public int getOutputWidth() {
+        return requestedOutputWidth;
+    }
+
+    public int getOutputHeight() {
+        return requestedOutputHeight;
+    }
 
-        BufferPool(int capacity, int bufferSize) {
-            this.bufferSize = bufferSize;
-            for (int i = 0; i < capacity; i++) {
-                pool.offer(new byte[bufferSize]);
-            }
-        }
+    /** Times a finished readback was not yet available and the GL thread moved on instead of waiting. */
+    public long getPboStallsAvoided() {
+        return pboRing.getStallsAvoided();
+    }
 
-        byte[] acquire() {
-            return pool.poll();
-        }
+    /** Frames not streamed because every PBO in the ring was still in flight. */
+    public long getPboFramesSkipped() {
+        return pboRing.getFramesSkipped();
+    }
 
-        void release(byte[] buffer) {
-            if (buffer.length == bufferSize) {
-                pool.offer(buffer);
-            }
+    public long getPboMapFailures() {
+        return pboRing.getMapFailures();
+    }
+
+    /**
+     * Streamed frames issued: readbacks, or texture copies in {@link PublishMode#TEXTURE}, after
+     * rate pacing and unless every buffer was in flight.
+     */
+    public long getFramesProduced() {
+        return framesProduced;
+    }
+
+    /** Readbacks turned into output frames and handed to the listener. */
+    public long getFramesConverted() {
+        return framesConverted;
+    }
+
+    /** Composite textures handed to the texture publisher. */
+    public long getTexturesPublished() {
+        return texturePublish.getFramesPublished();
+    }
+
+    /** Composites not published as textures because the publisher still held every texture. */
+    public long getTexturesSkipped() {
+        return texturePublish.getFramesSkipped();
+    }
+
+    /** Composite textures handed out and not yet released by the texture publisher. */
+    public int getTexturesOutstanding() {
+        return texturePublish.getOutstanding();
+    }
+
+    /** Capture time difference between the front and back images of each composite. */
+    public LatencyHistogram getCameraSkew() {
+        return frameSync.getSkew();
+    }
+
+    /** Composites made without a fresh image from one camera because it was late or stalled. */
+    public long getPairTimeouts() {
+        return frameSync.getTimeouts();
+    }
+
+    public long getOutputPoolHits() {
+        return packedPool.getHits() + directPool.getHits();
+    }
+
+    public long getOutputPoolMisses() {
+        return packedPool.getMisses() + directPool.getMisses();
+    }
+
+    /** Output frames handed to the listener and not yet released. */
+    public int getOutputFramesOutstanding() {
+        return packedPool.getOutstanding() + directPool.getOutstanding();
+    }
+
+    /**
+     * Watches output frames for listeners that drop them without releasing them, reporting
+     * each one to the listener with where it was acquired. Costs a stack trace per frame.
+     */
+    public void setLeakDetection(boolean enabled, FramePool.LeakListener listener) {
+        for (FramePool pool : new FramePool[]{packedPool, directPool}) {
+            pool.setLeakListener(listener);
+            pool.setLeakDetection(enabled);
         }
     }
 
+    /** Output frames found dropped without being released, while leak detection was on. */
+    public long getOutputFrameLeaks() {
+        return packedPool.getLeakCount() + directPool.getLeakCount();
+    }
+
 }
@@ -0,0 +1,100 @@
+package com.codecrush.mymeeting;
+
+import android.content.Context;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Small GLES helpers shared by the renderer and its offscreen passes. All methods must be
+ * called on the GL thread.
+ */
+final class GlUtil {
+    private GlUtil() {
+    }
+
+    static String loadShader(Context context, int resourceId) {
+        try (InputStream is = context.getResources().openRawResource(resourceId)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append("\n");
+            }
+            return sb.toString();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load shader: " + resourceId, e);
+        }
+    }
+
+    static int compileShader(int type, String shaderCode) {
+        int shader = GLES30.glCreateShader(type);
+        GLES30.glShaderSource(shader, shaderCode);
+        GLES30.glCompileShader(shader);
+        return shader;
+    }
+
+    static int createProgram(String vertexShaderCode, String fragmentShaderCode) {
+        int vertexShader = compileShader(GLES30.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = compileShader(GLES30.GL_FRAGMENT_SHADER, fragmentShaderCode);
+
+        int program = GLES30.glCreateProgram();
+        GLES30.glAttachShader(program, vertexShader);
+        GLES30.glAttachShader(program, fragmentShader);
+        GLES30.glLinkProgram(program);
+
+        // Check for linking errors
+        int[] linkStatus = new int[1];
+        GLES30.glGetProgramiv(program, GLES30.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] != GLES30.GL_TRUE) {
+            Log.e("Shader", "Linking failed: " + GLES30.glGetProgramInfoLog(program));
+        }
+        GLES30.glDeleteShader(vertexShader);
+        GLES30.glDeleteShader(fragmentShader);
+        return program;
+    }
+
+    /**
+     * Creates an RGBA8 texture of the given size and a framebuffer rendering into it.
+     *
+     * @param ids receives {framebuffer, texture}
+     */
+    static void createFramebuffer(int width, int height, int[] ids) {
+        int[] handle = new int[1];
+        GLES30.glGenTextures(1, handle, 0);
+        ids[1] = handle[0];
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, ids[1]);
+        GLES30.glTexStorage2D(GLES30.GL_TEXTURE_2D, 1, GLES30.GL_RGBA8, width, height);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, 0);
+
+        GLES30.glGenFramebuffers(1, handle, 0);
+        ids[0] = handle[0];
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, ids[0]);
+        GLES30.glFramebufferTexture2D(GLES30.GL_FRAMEBUFFER, GLES30.GL_COLOR_ATTACHMENT0,
+                GLES30.GL_TEXTURE_2D, ids[1], 0);
+        int status = GLES30.glCheckFramebufferStatus(GLES30.GL_FRAMEBUFFER);
+        if (status != GLES30.GL_FRAMEBUFFER_COMPLETE) {
+            Log.e("GlUtil", "Framebuffer incomplete: " + status);
+        }
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, 0);
+    }
+
+    static void deleteFramebuffer(int[] ids) {
+        if (ids[0] != 0) {
+            GLES30.glDeleteFramebuffers(1, ids, 0);
+        }
+        if (ids[1] != 0) {
+            GLES30.glDeleteTextures(1, ids, 1);
+        }
+        ids[0] = 0;
+        ids[1] = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.codecrush.mymeeting;
+
+import android.content.Context;
+import android.opengl.GLES30;
+
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Offscreen pass that converts an RGBA composite texture into NV21 on the GPU. After
+ * {@link #draw} the pass's framebuffer is bound and holds (width / 4) x (height * 3 / 2) RGBA
+ * texels whose bytes are exactly the NV21 frame, so glReadPixels can read it straight into a
+ * PBO and the CPU conversion is skipped. Requires width % 4 == 0 and an even height.
+ */
+class GpuNV21Pass {
+    private final int program;
+    private final int aPositionHandle, uCompositeHandle, uHeightHandle;
+    private final int uYCoeffsHandle, uUCoeffsHandle, uVCoeffsHandle;
+    private final int[] framebuffer = new int[2];
+    private int width, height;
+    // Uniform values of the last spec drawn with, copied once so draws do not allocate
+    private ColorSpec uniformSpec;
+    private final int[] yCoeffs = new int[4], uCoeffs = new int[4], vCoeffs = new int[4];
+
+    GpuNV21Pass(Context context) {
+        this(GlUtil.loadShader(context, R.raw.nv21_vertex), GlUtil.loadShader(context, R.raw.nv21_fragment));
+    }
+
+    GpuNV21Pass(String vertexShaderCode, String fragmentShaderCode) {
+        program = GlUtil.createProgram(vertexShaderCode, fragmentShaderCode);
+        aPositionHandle = GLES30.glGetAttribLocation(program, "aPosition");
+        uCompositeHandle = GLES30.glGetUniformLocation(program, "uComposite");
+        uHeightHandle = GLES30.glGetUniformLocation(program, "uHeight");
+        uYCoeffsHandle = GLES30.glGetUniformLocation(program, "uYCoeffs");
+        uUCoeffsHandle = GLES30.glGetUniformLocation(program, "uUCoeffs");
+        uVCoeffsHandle = GLES30.glGetUniformLocation(program, "uVCoeffs");
+    }
+
+    static boolean supports(int width, int height) {
+        return width > 0 && height > 0 && width % 4 == 0 && height % 2 == 0;
+    }
+
+    /** Width in RGBA texels of the packed NV21 target, for glReadPixels. */
+    int getReadWidth() {
+        return width / 4;
+    }
+
+    /** Height in rows of the packed NV21 target, for glReadPixels. */
+    int getReadHeight() {
+        return height * 3 / 2;
+    }
+
+    /**
+     * Packs {@code compositeTexture} (a width x height RGBA8 GL_TEXTURE_2D) into NV21 and leaves
+     * the pass's framebuffer bound for reading.
+     *
+     * @param quad interleaved x, y, s, t vertices of a full-screen triangle strip
+     */
+    void draw(int compositeTexture, int width, int height, FloatBuffer quad) {
+        draw(compositeTexture, width, height, ColorSpec.BT601_LIMITED, quad);
+    }
+
+    /** As {@link #draw(int, int, int, FloatBuffer)}, converting with the given matrix and range. */
+    void draw(int compositeTexture, int width, int height, ColorSpec spec, FloatBuffer quad) {
+        if (width != this.width || height != this.height) {
+            GlUtil.deleteFramebuffer(framebuffer);
+            GlUtil.createFramebuffer(width / 4, height * 3 / 2, framebuffer);
+            this.width = width;
+            this.height = height;
+        }
+
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebuffer[0]);
+        GLES30.glViewport(0, 0, getReadWidth(), getReadHeight());
+        GLES30.glUseProgram(program);
+
+        GLES30.glActiveTexture(GLES30.GL_TEXTURE0);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, compositeTexture);
+        GLES30.glUniform1i(uCompositeHandle, 0);
+        GLES30.glUniform1i(uHeightHandle, height);
+        if (spec != uniformSpec) {
+            System.arraycopy(spec.getYCoefficients(), 0, yCoeffs, 0, 4);
+            System.arraycopy(spec.getUCoefficients(), 0, uCoeffs, 0, 4);
+            System.arraycopy(spec.getVCoefficients(), 0, vCoeffs, 0, 4);
+            uniformSpec = spec;
+        }
+        GLES30.glUniform4iv(uYCoeffsHandle, 1, yCoeffs, 0);
+        GLES30.glUniform4iv(uUCoeffsHandle, 1, uCoeffs, 0);
+        GLES30.glUniform4iv(uVCoeffsHandle, 1, vCoeffs, 0);
+
+        quad.position(0);
+        GLES30.glVertexAttribPointer(aPositionHandle, 2, GLES30.GL_FLOAT, false, 16, quad);
+        GLES30.glEnableVertexAttribArray(aPositionHandle);
+        GLES30.glDrawArrays(GLES30.GL_TRIANGLE_STRIP, 0, 4);
+        GLES30.glDisableVertexAttribArray(aPositionHandle);
+    }
+
+    void release() {
+        GlUtil.deleteFramebuffer(framebuffer);
+        GLES30.glDeleteProgram(program);
+        width = 0;
+        height = 0;
+    }
+}
@@ -0,0 +1,109 @@
+package com.codecrush.mymeeting;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Log;
+import android.view.Surface;
+
+import com.codecrush.mymeeting.pipeline.Frame;
+import com.codecrush.mymeeting.pipeline.FramePool;
+import com.codecrush.mymeeting.pipeline.YuvFormat;
+import com.codecrush.mymeeting.pipeline.YuvOrientation;
+import com.codecrush.mymeeting.pipeline.YuvPlaneAssembler;
+
+/**
+ * YUV_420_888 ImageReader added as a second output of a camera's capture session. Each image
+ * is packed straight into a pooled NV21 frame on the reader's background handler, so the
+ * camera feed reaches the encoder without an RGBA readback or any work on the UI thread.
+ *
+ * <p>Images arrive in the sensor's orientation. When a rotation or mirroring is asked for, the
+ * image is packed into a scratch array first and turned upright into the frame, so frames have
+ * the rotated size and match what the preview shows.
+ *
+ * <p>Only the newest image is taken when several are queued. Frames handed to the listener
+ * belong to it until released.
+ */
+class ImageReaderCapture {
+    private static final String TAG = "ImageReaderCapture";
+    // One image being packed, one queued, one for the camera to fill
+    private static final int MAX_IMAGES = 3;
+
+    interface Listener {
+        /** Called on the capture handler's thread; release the frame when done with it. */
+        void onFrame(Frame frame);
+    }
+
+    private final ImageReader reader;
+    private final FramePool pool;
+    private final Listener listener;
+    private final int width, height;
+    private final int rotationDegrees;
+    private final boolean mirror;
+    // Unrotated image, only when it has to be turned; capture thread only
+    private final byte[] scratch;
+    private volatile long framesCaptured;
+
+    /**
+     * @param rotationDegrees clockwise rotation that makes the images upright, see
+     *                        {@link YuvOrientation#uprightRotation}
+     * @param mirror          whether to mirror images left to right, as front camera previews are
+     */
+    ImageReaderCapture(int width, int height, int rotationDegrees, boolean mirror, Handler handler,
+                       Listener listener) {
+        this.reader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+        this.pool = new FramePool(MAX_IMAGES, YuvOrientation.rotatedWidth(width, height, rotationDegrees),
+                YuvOrientation.rotatedHeight(width, height, rotationDegrees));
+        this.listener = listener;
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = rotationDegrees;
+        this.mirror = mirror;
+        this.scratch = rotationDegrees != 0 || mirror ? new byte[YuvFormat.size(width, height)] : null;
+        reader.setOnImageAvailableListener(this::onImageAvailable, handler);
+    }
+
+    /** The surface to add to the capture session and to each repeating request. */
+    Surface getSurface() {
+        return reader.getSurface();
+    }
+
+    long getFramesCaptured() {
+        return framesCaptured;
+    }
+
+    private void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Image reader closed", e);
+            return;
+        }
+        if (image == null) {
+            return;
+        }
+        Frame frame = pool.acquire();
+        try {
+            Image.Plane[] planes = image.getPlanes();
+            byte[] packed = scratch != null ? scratch : frame.getData();
+            YuvPlaneAssembler.toNV21(planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    width, height, packed);
+            if (scratch != null) {
+                YuvOrientation.transform(scratch, width, height, rotationDegrees, mirror, frame.getData());
+            }
+            frame.setTimestampNs(image.getTimestamp());
+        } finally {
+            image.close();
+        }
+        framesCaptured++;
+        listener.onFrame(frame);
+    }
+
+    void close() {
+        reader.close();
+    }
+}
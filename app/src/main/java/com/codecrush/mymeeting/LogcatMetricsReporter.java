@@ -0,0 +1,20 @@
+package com.codecrush.mymeeting;
+
+import android.util.Log;
+
+import com.codecrush.mymeeting.pipeline.metrics.MetricsReporter;
+import com.codecrush.mymeeting.pipeline.metrics.MetricsSnapshot;
+
+/** Logs each metrics snapshot as one line of name=value pairs. */
+public class LogcatMetricsReporter implements MetricsReporter {
+    private final String tag;
+
+    public LogcatMetricsReporter(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public void report(MetricsSnapshot snapshot) {
+        Log.i(tag, snapshot.toString());
+    }
+}
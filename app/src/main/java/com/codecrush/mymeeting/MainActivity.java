@@ -1,5 +1,6 @@
 package com.codecrush.mymeeting;
 
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
@@ -20,11 +21,24 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
+import com.codecrush.mymeeting.pipeline.CountingVideoSink;
+import com.codecrush.mymeeting.pipeline.Frame;
+import com.codecrush.mymeeting.pipeline.FramePipeline;
+import com.codecrush.mymeeting.pipeline.LatencyTracker;
+import com.codecrush.mymeeting.pipeline.SpscFrameRing;
+import com.codecrush.mymeeting.pipeline.SwitchableVideoSink;
+import com.codecrush.mymeeting.pipeline.VideoSink;
+import com.codecrush.mymeeting.pipeline.metrics.Counter;
+import com.codecrush.mymeeting.pipeline.metrics.MetricsRegistry;
+import com.codecrush.mymeeting.pipeline.metrics.MetricsReporter;
+import com.codecrush.mymeeting.pipeline.metrics.PipelineMetrics;
+
 import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-import io.agora.base.NV21Buffer;
-import io.agora.base.VideoFrame;
 import io.agora.rtc2.ChannelMediaOptions;
 import io.agora.rtc2.Constants;
 import io.agora.rtc2.IRtcEngineEventHandler;
@@ -33,6 +47,10 @@ import io.agora.rtc2.RtcEngine;
 public class MainActivity extends AppCompatActivity
         implements CameraRenderer.SurfaceTexturesListener,CameraRenderer.OnFrameListener {
 
+    private static final long METRICS_INTERVAL_SECONDS = 5;
+    // READBACK converts the composite to NV12 on the CPU and publishes through videoSink. TEXTURE
+    // hands it to Agora on the GPU instead; opt-in until its EGL sharing is proven on devices
+    private static final CameraRenderer.PublishMode PUBLISH_MODE = CameraRenderer.PublishMode.READBACK;
     private GLSurfaceView glSurfaceView;
     private CameraDevice cameraDeviceBack, cameraDeviceFront;
     private Handler backgroundHandler;
@@ -41,10 +59,19 @@ public class MainActivity extends AppCompatActivity
     private CameraRenderer renderer;
     private RtcEngine agoraEngine;
     private int trackId;
+    // Created on the UI thread, then used on the GL thread only
+    private AgoraTexturePublisher texturePublisher;
     private Handler handler = new Handler();
-    private Integer height,width;
-    private LinkedBlockingQueue<byte[]> frameQueue = new LinkedBlockingQueue<>();
-    private volatile boolean isStreaming = false;
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+    // Frames are counted and dropped until the engine is up, then pushed to Agora
+    private final SwitchableVideoSink videoSink = new SwitchableVideoSink(new CountingVideoSink());
+    // Keeps at most 5 frames queued for the sink, dropping the oldest
+    private final FramePipeline framePipeline = new FramePipeline(new SpscFrameRing(5), this::publishFrame);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private Counter framesPushed;
+    private final ScheduledExecutorService metricsExecutor = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> metricsReport;
+    private volatile MetricsReporter metricsReporter = new LogcatMetricsReporter("Metrics");
 
 
     @Override
@@ -58,8 +85,15 @@ public class MainActivity extends AppCompatActivity
         glSurfaceView.setEGLContextClientVersion(3);
         renderer.setOnFrameListener(this); // Set listener
         glSurfaceView.setRenderer(renderer);
-        width = renderer.getScreenWidth();
-        height = renderer.getScreenHeight();
+        // Draw only when a camera delivers a new image, instead of re-rendering at display rate
+        glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        renderer.setRenderRequester(glSurfaceView::requestRender);
+        renderer.setPublishMode(PUBLISH_MODE);
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            // Debug builds only: report output frames the publish path forgets to release
+            renderer.setLeakDetection(true, acquiredAt -> Log.e("FramePool", "Output frame leaked", acquiredAt));
+        }
+        registerMetrics();
 
 
         initializeAgoraEngine();
@@ -78,14 +112,10 @@ public class MainActivity extends AppCompatActivity
 
 
     @Override
-    public void onFrameAvailable(byte[] nv21Bytes)
+    public void onFrameAvailable(Frame frame)
     {
-            if (frameQueue.size() >= 5)
-            {
-                frameQueue.poll();
-            }
             // Add the frame to the queue (drop old frames if the queue is full)
-            frameQueue.add(nv21Bytes);
+            framePipeline.submit(frame);
     }
 
     @Override
@@ -209,6 +239,13 @@ public class MainActivity extends AppCompatActivity
                     super.onUserOffline(uid, reason);
                     runOnUiThread(()->{Toast.makeText(MainActivity.this, "User Offline", Toast.LENGTH_SHORT).show();});
                 }
+
+                @Override
+                public void onLocalVideoStats(Constants.VideoSourceType source, LocalVideoStats stats) {
+                    super.onLocalVideoStats(source, stats);
+                    // Read back no more frames than the encoder is currently aiming to send
+                    renderer.setEncoderFps(stats.targetFrameRate);
+                }
             });
 
             trackId = agoraEngine.createCustomVideoTrack();
@@ -221,6 +258,7 @@ public class MainActivity extends AppCompatActivity
             option.customVideoTrackId = trackId;
 
             agoraEngine.setExternalVideoSource(true, true, Constants.ExternalVideoSourceType.VIDEO_FRAME);
+            videoSink.setSink(new AgoraVideoSink(agoraEngine, trackId, latencyTracker));
             agoraEngine.joinChannel("007eJxTYLh8jSODaZdc3zE1xpsa0pwCU4rTjxU1f57+QPfBaaOPzVsUGCzSDBLNk40TDVOSLU3MDS0tTCyMzI1STMwMk01SzC1SlBgXpzcEMjKwL//LyMgAgSA+C0NJanEJAwMA/xkeXQ==", "test", 0, option);
 
         } catch (Exception e) {
@@ -229,49 +267,94 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
-    private void pushFrameToAgora(byte[] combinedFrame, int width, int height) {
-        NV21Buffer buffer = new NV21Buffer(combinedFrame, width, height,null);
-        long timestamp = agoraEngine.getCurrentMonotonicTimeInMs();
-        VideoFrame videoFrame = new VideoFrame(buffer, 0, timestamp * 1000000);
-        agoraEngine.pushExternalVideoFrameById(videoFrame, trackId);
+    private void publishFrame(Frame frame) {
+        framesPushed.increment();
+        videoSink.onFrame(frame); // Releases the frame
+    }
+
+    /**
+     * Replaces where read-back frames go, e.g. a {@link com.codecrush.mymeeting.pipeline.LoopbackVideoSink}
+     * to test the pipeline without a network; takes effect from the next frame. Texture
+     * publishing is unaffected.
+     */
+    public void setVideoSink(VideoSink sink) {
+        videoSink.setSink(sink);
     }
 
     private void startStreaming()
     {
-        isStreaming = true;
-        new Thread(() -> {
-            while (isStreaming)
-            {
-
-                    // Wait for the next frame (blocks if queue is empty)
-                    byte[] nv21Frame = frameQueue.poll();
+        framePipeline.start();
+        if (agoraEngine != null) {
+            if (texturePublisher == null) {
+                texturePublisher = new AgoraTexturePublisher(agoraEngine, trackId, latencyTracker);
+            }
+            AgoraTexturePublisher publisher = texturePublisher;
+            renderer.setTexturePublisher(frame -> {
+                publisher.publish(frame);
+                framesPushed.increment();
+            });
+        }
+        if (metricsReport == null) {
+            metricsReport = metricsExecutor.scheduleAtFixedRate(this::reportMetrics,
+                    METRICS_INTERVAL_SECONDS, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
 
-                    if (nv21Frame != null)
-                    {
-                        // Process the frame (e.g., send over network)
-                        pushFrameToAgora(nv21Frame,width,height);
-                    }
-                    else
-                    {
-                        // No frame available (optional: add a small delay)
-                        Thread.yield();
-                    }
+    public void stopStreaming() {
+        framePipeline.stop();
+        renderer.setTexturePublisher(null);
+        if (metricsReport != null) {
+            metricsReport.cancel(false);
+            metricsReport = null;
+            metricsExecutor.execute(this::reportMetrics); // Final totals
+        }
+        Log.i("Latency", "Frame latency, capture to push:\n" + latencyTracker.report());
+    }
 
 
-            }
-        }).start();
+    /** Where periodic metrics snapshots go; logcat by default. */
+    public void setMetricsReporter(MetricsReporter reporter) {
+        metricsReporter = reporter;
     }
 
-    public void stopStreaming() {
-        isStreaming = false;
+    private void registerMetrics() {
+        // Existing counters are read as gauges, so producers pay nothing extra per frame
+        metrics.gauge(PipelineMetrics.FRAMES_RATE_SKIPPED, renderer::getRateSkippedFrames);
+        metrics.gauge(PipelineMetrics.FRAMES_PRODUCED, renderer::getFramesProduced);
+        metrics.gauge(PipelineMetrics.FRAMES_CONVERTED, renderer::getFramesConverted);
+        metrics.gauge(PipelineMetrics.FRAMES_DROPPED, framePipeline::getDroppedFrames);
+        metrics.gauge(PipelineMetrics.FRAMES_SINK_FAILED, framePipeline::getSinkFailures);
+        framesPushed = metrics.counter(PipelineMetrics.FRAMES_PUSHED);
+        metrics.gauge(PipelineMetrics.POOL_HITS, renderer::getOutputPoolHits);
+        metrics.gauge(PipelineMetrics.POOL_MISSES, renderer::getOutputPoolMisses);
+        metrics.gauge(PipelineMetrics.POOL_OUTSTANDING, renderer::getOutputFramesOutstanding);
+        metrics.gauge(PipelineMetrics.POOL_LEAKS, renderer::getOutputFrameLeaks);
+        metrics.gauge(PipelineMetrics.PBO_STALLS_AVOIDED, renderer::getPboStallsAvoided);
+        metrics.gauge(PipelineMetrics.PBO_FRAMES_SKIPPED, renderer::getPboFramesSkipped);
+        metrics.gauge(PipelineMetrics.PBO_MAP_FAILURES, renderer::getPboMapFailures);
+        metrics.gauge(PipelineMetrics.SYNC_SKEW_P95_US, () -> renderer.getCameraSkew().percentileNs(95) / 1000);
+        metrics.gauge(PipelineMetrics.SYNC_TIMEOUTS, renderer::getPairTimeouts);
+        metrics.gauge(PipelineMetrics.QUEUE_DEPTH, framePipeline::getQueueDepth);
+        metrics.gauge(PipelineMetrics.TEXTURES_PUBLISHED, renderer::getTexturesPublished);
+        metrics.gauge(PipelineMetrics.TEXTURES_SKIPPED, renderer::getTexturesSkipped);
+        metrics.gauge(PipelineMetrics.TEXTURES_OUTSTANDING, renderer::getTexturesOutstanding);
     }
 
+    private void reportMetrics() {
+        try {
+            metrics.report(metricsReporter);
+        } catch (RuntimeException e) {
+            // A failing reporter must not cancel the schedule
+            Log.e("Metrics", "Metrics report failed", e);
+        }
+    }
 
     // Include remaining code from previous steps (getCameraId, background thread, etc.)
     @Override
     protected void onResume()
     {
         super.onResume();
+        glSurfaceView.onResume(); // Recreates the GL resources released on pause
         startBackgroundThread();
         startStreaming();
     }
@@ -280,11 +363,12 @@ public class MainActivity extends AppCompatActivity
     protected void onPause()
     {
         super.onPause();
+        stopStreaming();
         closeCamera();
         stopBackgroundThread();
-        glSurfaceView.onPause(); // Stop the rendering thread
+        // Queued while the GL thread still runs; onPause runs queued events before pausing
         cleanupOpenGLResources();
-        stopStreaming();
+        glSurfaceView.onPause(); // Stop the rendering thread
 
     }
 
@@ -293,10 +377,11 @@ public class MainActivity extends AppCompatActivity
     {
         super.onDestroy();
 
+        // GL resources were already released in onPause, while the GL thread could still run
         closeCamera();
         stopBackgroundThread();
-        cleanupOpenGLResources();
-        startStreaming();
+        stopStreaming();
+        metricsExecutor.shutdown();
 
         if (agoraEngine != null)
         {
@@ -343,9 +428,15 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    /** Must be called before glSurfaceView.onPause(): a paused GL thread never runs the release. */
     private void cleanupOpenGLResources() {
-        // Queue the cleanup on the OpenGL thread
+        // Forgotten here, so the next startStreaming creates a fresh publisher
+        AgoraTexturePublisher publisher = texturePublisher;
+        texturePublisher = null;
         glSurfaceView.queueEvent(() -> {
+            if (publisher != null) {
+                publisher.release();
+            }
             if (renderer != null) {
                 renderer.cleanup();
             }
@@ -3,6 +3,7 @@ package com.codecrush.mymeeting;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -10,9 +11,12 @@ import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.util.Log;
+import android.util.Size;
 import android.view.Surface;
 import android.view.TextureView;
 import android.widget.Toast;
@@ -21,10 +25,22 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
+import com.codecrush.mymeeting.pipeline.ArgbConverter;
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.CompositeLayout;
+import com.codecrush.mymeeting.pipeline.Frame;
+import com.codecrush.mymeeting.pipeline.FramePool;
+import com.codecrush.mymeeting.pipeline.FrameRateController;
+import com.codecrush.mymeeting.pipeline.LayoutCompositor;
+import com.codecrush.mymeeting.pipeline.SwitchableVideoSink;
+import com.codecrush.mymeeting.pipeline.VideoSink;
+import com.codecrush.mymeeting.pipeline.YuvOrientation;
+import com.codecrush.mymeeting.pipeline.YuvFormat;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
-import io.agora.base.NV21Buffer;
-import io.agora.base.VideoFrame;
 import io.agora.rtc2.ChannelMediaOptions;
 import io.agora.rtc2.Constants;
 import io.agora.rtc2.IRtcEngineEventHandler;
@@ -38,8 +54,46 @@ public class MainActivity2 extends AppCompatActivity {
     private CameraDevice frontCameraDevice;
     private CameraDevice backCameraDevice;
     private Handler handler = new Handler();
-    private RtcEngine agoraEngine;
+    // Set on the UI thread, read on the capture thread
+    private volatile RtcEngine agoraEngine;
     private int trackId;
+    // Composites are released unpublished until the engine is up
+    private final SwitchableVideoSink videoSink = new SwitchableVideoSink(null);
+    // Camera tiles, as indexes into the frames handed to the compositor
+    private static final int FRONT = 0, BACK = 1;
+    private volatile CompositeLayout layout = CompositeLayout.split(FRONT, BACK);
+    private LayoutCompositor compositor;
+    private FramePool compositePool;
+    private final byte[][] tiles = new byte[2][];
+    private final int[] tileWidths = new int[2], tileHeights = new int[2];
+
+    /** Where camera images for the stream come from. */
+    enum CaptureMode {
+        /** Poll each preview with TextureView.getBitmap on the UI thread and convert from RGBA. */
+        TEXTURE_VIEW,
+        /**
+         * Read YUV images from an extra session output and pack them on a background thread,
+         * turned upright for the sensor's orientation and mirrored for the front camera, the
+         * way the previews show them.
+         */
+        IMAGE_READER
+    }
+
+    private static final int CAPTURE_WIDTH = 640, CAPTURE_HEIGHT = 480;
+    /** Intent extra naming a {@link CaptureMode}; ImageReader capture when absent. */
+    public static final String EXTRA_CAPTURE_MODE = "com.codecrush.mymeeting.CAPTURE_MODE";
+    // Chosen once in onCreate, before any camera opens
+    private CaptureMode captureMode = CaptureMode.IMAGE_READER;
+    private HandlerThread captureThread;
+    private Handler captureHandler;
+    private final ImageReaderCapture[] captures = new ImageReaderCapture[2];
+    // Newest image of each camera; touched only on the capture thread
+    private final Frame[] latestFrames = new Frame[2];
+    private final FrameRateController rateController = new FrameRateController(30);
+    // TextureView path: pixels and NV21 output per camera, reused while the view size holds
+    private final ArgbConverter argbConverter = new ArgbConverter(ColorSpec.BT601_FULL);
+    private final int[][] argbBuffers = new int[2][];
+    private final byte[][] nv21Buffers = new byte[2][];
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -49,7 +103,16 @@ public class MainActivity2 extends AppCompatActivity {
         frontCameraTexture = findViewById(R.id.frontCameraTexture);
         backCameraTexture = findViewById(R.id.backCameraTexture);
 
+        String requestedMode = getIntent().getStringExtra(EXTRA_CAPTURE_MODE);
+        if (requestedMode != null) {
+            captureMode = CaptureMode.valueOf(requestedMode);
+        }
         initializeAgoraEngine();
+        if (captureMode == CaptureMode.IMAGE_READER) {
+            captureThread = new HandlerThread("ImageCapture");
+            captureThread.start();
+            captureHandler = new Handler(captureThread.getLooper());
+        }
         setupFrontCamera();
         handler.postDelayed(new Runnable() {
             @Override
@@ -59,7 +122,9 @@ public class MainActivity2 extends AppCompatActivity {
             }
         },5000);
 
-        startStreaming();
+        if (captureMode == CaptureMode.TEXTURE_VIEW) {
+            startStreaming();
+        }
     }
 
     private void initializeAgoraEngine() {
@@ -97,6 +162,7 @@ public class MainActivity2 extends AppCompatActivity {
             option.customVideoTrackId = trackId;
 
             agoraEngine.setExternalVideoSource(true, true, Constants.ExternalVideoSourceType.VIDEO_FRAME);
+            videoSink.setSink(new AgoraVideoSink(agoraEngine, trackId, null));
             agoraEngine.joinChannel("007eJxTYDitHzSlvP3gJvGzIj4P/VSurvSwnHk6+m3w6a0CJ74+VPuqwGCRZpBonmycaJiSbGlibmhpYWJhZG6UYmJmmGySYm6Rsl50UnpDICNDbHE1MyMDBIL4LAwlqcUlDAwAowogVg==", "test", 0, option);
 
         } catch (Exception e) {
@@ -105,14 +171,14 @@ public class MainActivity2 extends AppCompatActivity {
     }
 
     private void setupFrontCamera() {
-        openCamera(CameraCharacteristics.LENS_FACING_FRONT, frontCameraTexture, camera -> frontCameraDevice = camera);
+        openCamera(CameraCharacteristics.LENS_FACING_FRONT, FRONT, frontCameraTexture, camera -> frontCameraDevice = camera);
     }
 
     private void setupBackCamera() {
-        openCamera(CameraCharacteristics.LENS_FACING_BACK, backCameraTexture, camera -> backCameraDevice = camera);
+        openCamera(CameraCharacteristics.LENS_FACING_BACK, BACK, backCameraTexture, camera -> backCameraDevice = camera);
     }
 
-    private void openCamera(int lensFacing, TextureView textureView, CameraCallback callback) {
+    private void openCamera(int lensFacing, int cameraIndex, TextureView textureView, CameraCallback callback) {
         CameraManager cameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
 
         try {
@@ -131,12 +197,24 @@ public class MainActivity2 extends AppCompatActivity {
                         if (surfaceTexture != null) {
                             surfaceTexture.setDefaultBufferSize(textureView.getWidth(), textureView.getHeight());
                             Surface surface = new Surface(surfaceTexture);
+                            List<Surface> outputs = new ArrayList<>(Arrays.asList(surface));
 
                             try {
                                 CaptureRequest.Builder captureRequestBuilder = camera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
                                 captureRequestBuilder.addTarget(surface);
-
-                                camera.createCaptureSession(Arrays.asList(surface), new CameraCaptureSession.StateCallback() {
+                                if (captureMode == CaptureMode.IMAGE_READER) {
+                                    CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+                                    Size size = chooseCaptureSize(characteristics);
+                                    boolean front = lensFacing == CameraCharacteristics.LENS_FACING_FRONT;
+                                    ImageReaderCapture capture = new ImageReaderCapture(size.getWidth(), size.getHeight(),
+                                            uprightRotation(characteristics, front), front,
+                                            captureHandler, frame -> onCameraFrame(cameraIndex, frame));
+                                    captures[cameraIndex] = capture;
+                                    outputs.add(capture.getSurface());
+                                    captureRequestBuilder.addTarget(capture.getSurface());
+                                }
+
+                                camera.createCaptureSession(outputs, new CameraCaptureSession.StateCallback() {
                                     @Override
                                     public void onConfigured(@NonNull CameraCaptureSession session) {
                                         try {
@@ -195,16 +273,80 @@ public class MainActivity2 extends AppCompatActivity {
         return null;
     }
 
+    /** Clockwise rotation that turns the camera's images upright on the current display. */
+    private int uprightRotation(CameraCharacteristics characteristics, boolean front) {
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        int displayDegrees;
+        switch (getWindowManager().getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_90:
+                displayDegrees = 90;
+                break;
+            case Surface.ROTATION_180:
+                displayDegrees = 180;
+                break;
+            case Surface.ROTATION_270:
+                displayDegrees = 270;
+                break;
+            default:
+                displayDegrees = 0;
+                break;
+        }
+        return YuvOrientation.uprightRotation(sensorOrientation != null ? sensorOrientation : 0,
+                displayDegrees, front);
+    }
+
+    /** The smallest YUV output size covering 640x480, or the largest one if none does. */
+    private static Size chooseCaptureSize(CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] sizes = map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null;
+        if (sizes == null || sizes.length == 0) {
+            return new Size(CAPTURE_WIDTH, CAPTURE_HEIGHT);
+        }
+        Size best = null, largest = sizes[0];
+        for (Size size : sizes) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if (area > (long) largest.getWidth() * largest.getHeight()) {
+                largest = size;
+            }
+            if (size.getWidth() >= CAPTURE_WIDTH && size.getHeight() >= CAPTURE_HEIGHT
+                    && (best == null || area < (long) best.getWidth() * best.getHeight())) {
+                best = size;
+            }
+        }
+        return best != null ? best : largest;
+    }
+
+    /**
+     * Keeps each camera's newest image and streams a composite once both cameras are running.
+     * Composites are driven by the front camera and paced to 30 fps on its timestamps alone:
+     * the two cameras' clocks need not agree, and interleaving them would look out of order.
+     * Runs on the capture thread.
+     */
+    private void onCameraFrame(int camera, Frame frame) {
+        if (latestFrames[camera] != null) {
+            latestFrames[camera].release();
+        }
+        latestFrames[camera] = frame;
+        Frame front = latestFrames[FRONT], back = latestFrames[BACK];
+        if (camera != FRONT || front == null || back == null || agoraEngine == null
+                || !rateController.shouldCapture(frame.getTimestampNs())) {
+            return;
+        }
+        videoSink.onFrame(combineFrames(front.getData(), front.getWidth(), front.getHeight(),
+                back.getData(), back.getWidth(), back.getHeight()));
+    }
+
     private void startStreaming() {
         handler.postDelayed(new Runnable() {
             @Override
             public void run() {
-                byte[] frontFrame = getNV21FromTexture(frontCameraTexture);
-                byte[] backFrame = getNV21FromTexture(backCameraTexture);
+                byte[] frontFrame = getNV21FromTexture(frontCameraTexture, FRONT);
+                byte[] backFrame = getNV21FromTexture(backCameraTexture, BACK);
 
                 if (frontFrame != null && backFrame != null) {
-                    byte[] combinedFrame = combineFrames(frontFrame, backFrame, frontCameraTexture.getWidth(), frontCameraTexture.getHeight()*2);
-                    pushFrameToAgora(combinedFrame);
+                    Frame combinedFrame = combineFrames(frontFrame, frontCameraTexture.getWidth(), frontCameraTexture.getHeight(),
+                            backFrame, backCameraTexture.getWidth(), backCameraTexture.getHeight());
+                    videoSink.onFrame(combinedFrame);
                 }
 
                 handler.postDelayed(this, 33); // Run at ~30 FPS
@@ -212,93 +354,92 @@ public class MainActivity2 extends AppCompatActivity {
         }, 33);
     }
 
-    private byte[] getNV21FromTexture(TextureView textureView) {
+    /**
+     * Composes the two camera tiles into a pooled frame one front tile wide and two tall. Tiles
+     * of other sizes are scaled into place; the frame returns to the pool once Agora releases it.
+     */
+    private Frame combineFrames(byte[] frontFrame, int frontWidth, int frontHeight,
+                                byte[] backFrame, int backWidth, int backHeight) {
+        int canvasWidth = frontWidth, canvasHeight = frontHeight * 2;
+        if (compositePool == null || compositePool.getWidth() != canvasWidth
+                || compositePool.getHeight() != canvasHeight) {
+            if (compositor != null) {
+                compositor.shutdown();
+            }
+            compositor = new LayoutCompositor(canvasWidth, canvasHeight, YuvFormat.NV21, layout,
+                    LayoutCompositor.Filter.BILINEAR, Runtime.getRuntime().availableProcessors());
+            compositePool = new FramePool(4, canvasWidth, canvasHeight);
+        }
+        compositor.setLayout(layout);
+        tiles[FRONT] = frontFrame;
+        tiles[BACK] = backFrame;
+        tileWidths[FRONT] = frontWidth;
+        tileHeights[FRONT] = frontHeight;
+        tileWidths[BACK] = backWidth;
+        tileHeights[BACK] = backHeight;
+        Frame combined = compositePool.acquire();
+        compositor.compose(tiles, YuvFormat.NV21, tileWidths, tileHeights, combined.getData());
+        return combined;
+    }
+
+    /** Sets where each camera appears in the streamed composite; takes effect on the next frame. */
+    public void setLayout(CompositeLayout layout) {
+        this.layout = layout;
+    }
+
+    private byte[] getNV21FromTexture(TextureView textureView, int camera) {
         Bitmap bitmap = textureView.getBitmap();
         if (bitmap == null) return null;
 
         // Convert Bitmap to NV21
         int width = bitmap.getWidth();
         int height = bitmap.getHeight();
-        int[] argb = new int[width * height];
-        bitmap.getPixels(argb, 0, width, 0, 0, width, height);
-        return convertToNV21(argb, width, height);
-    }
-
-    private byte[] convertToNV21(int[] argb, int width, int height) {
-        int frameSize = width * height;
-        byte[] nv21 = new byte[frameSize * 3 / 2];
-
-        int yIndex = 0;      // Index for Y values
-        int uvIndex = frameSize; // Start of UV plane
-
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                int argbPixel = argb[j * width + i];
-
-                // Extract ARGB components
-                int r = (argbPixel >> 16) & 0xFF; // Red
-                int g = (argbPixel >> 8) & 0xFF;  // Green
-                int b = argbPixel & 0xFF;         // Blue
-
-                // Calculate Y component
-                int y = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-                y = y < 0 ? 0 : Math.min(y, 255);
-
-                // Calculate U and V components
-                int u = (int) (-0.14713 * r - 0.28886 * g + 0.436 * b + 128);
-                int v = (int) (0.615 * r - 0.51498 * g - 0.10001 * b + 128);
-                u = u < 0 ? 0 : Math.min(u, 255);
-                v = v < 0 ? 0 : Math.min(v, 255);
-
-                // Assign Y value
-                nv21[yIndex++] = (byte) y;
-
-                // Assign UV values (4:2:0 subsampling)
-                // UV values are written only for every 2x2 block
-                if (j % 2 == 0 && i % 2 == 0 && uvIndex < nv21.length - 1) {
-                    nv21[uvIndex++] = (byte) v; // V plane
-                    nv21[uvIndex++] = (byte) u; // U plane
-                }
-            }
+        if (argbBuffers[camera] == null || argbBuffers[camera].length != width * height) {
+            argbBuffers[camera] = new int[width * height];
+            nv21Buffers[camera] = new byte[YuvFormat.size(width, height)];
         }
-
-        return nv21;
+        bitmap.getPixels(argbBuffers[camera], 0, width, 0, 0, width, height);
+        bitmap.recycle();
+        argbConverter.convert(argbBuffers[camera], width, height, nv21Buffers[camera]);
+        return nv21Buffers[camera];
     }
 
-
-
-    private byte[] combineFrames(byte[] frontFrame, byte[] backFrame, int width, int height) {
-        int frameSizePerCamera = width * height / 2; // Each camera provides half the height
-        int totalFrameSize = width * height;        // Combined frame size for Y plane
-        byte[] combined = new byte[totalFrameSize * 3 / 2];
-
-        // Combine Y plane
-        System.arraycopy(frontFrame, 0, combined, 0, frameSizePerCamera); // Top half from front camera
-        System.arraycopy(backFrame, 0, combined, frameSizePerCamera, frameSizePerCamera); // Bottom half from back camera
-
-        // Combine UV planes
-        int uvSizePerCamera = frameSizePerCamera / 2;
-        System.arraycopy(frontFrame, frameSizePerCamera, combined, totalFrameSize, uvSizePerCamera);
-        System.arraycopy(backFrame, frameSizePerCamera, combined, totalFrameSize + uvSizePerCamera, uvSizePerCamera);
-
-        return combined;
-    }
-
-
-    private void pushFrameToAgora(byte[] combinedFrame) {
-        NV21Buffer buffer = new NV21Buffer(combinedFrame, frontCameraTexture.getWidth(), frontCameraTexture.getHeight(),null);
-        long timestamp = agoraEngine.getCurrentMonotonicTimeInMs();
-        VideoFrame videoFrame = new VideoFrame(buffer, 0, timestamp * 1000000);
-        agoraEngine.pushExternalVideoFrameById(videoFrame, trackId);
+    /** Replaces where composites go; takes effect from the next composite. */
+    public void setVideoSink(VideoSink sink) {
+        videoSink.setSink(sink);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        handler.removeCallbacksAndMessages(null); // Stops the TextureView polling loop
         if (frontCameraDevice != null)
             frontCameraDevice.close();
         if (backCameraDevice != null)
             backCameraDevice.close();
+        if (captureThread != null) {
+            // Closing the readers after the thread stops keeps a callback from using a closed reader
+            captureThread.quitSafely();
+            try {
+                captureThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (ImageReaderCapture capture : captures) {
+                if (capture != null) {
+                    capture.close();
+                }
+            }
+            for (int i = 0; i < latestFrames.length; i++) {
+                if (latestFrames[i] != null) {
+                    latestFrames[i].release();
+                    latestFrames[i] = null;
+                }
+            }
+        }
+        if (compositor != null) {
+            compositor.shutdown();
+        }
         if (agoraEngine != null)
         {
             agoraEngine.destroyCustomAudioTrack(trackId);
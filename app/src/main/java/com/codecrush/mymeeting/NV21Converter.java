@@ -1,14 +1,179 @@
 package com.codecrush.mymeeting;
 
-public class NV21Converter {
-    static {
-        System.loadLibrary("nv21_converter");
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.ConversionKernel;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+import com.codecrush.mymeeting.pipeline.YuvFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * RGBA to NV21/NV12 in native code (libnv21_converter). The library picks its inner loop when
+ * it loads: NEON on arm64, AVX2 or SSE4.1 on x86_64 depending on the CPU, scalar otherwise.
+ *
+ * <p>{@link #selectKernel()} is what callers should use. It returns the native kernel only if
+ * the library loaded and its output matched {@link YUVConverter#JAVA_KERNEL} byte for byte on a
+ * test frame, and {@link YUVConverter#DEFAULT_KERNEL} otherwise, so a missing or broken library
+ * costs speed, never correctness. The outcome is decided once per process; {@link #getStatus()}
+ * says which way it went and why. Non-direct ByteBuffers always go through the Java kernel.
+ */
+public final class NV21Converter implements ConversionKernel {
+    private static final NV21Converter NATIVE = new NV21Converter();
+    private static final String loadError = load();
+    private static volatile ConversionKernel selected;
+    private static volatile String status;
+
+    // Coefficients of the last spec used; specs are few and rarely change
+    private volatile PackedSpec packed;
+
+    private NV21Converter() {
+    }
+
+    private static String load() {
+        try {
+            String dir = System.getProperty("nv21.library.path");
+            if (dir != null) {
+                System.load(new java.io.File(dir, System.mapLibraryName("nv21_converter"))
+                        .getAbsolutePath());
+            } else {
+                System.loadLibrary("nv21_converter");
+            }
+            return null;
+        } catch (UnsatisfiedLinkError | SecurityException e) {
+            return e.toString();
+        }
+    }
+
+    /** Whether libnv21_converter loaded; it may still fail the self-check. */
+    public static boolean isNativeLoaded() {
+        return loadError == null;
+    }
+
+    /** The native kernel, for tests and benchmarks; null when the library did not load. */
+    static NV21Converter nativeKernel() {
+        return loadError == null ? NATIVE : null;
+    }
+
+    /** The kernel to convert with: native when it loaded and passed its self-check, else Java. */
+    public static ConversionKernel selectKernel() {
+        ConversionKernel kernel = selected;
+        if (kernel == null) {
+            synchronized (NV21Converter.class) {
+                kernel = selected;
+                if (kernel == null) {
+                    String failure = loadError != null ? loadError : NATIVE.selfCheck();
+                    if (failure == null) {
+                        kernel = NATIVE;
+                        status = "native (" + nativeVariant() + ")";
+                    } else {
+                        kernel = YUVConverter.DEFAULT_KERNEL;
+                        status = "java: " + failure;
+                    }
+                    selected = kernel;
+                }
+            }
+        }
+        return kernel;
+    }
+
+    /** Which kernel {@link #selectKernel()} chose, and why the native one was passed over. */
+    public static String getStatus() {
+        selectKernel();
+        return status;
     }
 
-    public static native void convertRgbaToNv21(
-            byte[] rgbaInput, int width, int height, byte[] nv21Output
-    );
+    /** Converts a whole frame to NV21 with the selected kernel, in BT.601 limited range. */
+    public static void convertRgbaToNv21(byte[] rgbaInput, int width, int height, byte[] nv21Output) {
+        selectKernel().convertRows(rgbaInput, width, height, nv21Output, ColorSpec.BT601_LIMITED, 0, height);
+    }
+
+    @Override
+    public void convertRows(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec,
+                            int rowStart, int rowEnd) {
+        checkBand(rgba.length, nv21.length, width, height, rowStart, rowEnd);
+        nativeConvertArray(rgba, nv21, width, height, 0, coefficients(spec), rowStart, rowEnd);
+    }
+
+    @Override
+    public void convertRows(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset,
+                            ColorSpec spec, int rowStart, int rowEnd) {
+        if (!rgba.isDirect() || !out.isDirect()) {
+            // Only direct buffers have an address native code can use
+            YUVConverter.DEFAULT_KERNEL.convertRows(rgba, width, height, out, vOffset, spec, rowStart, rowEnd);
+            return;
+        }
+        if (vOffset != 0 && vOffset != 1) {
+            throw new IllegalArgumentException("vOffset must be 0 or 1: " + vOffset);
+        }
+        // Native code ignores position and limit, so the whole capacity must fit the frame
+        checkBand(rgba.capacity(), out.capacity(), width, height, rowStart, rowEnd);
+        nativeConvertBuffer(rgba, out, width, height, vOffset, coefficients(spec), rowStart, rowEnd);
+    }
+
+    private static void checkBand(int rgbaLength, int outLength, int width, int height,
+                                  int rowStart, int rowEnd) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        if (rgbaLength < width * height * 4 || outLength < YuvFormat.size(width, height)) {
+            throw new IllegalArgumentException("Buffers too small for " + width + "x" + height);
+        }
+        if (rowStart < 0 || (rowStart & 1) != 0 || rowEnd > height || rowEnd < rowStart) {
+            throw new IllegalArgumentException("Invalid rows " + rowStart + ".." + rowEnd);
+        }
+    }
+
+    private int[] coefficients(ColorSpec spec) {
+        PackedSpec current = packed;
+        if (current == null || current.spec != spec) {
+            current = new PackedSpec(spec);
+            packed = current;
+        }
+        return current.coefficients;
+    }
+
+    /** Compares against the Java kernel on an odd-sized random frame; null when they agree. */
+    private String selfCheck() {
+        int width = 37, height = 19;
+        byte[] rgba = new byte[width * height * 4];
+        new Random(21).nextBytes(rgba);
+        int size = YuvFormat.size(width, height);
+        for (ColorSpec spec : new ColorSpec[]{ColorSpec.BT601_LIMITED, ColorSpec.BT709_FULL}) {
+            byte[] expected = new byte[size];
+            byte[] actual = new byte[size];
+            YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, spec, 0, height);
+            try {
+                convertRows(rgba, width, height, actual, spec, 0, height);
+            } catch (UnsatisfiedLinkError e) {
+                return e.toString();
+            }
+            for (int i = 0; i < size; i++) {
+                if (expected[i] != actual[i]) {
+                    return "native output differs at byte " + i + " (" + spec + ")";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class PackedSpec {
+        final ColorSpec spec;
+        final int[] coefficients = new int[12];
+
+        PackedSpec(ColorSpec spec) {
+            this.spec = spec;
+            System.arraycopy(spec.getYCoefficients(), 0, coefficients, 0, 4);
+            System.arraycopy(spec.getUCoefficients(), 0, coefficients, 4, 4);
+            System.arraycopy(spec.getVCoefficients(), 0, coefficients, 8, 4);
+        }
+    }
 
+    private static native String nativeVariant();
 
+    private static native void nativeConvertArray(byte[] rgba, byte[] out, int width, int height,
+                                                  int vOffset, int[] coefficients, int rowStart, int rowEnd);
 
+    private static native void nativeConvertBuffer(ByteBuffer rgba, ByteBuffer out, int width, int height,
+                                                   int vOffset, int[] coefficients, int rowStart, int rowEnd);
 }
@@ -0,0 +1,199 @@
+package com.codecrush.mymeeting;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Ring of pixel pack buffers for asynchronous glReadPixels. Every readback is followed by a
+ * fence, and a buffer is only mapped once a zero-timeout glClientWaitSync reports that fence
+ * signalled, so the GL thread never blocks in glMapBufferRange waiting for the GPU. When every
+ * buffer is still in flight the frame's readback is skipped instead.
+ *
+ * <p>All methods except the counters must be called on the GL thread.
+ */
+class PboRing {
+    private static final String TAG = "PboRing";
+
+    private int[] ids = new int[0];
+    private long[] fences = new long[0];
+    private int[] readBytes = new int[0];
+    private long[] timestamps = new long[0];
+    private int bufferSize;
+    private int writeIndex, readIndex, pending;
+    private int mappedBytes;
+    private long mappedTimestampNs;
+    // Written on the GL thread only, so plain increments of volatiles are enough for readers
+    private volatile long stallsAvoided, framesSkipped, mapFailures;
+
+    /**
+     * (Re)creates {@code depth} buffers of {@code bufferSize} bytes each. Pending readbacks are
+     * discarded; the counters are kept.
+     */
+    void allocate(int depth, int bufferSize) {
+        if (depth < 2) {
+            throw new IllegalArgumentException("PBO ring needs at least 2 buffers: " + depth);
+        }
+        release();
+        ids = new int[depth];
+        fences = new long[depth];
+        readBytes = new int[depth];
+        timestamps = new long[depth];
+        this.bufferSize = bufferSize;
+
+        GLES30.glGenBuffers(depth, ids, 0);
+        for (int id : ids) {
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, id);
+            GLES30.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, bufferSize, null, GLES30.GL_STREAM_READ);
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    int getDepth() {
+        return ids.length;
+    }
+
+    int getPending() {
+        return pending;
+    }
+
+    boolean isFull() {
+        return pending == ids.length;
+    }
+
+    /** Records a frame whose readback was dropped because every buffer was still in flight. */
+    void skipFrame() {
+        framesSkipped++;
+    }
+
+    /**
+     * Reads a {@code width} x {@code height} RGBA region of the bound read framebuffer into the
+     * next free buffer and fences it, remembering the frame's capture timestamp. Returns false,
+     * counting a skipped frame, when the ring is full.
+     */
+    boolean read(int width, int height, long timestampNs) {
+        int bytes = width * height * 4;
+        if (bytes > bufferSize) {
+            throw new IllegalArgumentException("Readback of " + bytes + " bytes exceeds PBO size " + bufferSize);
+        }
+        if (isFull()) {
+            skipFrame();
+            return false;
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, ids[writeIndex]);
+        GLES30.glReadPixels(0, 0, width, height, GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, 0);
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        fences[writeIndex] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        readBytes[writeIndex] = bytes;
+        timestamps[writeIndex] = timestampNs;
+        writeIndex = (writeIndex + 1) % ids.length;
+        pending++;
+        return true;
+    }
+
+    /**
+     * Maps the oldest pending readback if the GPU has finished it. Returns null without
+     * blocking when it has not (counted as a stall avoided), when nothing is pending, or when
+     * mapping fails. A readback whose fence cannot be waited on is dropped unmapped, since
+     * mapping it could block until the GPU is done. A non-null buffer must be handed back with
+     * {@link #unmap()} before the next call.
+     */
+    ByteBuffer mapReady() {
+        while (pending > 0) {
+            // Flush so the fence is guaranteed to signal eventually, but do not wait for it
+            int status = GLES30.glClientWaitSync(fences[readIndex], GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+            if (status == GLES30.GL_TIMEOUT_EXPIRED) {
+                stallsAvoided++;
+                return null;
+            }
+            GLES30.glDeleteSync(fences[readIndex]);
+            fences[readIndex] = 0;
+            if (status == GLES30.GL_WAIT_FAILED) {
+                mapFailures++;
+                Log.e(TAG, "glClientWaitSync failed, dropping readback: " + GLES30.glGetError());
+                advanceRead();
+                continue;
+            }
+
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, ids[readIndex]);
+            ByteBuffer buffer = (ByteBuffer) GLES30.glMapBufferRange(
+                    GLES30.GL_PIXEL_PACK_BUFFER, 0, readBytes[readIndex], GLES30.GL_MAP_READ_BIT);
+            if (buffer == null) {
+                mapFailures++;
+                Log.e(TAG, "Failed to map PBO buffer, OpenGL error: " + GLES30.glGetError());
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+                advanceRead();
+                return null;
+            }
+            mappedBytes = readBytes[readIndex];
+            mappedTimestampNs = timestamps[readIndex];
+            return buffer;
+        }
+        return null;
+    }
+
+    /** Size in bytes of the readback currently mapped by {@link #mapReady()}. */
+    int getMappedBytes() {
+        return mappedBytes;
+    }
+
+    /** Capture timestamp passed to {@link #read} for the readback currently mapped. */
+    long getMappedTimestampNs() {
+        return mappedTimestampNs;
+    }
+
+    /** Unmaps the buffer returned by {@link #mapReady()} and frees it for the next readback. */
+    void unmap() {
+        GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        mappedBytes = 0;
+        advanceRead();
+    }
+
+    private void advanceRead() {
+        readBytes[readIndex] = 0;
+        readIndex = (readIndex + 1) % ids.length;
+        pending--;
+    }
+
+    /** Deletes the buffers and any outstanding fences. */
+    void release() {
+        for (int i = 0; i < fences.length; i++) {
+            if (fences[i] != 0) {
+                GLES30.glDeleteSync(fences[i]);
+            }
+        }
+        if (ids.length > 0 && ids[0] != 0) {
+            GLES30.glDeleteBuffers(ids.length, ids, 0);
+        }
+        invalidate();
+    }
+
+    /** Forgets the handles without deleting them, for when the GL context has been lost. */
+    void invalidate() {
+        Arrays.fill(ids, 0);
+        Arrays.fill(fences, 0);
+        Arrays.fill(readBytes, 0);
+        writeIndex = 0;
+        readIndex = 0;
+        pending = 0;
+        mappedBytes = 0;
+    }
+
+    /** Polls that found the oldest readback unfinished and returned instead of blocking in the map. */
+    long getStallsAvoided() {
+        return stallsAvoided;
+    }
+
+    /** Frames not read back at all because every buffer was still in flight. */
+    long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /** Readbacks lost because their fence could not be waited on or their buffer not mapped. */
+    long getMapFailures() {
+        return mapFailures;
+    }
+}
@@ -0,0 +1,164 @@
+package com.codecrush.mymeeting;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+import com.codecrush.mymeeting.pipeline.TextureFrame;
+import com.codecrush.mymeeting.pipeline.TextureFramePool;
+import com.codecrush.mymeeting.pipeline.TexturePublisher;
+
+/**
+ * Publishes composites as GL textures, with no readback or conversion. Each frame is a copy of
+ * the composite, made with glBlitFramebuffer into one of a small pool of framebuffers, so the
+ * composite can be redrawn while the consumer still reads an earlier frame. A frame goes back
+ * to the pool when the publisher releases it; when every frame is still held, the composite
+ * is skipped.
+ *
+ * <p>Every copy is fenced, and a frame is only published once a zero-timeout glClientWaitSync
+ * reports its fence signalled, so a consumer on a shared context never samples a half-drawn
+ * texture and the GL thread never waits for the GPU.
+ *
+ * <p>All methods except the counters must be called on the GL thread.
+ */
+class TexturePublishStage {
+    private static final String TAG = "TexturePublishStage";
+
+    private final TextureFramePool pool;
+    // Copies waiting for their fence, oldest first
+    private final TextureFrame[] pending;
+    private final long[] fences;
+    private int pendingCount;
+    private final int[] ids = new int[2];
+    private volatile TexturePublisher publisher;
+    // Written on the GL thread only, so plain increments of volatiles are enough for readers
+    private volatile long framesPublished;
+
+    TexturePublishStage(int poolSize) {
+        pool = new TextureFramePool(poolSize);
+        pending = new TextureFrame[poolSize];
+        fences = new long[poolSize];
+    }
+
+    /** Where finished frames go; frames finished while there is none are released unpublished. */
+    void setPublisher(TexturePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    int getPending() {
+        return pendingCount;
+    }
+
+    int getPoolSize() {
+        return pool.getCapacity();
+    }
+
+    /**
+     * Copies the {@code width} x {@code height} colour buffer of {@code sourceFramebuffer} into
+     * a free pooled texture and fences it. Returns false, leaving the composite unpublished,
+     * when the publisher still holds every texture.
+     */
+    boolean copy(int sourceFramebuffer, int width, int height, long timestampNs) {
+        TextureFrame frame = pool.acquire();
+        if (frame == null) {
+            return false;
+        }
+        if (frame.getTextureId() == 0 || frame.getWidth() != width || frame.getHeight() != height) {
+            // Textures are immutable once allocated, so a new size means a new texture
+            ids[0] = frame.getFramebufferId();
+            ids[1] = frame.getTextureId();
+            GlUtil.deleteFramebuffer(ids);
+            GlUtil.createFramebuffer(width, height, ids);
+            frame.setTexture(ids[0], ids[1], width, height);
+        }
+        GLES30.glBindFramebuffer(GLES30.GL_READ_FRAMEBUFFER, sourceFramebuffer);
+        GLES30.glBindFramebuffer(GLES30.GL_DRAW_FRAMEBUFFER, frame.getFramebufferId());
+        GLES30.glBlitFramebuffer(0, 0, width, height, 0, 0, width, height,
+                GLES30.GL_COLOR_BUFFER_BIT, GLES30.GL_NEAREST);
+        GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, 0);
+
+        frame.setTimestampNs(timestampNs);
+        fences[pendingCount] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        pending[pendingCount++] = frame;
+        return true;
+    }
+
+    /** Publishes every copy the GPU has finished, oldest first, without waiting on the rest. */
+    void publishReady() {
+        while (pendingCount > 0) {
+            // Flush so the fence is guaranteed to signal eventually, but do not wait for it
+            int status = GLES30.glClientWaitSync(fences[0], GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+            if (status == GLES30.GL_TIMEOUT_EXPIRED) {
+                return;
+            }
+            if (status == GLES30.GL_WAIT_FAILED) {
+                Log.e(TAG, "glClientWaitSync failed: " + GLES30.glGetError());
+            }
+            GLES30.glDeleteSync(fences[0]);
+            TextureFrame frame = pending[0];
+            removeOldest();
+
+            TexturePublisher target = publisher;
+            if (target == null || status == GLES30.GL_WAIT_FAILED) {
+                frame.release();
+            } else {
+                framesPublished++;
+                target.publish(frame);
+            }
+        }
+    }
+
+    private void removeOldest() {
+        pendingCount--;
+        System.arraycopy(pending, 1, pending, 0, pendingCount);
+        System.arraycopy(fences, 1, fences, 0, pendingCount);
+        pending[pendingCount] = null;
+        fences[pendingCount] = 0;
+    }
+
+    /**
+     * Deletes the fences and every texture, including those the publisher still holds; call
+     * once nothing reads them any more.
+     */
+    void release() {
+        for (int i = 0; i < pendingCount; i++) {
+            GLES30.glDeleteSync(fences[i]);
+        }
+        for (int i = 0; i < pool.getCapacity(); i++) {
+            TextureFrame frame = pool.getFrame(i);
+            ids[0] = frame.getFramebufferId();
+            ids[1] = frame.getTextureId();
+            GlUtil.deleteFramebuffer(ids);
+        }
+        invalidate();
+    }
+
+    /**
+     * Forgets the fences and textures without deleting them, for when the GL context has been
+     * lost. Held frames get new textures once they are released and reused.
+     */
+    void invalidate() {
+        while (pendingCount > 0) {
+            TextureFrame frame = pending[0];
+            removeOldest();
+            frame.release();
+        }
+        for (int i = 0; i < pool.getCapacity(); i++) {
+            pool.getFrame(i).setTexture(0, 0, 0, 0);
+        }
+    }
+
+    /** Frames handed to the publisher. */
+    long getFramesPublished() {
+        return framesPublished;
+    }
+
+    /** Composites not published because the publisher still held every texture. */
+    long getFramesSkipped() {
+        return pool.getExhausted();
+    }
+
+    /** Frames handed out and not yet released, whether fenced here or held by the publisher. */
+    int getOutstanding() {
+        return pool.getOutstanding();
+    }
+}
@@ -1,3 +0,0 @@
-APP_ABI := armeabi-v7a # Match your target ABI
-APP_PLATFORM := android-21
-APP_STL := c++_static
\ No newline at end of file
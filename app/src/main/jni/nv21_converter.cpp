@@ -0,0 +1,356 @@
+// RGBA to NV21/NV12 for NV21Converter. Produces exactly the bytes of YUVConverter's Java
+// kernel: luma per pixel, chroma from the truncated average of each 2x2 block, the same tail
+// rules for an odd last column or row, and the ColorSpec's 16.16 coefficients
+// (value = (r * R + g * G + b * B + offset) >> 16, chroma clamped to 255).
+//
+// The row-pair loop has SIMD variants for NEON (arm64) and SSE4.1 / AVX2 (x86_64). The x86
+// variant is picked once at load from the CPU's features, so one binary runs everywhere.
+
+#include <jni.h>
+#include <stdint.h>
+
+#if defined(__aarch64__)
+#include <arm_neon.h>
+#elif defined(__x86_64__)
+#include <immintrin.h>
+#endif
+
+namespace {
+
+struct Coefficients {
+    int32_t y[4], u[4], v[4]; // {r, g, b, offset}
+};
+
+inline int luma(const Coefficients &k, int r, int g, int b) {
+    return (k.y[0] * r + k.y[1] * g + k.y[2] * b + k.y[3]) >> 16;
+}
+
+inline int chroma(const int32_t *c, int r, int g, int b) {
+    int value = (c[0] * r + c[1] * g + c[2] * b + c[3]) >> 16;
+    return value > 255 ? 255 : value;
+}
+
+inline void putChroma(uint8_t *uv, int vOffset, const Coefficients &k, int r, int g, int b) {
+    uv[vOffset] = (uint8_t) chroma(k.v, r, g, b);
+    uv[1 - vOffset] = (uint8_t) chroma(k.u, r, g, b);
+}
+
+// Converts the blocks of one row pair from column x on; returns nothing, finishes the row.
+void pairTail(const uint8_t *top, const uint8_t *bottom, uint8_t *yTop, uint8_t *yBottom,
+              uint8_t *uv, int x, int width, int vOffset, const Coefficients &k) {
+    for (; x + 1 < width; x += 2) {
+        const uint8_t *p = top + x * 4, *q = bottom + x * 4;
+        yTop[x] = (uint8_t) luma(k, p[0], p[1], p[2]);
+        yTop[x + 1] = (uint8_t) luma(k, p[4], p[5], p[6]);
+        yBottom[x] = (uint8_t) luma(k, q[0], q[1], q[2]);
+        yBottom[x + 1] = (uint8_t) luma(k, q[4], q[5], q[6]);
+        int r = (p[0] + p[4] + q[0] + q[4]) >> 2;
+        int g = (p[1] + p[5] + q[1] + q[5]) >> 2;
+        int b = (p[2] + p[6] + q[2] + q[6]) >> 2;
+        putChroma(uv + x, vOffset, k, r, g, b);
+    }
+    if (x < width) {
+        // Odd width: the block has no right-hand column
+        const uint8_t *p = top + x * 4, *q = bottom + x * 4;
+        yTop[x] = (uint8_t) luma(k, p[0], p[1], p[2]);
+        yBottom[x] = (uint8_t) luma(k, q[0], q[1], q[2]);
+        putChroma(uv + x, vOffset, k, (3 * p[0] + q[0]) >> 2, (3 * p[1] + q[1]) >> 2,
+                  (3 * p[2] + q[2]) >> 2);
+    }
+}
+
+// Odd height: the last block row has no bottom row
+void lastRow(const uint8_t *top, uint8_t *yTop, uint8_t *uv, int width, int vOffset,
+             const Coefficients &k) {
+    for (int x = 0; x < width; x += 2) {
+        const uint8_t *p = top + x * 4;
+        yTop[x] = (uint8_t) luma(k, p[0], p[1], p[2]);
+        int r = 3 * p[0], g = 3 * p[1], b = 3 * p[2];
+        if (x + 1 < width) {
+            yTop[x + 1] = (uint8_t) luma(k, p[4], p[5], p[6]);
+            r += p[4];
+            g += p[5];
+            b += p[6];
+        } else {
+            r += p[0];
+            g += p[1];
+            b += p[2];
+        }
+        putChroma(uv + x, vOffset, k, r >> 2, g >> 2, b >> 2);
+    }
+}
+
+// A SIMD row-pair loop converts whole groups of blocks from column 0 and returns the column
+// it stopped at; pairTail finishes the row.
+typedef int (*PairKernel)(const uint8_t *, const uint8_t *, uint8_t *, uint8_t *, uint8_t *,
+                          int, int, const Coefficients &);
+
+int pairScalar(const uint8_t *, const uint8_t *, uint8_t *, uint8_t *, uint8_t *, int, int,
+               const Coefficients &) {
+    return 0;
+}
+
+#if defined(__x86_64__)
+
+__attribute__((target("sse4.1")))
+inline __m128i mulAdd(__m128i r, __m128i g, __m128i b, const int32_t *c) {
+    __m128i sum = _mm_add_epi32(_mm_mullo_epi32(r, _mm_set1_epi32(c[0])),
+                                _mm_mullo_epi32(g, _mm_set1_epi32(c[1])));
+    sum = _mm_add_epi32(sum, _mm_mullo_epi32(b, _mm_set1_epi32(c[2])));
+    return _mm_srai_epi32(_mm_add_epi32(sum, _mm_set1_epi32(c[3])), 16);
+}
+
+__attribute__((target("sse4.1")))
+inline __m128i lumaSse(__m128i pixels, const Coefficients &k) {
+    __m128i mask = _mm_set1_epi32(0xFF);
+    return mulAdd(_mm_and_si128(pixels, mask), _mm_and_si128(_mm_srli_epi32(pixels, 8), mask),
+                  _mm_and_si128(_mm_srli_epi32(pixels, 16), mask), k.y);
+}
+
+// Sum of one channel over the 2x2 blocks of two pixel pairs per row: 4 blocks
+__attribute__((target("sse4.1")))
+inline __m128i blockAverage(__m128i t0, __m128i t1, __m128i b0, __m128i b1, int shift) {
+    __m128i mask = _mm_set1_epi32(0xFF);
+    __m128i top = _mm_hadd_epi32(_mm_and_si128(_mm_srli_epi32(t0, shift), mask),
+                                 _mm_and_si128(_mm_srli_epi32(t1, shift), mask));
+    __m128i bottom = _mm_hadd_epi32(_mm_and_si128(_mm_srli_epi32(b0, shift), mask),
+                                    _mm_and_si128(_mm_srli_epi32(b1, shift), mask));
+    return _mm_srli_epi32(_mm_add_epi32(top, bottom), 2);
+}
+
+// 8 pixels (4 blocks) per step
+__attribute__((target("sse4.1")))
+int pairSse41(const uint8_t *top, const uint8_t *bottom, uint8_t *yTop, uint8_t *yBottom,
+              uint8_t *uv, int width, int vOffset, const Coefficients &k) {
+    __m128i max = _mm_set1_epi32(255);
+    int x = 0;
+    for (; x + 8 <= width; x += 8) {
+        __m128i t0 = _mm_loadu_si128((const __m128i *) (top + x * 4));
+        __m128i t1 = _mm_loadu_si128((const __m128i *) (top + x * 4 + 16));
+        __m128i b0 = _mm_loadu_si128((const __m128i *) (bottom + x * 4));
+        __m128i b1 = _mm_loadu_si128((const __m128i *) (bottom + x * 4 + 16));
+
+        __m128i yt = _mm_packs_epi32(lumaSse(t0, k), lumaSse(t1, k));
+        __m128i yb = _mm_packs_epi32(lumaSse(b0, k), lumaSse(b1, k));
+        _mm_storel_epi64((__m128i *) (yTop + x), _mm_packus_epi16(yt, yt));
+        _mm_storel_epi64((__m128i *) (yBottom + x), _mm_packus_epi16(yb, yb));
+
+        __m128i r = blockAverage(t0, t1, b0, b1, 0);
+        __m128i g = blockAverage(t0, t1, b0, b1, 8);
+        __m128i b = blockAverage(t0, t1, b0, b1, 16);
+        __m128i v = _mm_min_epi32(mulAdd(r, g, b, k.v), max);
+        __m128i u = _mm_min_epi32(mulAdd(r, g, b, k.u), max);
+        // Each 16-bit lane holds one block's pair, first byte in the low half
+        __m128i pairs = vOffset == 0 ? _mm_or_si128(v, _mm_slli_epi32(u, 8))
+                                     : _mm_or_si128(u, _mm_slli_epi32(v, 8));
+        _mm_storel_epi64((__m128i *) (uv + x), _mm_packus_epi32(pairs, pairs));
+    }
+    return x;
+}
+
+__attribute__((target("avx2")))
+inline __m256i mulAdd256(__m256i r, __m256i g, __m256i b, const int32_t *c) {
+    __m256i sum = _mm256_add_epi32(_mm256_mullo_epi32(r, _mm256_set1_epi32(c[0])),
+                                   _mm256_mullo_epi32(g, _mm256_set1_epi32(c[1])));
+    sum = _mm256_add_epi32(sum, _mm256_mullo_epi32(b, _mm256_set1_epi32(c[2])));
+    return _mm256_srai_epi32(_mm256_add_epi32(sum, _mm256_set1_epi32(c[3])), 16);
+}
+
+__attribute__((target("avx2")))
+inline void storeLuma(uint8_t *out, __m256i pixels, const Coefficients &k) {
+    __m256i mask = _mm256_set1_epi32(0xFF);
+    __m256i y = mulAdd256(_mm256_and_si256(pixels, mask),
+                          _mm256_and_si256(_mm256_srli_epi32(pixels, 8), mask),
+                          _mm256_and_si256(_mm256_srli_epi32(pixels, 16), mask), k.y);
+    __m128i words = _mm_packs_epi32(_mm256_castsi256_si128(y), _mm256_extracti128_si256(y, 1));
+    _mm_storel_epi64((__m128i *) out, _mm_packus_epi16(words, words));
+}
+
+// hadd works within 128-bit lanes, leaving blocks in the order 0 1 4 5 | 2 3 6 7
+__attribute__((target("avx2")))
+inline __m256i blockAverage256(__m256i t0, __m256i t1, __m256i b0, __m256i b1, int shift) {
+    __m256i mask = _mm256_set1_epi32(0xFF);
+    __m128i count = _mm_cvtsi32_si128(shift);
+    __m256i top = _mm256_hadd_epi32(_mm256_and_si256(_mm256_srl_epi32(t0, count), mask),
+                                    _mm256_and_si256(_mm256_srl_epi32(t1, count), mask));
+    __m256i bottom = _mm256_hadd_epi32(_mm256_and_si256(_mm256_srl_epi32(b0, count), mask),
+                                       _mm256_and_si256(_mm256_srl_epi32(b1, count), mask));
+    return _mm256_srli_epi32(_mm256_add_epi32(top, bottom), 2);
+}
+
+// 16 pixels (8 blocks) per step
+__attribute__((target("avx2")))
+int pairAvx2(const uint8_t *top, const uint8_t *bottom, uint8_t *yTop, uint8_t *yBottom,
+             uint8_t *uv, int width, int vOffset, const Coefficients &k) {
+    __m256i max = _mm256_set1_epi32(255);
+    int x = 0;
+    for (; x + 16 <= width; x += 16) {
+        __m256i t0 = _mm256_loadu_si256((const __m256i *) (top + x * 4));
+        __m256i t1 = _mm256_loadu_si256((const __m256i *) (top + x * 4 + 32));
+        __m256i b0 = _mm256_loadu_si256((const __m256i *) (bottom + x * 4));
+        __m256i b1 = _mm256_loadu_si256((const __m256i *) (bottom + x * 4 + 32));
+
+        storeLuma(yTop + x, t0, k);
+        storeLuma(yTop + x + 8, t1, k);
+        storeLuma(yBottom + x, b0, k);
+        storeLuma(yBottom + x + 8, b1, k);
+
+        __m256i r = blockAverage256(t0, t1, b0, b1, 0);
+        __m256i g = blockAverage256(t0, t1, b0, b1, 8);
+        __m256i b = blockAverage256(t0, t1, b0, b1, 16);
+        __m256i v = _mm256_min_epi32(mulAdd256(r, g, b, k.v), max);
+        __m256i u = _mm256_min_epi32(mulAdd256(r, g, b, k.u), max);
+        __m256i pairs = vOffset == 0 ? _mm256_or_si256(v, _mm256_slli_epi32(u, 8))
+                                     : _mm256_or_si256(u, _mm256_slli_epi32(v, 8));
+        pairs = _mm256_permute4x64_epi64(pairs, _MM_SHUFFLE(3, 1, 2, 0)); // Blocks back in order
+        __m128i words = _mm_packus_epi32(_mm256_castsi256_si128(pairs),
+                                         _mm256_extracti128_si256(pairs, 1));
+        _mm_storeu_si128((__m128i *) (uv + x), words);
+    }
+    return x;
+}
+
+#elif defined(__aarch64__)
+
+inline int32x4_t mulAddNeon(uint16x4_t r, uint16x4_t g, uint16x4_t b, const int32_t *c) {
+    int32x4_t sum = vdupq_n_s32(c[3]);
+    sum = vmlaq_n_s32(sum, vreinterpretq_s32_u32(vmovl_u16(r)), c[0]);
+    sum = vmlaq_n_s32(sum, vreinterpretq_s32_u32(vmovl_u16(g)), c[1]);
+    sum = vmlaq_n_s32(sum, vreinterpretq_s32_u32(vmovl_u16(b)), c[2]);
+    return vshrq_n_s32(sum, 16);
+}
+
+inline uint8x8_t lumaNeon(uint8x8_t r8, uint8x8_t g8, uint8x8_t b8, const Coefficients &k) {
+    uint16x8_t r = vmovl_u8(r8), g = vmovl_u8(g8), b = vmovl_u8(b8);
+    int32x4_t low = mulAddNeon(vget_low_u16(r), vget_low_u16(g), vget_low_u16(b), k.y);
+    int32x4_t high = mulAddNeon(vget_high_u16(r), vget_high_u16(g), vget_high_u16(b), k.y);
+    return vqmovun_s16(vcombine_s16(vmovn_s32(low), vmovn_s32(high)));
+}
+
+inline uint8x8_t chromaNeon(uint16x8_t r, uint16x8_t g, uint16x8_t b, const int32_t *c) {
+    int32x4_t low = mulAddNeon(vget_low_u16(r), vget_low_u16(g), vget_low_u16(b), c);
+    int32x4_t high = mulAddNeon(vget_high_u16(r), vget_high_u16(g), vget_high_u16(b), c);
+    return vqmovun_s16(vcombine_s16(vmovn_s32(low), vmovn_s32(high))); // Saturates at 255
+}
+
+// 16 pixels (8 blocks) per step; vld4 splits the channels
+int pairNeon(const uint8_t *top, const uint8_t *bottom, uint8_t *yTop, uint8_t *yBottom,
+             uint8_t *uv, int width, int vOffset, const Coefficients &k) {
+    int x = 0;
+    for (; x + 16 <= width; x += 16) {
+        uint8x16x4_t t = vld4q_u8(top + x * 4);
+        uint8x16x4_t q = vld4q_u8(bottom + x * 4);
+
+        vst1_u8(yTop + x, lumaNeon(vget_low_u8(t.val[0]), vget_low_u8(t.val[1]), vget_low_u8(t.val[2]), k));
+        vst1_u8(yTop + x + 8, lumaNeon(vget_high_u8(t.val[0]), vget_high_u8(t.val[1]), vget_high_u8(t.val[2]), k));
+        vst1_u8(yBottom + x, lumaNeon(vget_low_u8(q.val[0]), vget_low_u8(q.val[1]), vget_low_u8(q.val[2]), k));
+        vst1_u8(yBottom + x + 8, lumaNeon(vget_high_u8(q.val[0]), vget_high_u8(q.val[1]), vget_high_u8(q.val[2]), k));
+
+        // Pairwise sums of each row, then both rows: 8 block sums per channel
+        uint16x8_t r = vshrq_n_u16(vaddq_u16(vpaddlq_u8(t.val[0]), vpaddlq_u8(q.val[0])), 2);
+        uint16x8_t g = vshrq_n_u16(vaddq_u16(vpaddlq_u8(t.val[1]), vpaddlq_u8(q.val[1])), 2);
+        uint16x8_t b = vshrq_n_u16(vaddq_u16(vpaddlq_u8(t.val[2]), vpaddlq_u8(q.val[2])), 2);
+        uint8x8_t v = chromaNeon(r, g, b, k.v);
+        uint8x8_t u = chromaNeon(r, g, b, k.u);
+        uint8x8x2_t pairs;
+        pairs.val[0] = vOffset == 0 ? v : u;
+        pairs.val[1] = vOffset == 0 ? u : v;
+        vst2_u8(uv + x, pairs);
+    }
+    return x;
+}
+
+#endif
+
+PairKernel pairKernel = pairScalar;
+const char *variant = "scalar";
+
+void selectKernel() {
+#if defined(__x86_64__)
+    __builtin_cpu_init();
+    if (__builtin_cpu_supports("avx2")) {
+        pairKernel = pairAvx2;
+        variant = "avx2";
+    } else if (__builtin_cpu_supports("sse4.1")) {
+        pairKernel = pairSse41;
+        variant = "sse4.1";
+    }
+#elif defined(__aarch64__)
+    pairKernel = pairNeon; // Advanced SIMD is mandatory on arm64
+    variant = "neon";
+#endif
+}
+
+void convertRows(const uint8_t *rgba, uint8_t *out, int width, int height, int vOffset,
+                 const Coefficients &k, int rowStart, int rowEnd) {
+    int stride = width * 4;
+    int chromaRowBytes = ((width + 1) / 2) * 2;
+    uint8_t *uvRow = out + width * height + (rowStart / 2) * chromaRowBytes;
+    int y = rowStart;
+    for (; y + 1 < rowEnd; y += 2, uvRow += chromaRowBytes) {
+        const uint8_t *top = rgba + y * stride, *bottom = top + stride;
+        uint8_t *yTop = out + y * width, *yBottom = yTop + width;
+        int x = pairKernel(top, bottom, yTop, yBottom, uvRow, width & ~1, vOffset, k);
+        pairTail(top, bottom, yTop, yBottom, uvRow, x, width, vOffset, k);
+    }
+    if (y < rowEnd) {
+        lastRow(rgba + y * stride, out + y * width, uvRow, width, vOffset, k);
+    }
+}
+
+bool readCoefficients(JNIEnv *env, jintArray array, Coefficients *k) {
+    if (env->GetArrayLength(array) < 12) {
+        return false;
+    }
+    env->GetIntArrayRegion(array, 0, 4, k->y);
+    env->GetIntArrayRegion(array, 4, 4, k->u);
+    env->GetIntArrayRegion(array, 8, 4, k->v);
+    return true;
+}
+
+} // namespace
+
+extern "C" JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *, void *) {
+    selectKernel();
+    return JNI_VERSION_1_6;
+}
+
+extern "C" JNIEXPORT jstring JNICALL
+Java_com_codecrush_mymeeting_NV21Converter_nativeVariant(JNIEnv *env, jclass) {
+    return env->NewStringUTF(variant);
+}
+
+// Bounds are checked on the Java side before either call
+extern "C" JNIEXPORT void JNICALL
+Java_com_codecrush_mymeeting_NV21Converter_nativeConvertArray(
+        JNIEnv *env, jclass, jbyteArray rgbaArray, jbyteArray outArray, jint width, jint height,
+        jint vOffset, jintArray coefficients, jint rowStart, jint rowEnd) {
+    Coefficients k;
+    if (!readCoefficients(env, coefficients, &k)) {
+        return;
+    }
+    // Critical access pins the arrays without copying; nothing below calls back into the VM
+    auto *rgba = (uint8_t *) env->GetPrimitiveArrayCritical(rgbaArray, nullptr);
+    auto *out = (uint8_t *) env->GetPrimitiveArrayCritical(outArray, nullptr);
+    if (rgba != nullptr && out != nullptr) {
+        convertRows(rgba, out, width, height, vOffset, k, rowStart, rowEnd);
+    }
+    if (out != nullptr) {
+        env->ReleasePrimitiveArrayCritical(outArray, out, 0);
+    }
+    if (rgba != nullptr) {
+        env->ReleasePrimitiveArrayCritical(rgbaArray, rgba, JNI_ABORT);
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_codecrush_mymeeting_NV21Converter_nativeConvertBuffer(
+        JNIEnv *env, jclass, jobject rgbaBuffer, jobject outBuffer, jint width, jint height,
+        jint vOffset, jintArray coefficients, jint rowStart, jint rowEnd) {
+    Coefficients k;
+    auto *rgba = (const uint8_t *) env->GetDirectBufferAddress(rgbaBuffer);
+    auto *out = (uint8_t *) env->GetDirectBufferAddress(outBuffer);
+    if (rgba != nullptr && out != nullptr && readCoefficients(env, coefficients, &k)) {
+        convertRows(rgba, out, width, height, vOffset, k, rowStart, rowEnd);
+    }
+}
@@ -0,0 +1,8 @@
+// fragment_2d.glsl
+precision mediump float;                       // Precision qualifier
+varying vec2 vTexCoord;                        // Texture coordinates from vertex shader
+uniform sampler2D uTexture;                    // Offscreen composite
+
+void main() {
+    gl_FragColor = texture2D(uTexture, vTexCoord);
+}
@@ -0,0 +1,47 @@
+#version 300 es
+// nv21_fragment.glsl
+// Packs the RGBA composite into NV21 so glReadPixels returns a stream-ready frame. The target
+// is (width / 4) x (height * 3 / 2) RGBA8: rows [0, height) carry four Y samples per texel and
+// rows [height, height * 3 / 2) carry two VU pairs per texel. The coefficients are the active
+// ColorSpec's {r, g, b, offset} in 16.16 fixed point, the same integers behind the CPU
+// converters' tables, so both paths produce the same bytes.
+precision highp float;
+precision highp int;
+
+uniform sampler2D uComposite;
+uniform int uHeight;
+uniform ivec4 uYCoeffs;
+uniform ivec4 uUCoeffs;
+uniform ivec4 uVCoeffs;
+out vec4 fragColor;
+
+ivec3 rgbAt(int x, int y) {
+    return ivec3(texelFetch(uComposite, ivec2(x, y), 0).rgb * 255.0 + 0.5);
+}
+
+int apply(ivec4 k, ivec3 c) {
+    return (k.r * c.r + k.g * c.g + k.b * c.b + k.a) >> 16;
+}
+
+int luma(ivec3 c) {
+    return apply(uYCoeffs, c);
+}
+
+vec2 chroma(int x, int y) {
+    ivec3 c = (rgbAt(x, y) + rgbAt(x + 1, y) + rgbAt(x, y + 1) + rgbAt(x + 1, y + 1)) >> 2;
+    int u = min(apply(uUCoeffs, c), 255);
+    int v = min(apply(uVCoeffs, c), 255);
+    return vec2(float(v), float(u)); // NV21 stores V first, then U
+}
+
+void main() {
+    ivec2 pos = ivec2(gl_FragCoord.xy);
+    int x = pos.x * 4;
+    if (pos.y < uHeight) {
+        fragColor = vec4(float(luma(rgbAt(x, pos.y))), float(luma(rgbAt(x + 1, pos.y))),
+                float(luma(rgbAt(x + 2, pos.y))), float(luma(rgbAt(x + 3, pos.y)))) / 255.0;
+    } else {
+        int y = (pos.y - uHeight) * 2;
+        fragColor = vec4(chroma(x, y), chroma(x + 2, y)) / 255.0;
+    }
+}
@@ -0,0 +1,7 @@
+#version 300 es
+// nv21_vertex.glsl
+in vec4 aPosition;
+
+void main() {
+    gl_Position = aPosition;
+}
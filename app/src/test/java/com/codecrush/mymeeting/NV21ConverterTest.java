@@ -0,0 +1,117 @@
+package com.codecrush.mymeeting;
+
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.ConversionKernel;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+import com.codecrush.mymeeting.pipeline.YuvFormat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Parity of the native kernel with the Java one. The native cases need libnv21_converter built
+ * for the host (see src/main/jni/CMakeLists.txt) and passed with -Dnv21.library.path, and are
+ * skipped without it.
+ */
+public class NV21ConverterTest {
+    // Odd sizes exercise the tails; 64 and 130 columns run several SIMD steps
+    private static final int[][] SIZES = {{2, 2}, {3, 3}, {16, 2}, {37, 19}, {64, 48}, {130, 33}};
+
+    @Test
+    public void fallsBackToJavaKernelWithoutLibrary() {
+        ConversionKernel kernel = NV21Converter.selectKernel();
+        assertNotNull(NV21Converter.getStatus());
+        if (!NV21Converter.isNativeLoaded()) {
+            assertSame(YUVConverter.DEFAULT_KERNEL, kernel);
+        }
+    }
+
+    @Test
+    public void arraysMatchJavaKernel() {
+        ConversionKernel kernel = nativeKernel();
+        for (ColorSpec spec : specs()) {
+            for (int[] size : SIZES) {
+                int width = size[0], height = size[1];
+                byte[] rgba = randomRgba(width, height, width * 31 + height);
+                byte[] expected = new byte[YuvFormat.size(width, height)];
+                byte[] actual = new byte[expected.length];
+                YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, spec, 0, height);
+                kernel.convertRows(rgba, width, height, actual, spec, 0, height);
+                assertArrayEquals(spec + " " + width + "x" + height, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void directBuffersMatchJavaKernel() {
+        ConversionKernel kernel = nativeKernel();
+        for (int vOffset = 0; vOffset <= 1; vOffset++) {
+            for (int[] size : SIZES) {
+                int width = size[0], height = size[1];
+                int length = YuvFormat.size(width, height);
+                ByteBuffer rgba = ByteBuffer.allocateDirect(width * height * 4);
+                rgba.put(randomRgba(width, height, width + height)).clear();
+                ByteBuffer expected = ByteBuffer.allocateDirect(length);
+                ByteBuffer actual = ByteBuffer.allocateDirect(length);
+                YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, vOffset,
+                        ColorSpec.BT709_LIMITED, 0, height);
+                kernel.convertRows(rgba, width, height, actual, vOffset, ColorSpec.BT709_LIMITED, 0, height);
+                assertArrayEquals(width + "x" + height, toArray(expected), toArray(actual));
+            }
+        }
+    }
+
+    @Test
+    public void bandsMatchWholeFrame() {
+        ConversionKernel kernel = nativeKernel();
+        int width = 50, height = 31;
+        byte[] rgba = randomRgba(width, height, 7);
+        byte[] expected = new byte[YuvFormat.size(width, height)];
+        byte[] actual = new byte[expected.length];
+        YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, ColorSpec.BT601_FULL, 0, height);
+        for (int row = 0; row < height; row += 6) {
+            kernel.convertRows(rgba, width, height, actual, ColorSpec.BT601_FULL, row, Math.min(height, row + 6));
+        }
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortOutput() {
+        nativeKernel().convertRows(new byte[16 * 16 * 4], 16, 16, new byte[16 * 16], ColorSpec.BT601_LIMITED, 0, 16);
+    }
+
+    private static ConversionKernel nativeKernel() {
+        ConversionKernel kernel = NV21Converter.nativeKernel();
+        assumeTrue("libnv21_converter not loaded", kernel != null);
+        return kernel;
+    }
+
+    private static ColorSpec[] specs() {
+        return new ColorSpec[]{ColorSpec.BT601_LIMITED, ColorSpec.BT601_FULL,
+                ColorSpec.BT709_LIMITED, ColorSpec.BT709_FULL};
+    }
+
+    private static byte[] randomRgba(int width, int height, long seed) {
+        byte[] rgba = new byte[width * height * 4];
+        new Random(seed).nextBytes(rgba);
+        // Saturated corners, where full-range chroma needs its clamp
+        rgba[0] = (byte) 255;
+        rgba[1] = 0;
+        rgba[2] = 0;
+        return rgba;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        buffer.clear();
+        buffer.get(bytes);
+        return bytes;
+    }
+}
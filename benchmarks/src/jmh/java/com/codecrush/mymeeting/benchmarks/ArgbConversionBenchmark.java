@@ -0,0 +1,43 @@
+package com.codecrush.mymeeting.benchmarks;
+
+import com.codecrush.mymeeting.pipeline.ArgbConverter;
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * ARGB int pixels to NV21, the per-camera step of the TextureView capture path.
+ */
+@State(Scope.Thread)
+public class ArgbConversionBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private int width, height;
+    private int[] argb;
+    private byte[] nv21;
+    private final ArgbConverter bt601 = new ArgbConverter(ColorSpec.BT601_LIMITED);
+
+    @Setup
+    public void setUp() {
+        width = Frames.width(resolution);
+        height = Frames.height(resolution);
+        argb = Frames.randomArgb(width * height);
+        nv21 = new byte[width * height * 3 / 2];
+    }
+
+    @Benchmark
+    public byte[] convertToNV21() {
+        return ArgbConverter.convertToNV21(argb, width, height);
+    }
+
+    @Benchmark
+    public byte[] convertIntoReusedBuffer() {
+        bt601.convert(argb, width, height, nv21);
+        return nv21;
+    }
+}
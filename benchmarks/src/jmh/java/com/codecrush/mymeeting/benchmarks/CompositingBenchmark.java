@@ -0,0 +1,66 @@
+package com.codecrush.mymeeting.benchmarks;
+
+import com.codecrush.mymeeting.pipeline.CompositeLayout;
+import com.codecrush.mymeeting.pipeline.LayoutCompositor;
+import com.codecrush.mymeeting.pipeline.NV21Compositor;
+import com.codecrush.mymeeting.pipeline.YuvFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Stacking two half-height NV21 camera frames into one, and the layout compositor drawing two
+ * 640x480 camera frames scaled into the same composite. The resolution is the composite's.
+ */
+@State(Scope.Thread)
+public class CompositingBenchmark {
+    @Param({"640x960", "1280x1440", "1080x2340"})
+    public String resolution;
+
+    private int width, height;
+    private byte[] front, back;
+    private byte[][] cameras;
+    private byte[] canvas;
+    private LayoutCompositor nearest, bilinear;
+
+    @Setup
+    public void setUp() {
+        width = Frames.width(resolution);
+        height = Frames.height(resolution);
+        front = Frames.randomBytes(width * height * 3 / 4);
+        back = Frames.randomBytes(width * height * 3 / 4);
+        cameras = new byte[][]{Frames.randomBytes(YuvFormat.size(640, 480)), Frames.randomBytes(YuvFormat.size(640, 480))};
+        canvas = new byte[YuvFormat.size(width, height)];
+        CompositeLayout layout = CompositeLayout.split(0, 1);
+        int workers = Runtime.getRuntime().availableProcessors();
+        nearest = new LayoutCompositor(width, height, YuvFormat.NV21, layout, LayoutCompositor.Filter.NEAREST, workers);
+        bilinear = new LayoutCompositor(width, height, YuvFormat.NV21, layout, LayoutCompositor.Filter.BILINEAR, workers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        nearest.shutdown();
+        bilinear.shutdown();
+    }
+
+    @Benchmark
+    public byte[] combineFrames() {
+        return NV21Compositor.combineFrames(front, back, width, height);
+    }
+
+    @Benchmark
+    public byte[] layoutNearest() {
+        nearest.compose(cameras, 640, 480, canvas);
+        return canvas;
+    }
+
+    @Benchmark
+    public byte[] layoutBilinear() {
+        bilinear.compose(cameras, 640, 480, canvas);
+        return canvas;
+    }
+}
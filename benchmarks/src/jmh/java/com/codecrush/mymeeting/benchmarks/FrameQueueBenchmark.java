@@ -0,0 +1,158 @@
+package com.codecrush.mymeeting.benchmarks;
+
+import com.codecrush.mymeeting.pipeline.BlockingFrameQueue;
+import com.codecrush.mymeeting.pipeline.Frame;
+import com.codecrush.mymeeting.pipeline.FrameQueue;
+import com.codecrush.mymeeting.pipeline.SpscFrameRing;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Producer to publisher hand-off latency, and what the waiting consumer costs. Each op sends a
+ * frame through the queue under test to an echo thread, which plays the publish loop and sends
+ * it straight back; ns/op is the round trip. gapMicros pauses the producer between frames the
+ * way a camera does, and consumerCpuPercent is how much of a core the echo thread burned over
+ * the iteration, idle time included.
+ */
+@State(Scope.Thread)
+public class FrameQueueBenchmark {
+    /** spsc: SpscFrameRing; blocking: LinkedBlockingQueue; spin: LinkedBlockingQueue polled in a yield loop. */
+    @Param({"spsc", "blocking", "spin"})
+    public String queue;
+
+    @Param({"0", "200"})
+    public int gapMicros;
+
+    private FrameQueue toConsumer, toProducer;
+    private Frame frame;
+    private Thread echo;
+    private volatile boolean running;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private long cpuStartNs, wallStartNs, ops;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class ConsumerCpu {
+        public double consumerCpuPercent;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        toConsumer = newQueue(queue);
+        toProducer = newQueue(queue);
+        frame = Frame.wrap(new byte[YUVConverter.nv21Size(2, 2)], 2, 2);
+        running = true;
+        echo = new Thread(this::echoLoop, "FramePublisher");
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    @Setup(Level.Iteration)
+    public void startCpuClock() {
+        cpuStartNs = threads.getThreadCpuTime(echo.getId());
+        wallStartNs = System.nanoTime();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        echo.interrupt();
+        echo.join();
+    }
+
+    @Benchmark
+    public Frame roundTrip(ConsumerCpu cpu) throws InterruptedException {
+        toConsumer.offer(frame);
+        Frame back = toProducer.poll(1, TimeUnit.SECONDS);
+        if (gapMicros > 0) {
+            LockSupport.parkNanos(gapMicros * 1000L);
+        }
+        if ((++ops & 255) == 0) {
+            // Sampled, since reading another thread's CPU clock costs about a microsecond
+            cpu.consumerCpuPercent = 100.0 * (threads.getThreadCpuTime(echo.getId()) - cpuStartNs)
+                    / (System.nanoTime() - wallStartNs);
+        }
+        return back;
+    }
+
+    private void echoLoop() {
+        while (running) {
+            try {
+                Frame received = toConsumer.poll(100, TimeUnit.MILLISECONDS);
+                if (received != null) {
+                    toProducer.offer(received);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static FrameQueue newQueue(String type) {
+        switch (type) {
+            case "spsc":
+                return new SpscFrameRing(5);
+            case "blocking":
+                return new BlockingFrameQueue(5);
+            case "spin":
+                return new SpinningFrameQueue(5);
+            default:
+                throw new IllegalArgumentException("Unknown queue: " + type);
+        }
+    }
+
+    /** The app's original hand-off: a size check and drop-oldest, with a consumer that spins on poll(). */
+    static final class SpinningFrameQueue implements FrameQueue {
+        private final LinkedBlockingQueue<Frame> queue = new LinkedBlockingQueue<>();
+        private final int capacity;
+
+        SpinningFrameQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public Frame offer(Frame frame) {
+            Frame dropped = null;
+            if (queue.size() >= capacity) {
+                dropped = queue.poll();
+            }
+            queue.add(frame);
+            return dropped;
+        }
+
+        @Override
+        public Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            Frame frame;
+            while ((frame = queue.poll()) == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    return null;
+                }
+                Thread.yield();
+            }
+            return frame;
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.codecrush.mymeeting.benchmarks;
+
+import java.util.Random;
+
+/** Fixture helpers shared by the benchmarks. Resolutions are written as "WIDTHxHEIGHT". */
+final class Frames {
+    private Frames() {
+    }
+
+    static int width(String resolution) {
+        return Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+    }
+
+    static int height(String resolution) {
+        return Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+    }
+
+    static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    static int[] randomArgb(int pixels) {
+        Random random = new Random(42);
+        int[] argb = new int[pixels];
+        for (int i = 0; i < pixels; i++) {
+            argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return argb;
+    }
+}
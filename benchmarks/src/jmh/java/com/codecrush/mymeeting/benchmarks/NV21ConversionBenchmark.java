@@ -0,0 +1,53 @@
+package com.codecrush.mymeeting.benchmarks;
+
+import com.codecrush.mymeeting.pipeline.ParallelNV21Converter;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Serial vs row-parallel RGBA to NV21 throughput.
+ */
+@State(Scope.Thread)
+public class NV21ConversionBenchmark {
+    @Param({"640x960", "1080x1920", "1440x3120"})
+    public String resolution;
+
+    @Param({"0"}) // 0 = one worker per available core
+    public int workers;
+
+    private int width, height;
+    private byte[] rgba, nv21;
+    private ParallelNV21Converter parallel;
+
+    @Setup
+    public void setUp() {
+        width = Frames.width(resolution);
+        height = Frames.height(resolution);
+        rgba = Frames.randomBytes(width * height * 4);
+        nv21 = new byte[YUVConverter.nv21Size(width, height)];
+        parallel = new ParallelNV21Converter(workers > 0 ? workers : Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        parallel.shutdown();
+    }
+
+    @Benchmark
+    public byte[] serial() {
+        YUVConverter.rgbaToNV21(rgba, width, height, nv21);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] parallel() {
+        parallel.rgbaToNV21(rgba, width, height, nv21);
+        return nv21;
+    }
+}
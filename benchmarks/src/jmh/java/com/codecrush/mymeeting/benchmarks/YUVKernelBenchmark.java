@@ -0,0 +1,77 @@
+package com.codecrush.mymeeting.benchmarks;
+
+import com.codecrush.mymeeting.pipeline.ColorSpec;
+import com.codecrush.mymeeting.pipeline.LegacyYUVConverter;
+import com.codecrush.mymeeting.pipeline.YUVConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Original per-pixel loop vs the two-row YUVConverter kernel, single threaded. The BT.709
+ * variant shows that the color spec's tables make every matrix cost the same. The swar
+ * variants read pixel pairs as longs instead of bytes, from a heap array and from a direct
+ * buffer standing in for a mapped PBO.
+ */
+@State(Scope.Thread)
+public class YUVKernelBenchmark {
+    @Param({"640x960", "1080x1920", "1080x2340"})
+    public String resolution;
+
+    private int width, height;
+    private byte[] rgba, nv21;
+    private ByteBuffer rgbaDirect, nv21Direct;
+
+    @Setup
+    public void setUp() {
+        width = Frames.width(resolution);
+        height = Frames.height(resolution);
+        rgba = Frames.randomBytes(width * height * 4);
+        nv21 = new byte[YUVConverter.nv21Size(width, height)];
+        rgbaDirect = ByteBuffer.allocateDirect(rgba.length);
+        rgbaDirect.put(rgba).clear();
+        nv21Direct = ByteBuffer.allocateDirect(nv21.length);
+    }
+
+    @Benchmark
+    public byte[] perPixelLoop() {
+        return LegacyYUVConverter.rgbaToNV21(rgba, width, height);
+    }
+
+    @Benchmark
+    public byte[] twoRowKernel() {
+        YUVConverter.rgbaToNV21(rgba, width, height, nv21);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] twoRowKernelBt709() {
+        YUVConverter.rgbaToNV21(rgba, width, height, nv21, ColorSpec.BT709_FULL);
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] swarKernel() {
+        YUVConverter.SWAR_KERNEL.convertRows(rgba, width, height, nv21, ColorSpec.BT601_LIMITED, 0, height);
+        return nv21;
+    }
+
+    @Benchmark
+    public ByteBuffer byteKernelDirect() {
+        YUVConverter.JAVA_KERNEL.convertRows(rgbaDirect, width, height, nv21Direct, 0,
+                ColorSpec.BT601_LIMITED, 0, height);
+        return nv21Direct;
+    }
+
+    @Benchmark
+    public ByteBuffer swarKernelDirect() {
+        YUVConverter.SWAR_KERNEL.convertRows(rgbaDirect, width, height, nv21Direct, 0,
+                ColorSpec.BT601_LIMITED, 0, height);
+        return nv21Direct;
+    }
+}
@@ -0,0 +1,75 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * ARGB_8888 pixels (as returned by {@code Bitmap.getPixels}) to NV21, used by the
+ * {@code TextureView} capture path of the app.
+ *
+ * <p>Conversion is integer-only, through the tables of the converter's {@link ColorSpec}: luma
+ * is computed for every pixel and chroma once per 2x2 block, from the average of the block's
+ * four pixels rather than its top-left one. The average is truncated, as in
+ * {@link YUVConverter} and the GPU pass, so every path produces the same chroma for even-sized
+ * frames. An odd last column or row reuses its edge pixels to complete the block.
+ */
+public class ArgbConverter {
+    private static final ArgbConverter LEGACY = new ArgbConverter(ColorSpec.BT601_FULL);
+
+    private final ColorSpec spec;
+
+    public ArgbConverter(ColorSpec spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Allocating conversion kept for existing callers: BT.601, full range. Prefer an instance
+     * and {@link #convert} with a reused output buffer.
+     */
+    public static byte[] convertToNV21(int[] argb, int width, int height) {
+        byte[] nv21 = new byte[YUVConverter.nv21Size(width, height)];
+        LEGACY.convert(argb, width, height, nv21);
+        return nv21;
+    }
+
+    public ColorSpec getColorSpec() {
+        return spec;
+    }
+
+    /** Converts a width x height frame into {@code nv21}, which must hold at least an NV21 frame. */
+    public void convert(int[] argb, int width, int height, byte[] nv21) {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("ARGB buffer too small: " + argb.length
+                    + " < " + width * height);
+        }
+        YUVConverter.checkOutput(nv21, width, height);
+        int[] yt = spec.yTable, ut = spec.uTable, vt = spec.vTable;
+        int uvIndex = width * height;
+
+        for (int y = 0; y < height; y += 2) {
+            int top = y * width;
+            int bottom = Math.min(y + 1, height - 1) * width;
+            for (int x = 0; x < width; x += 2) {
+                int x1 = Math.min(x + 1, width - 1);
+                int p00 = argb[top + x], p01 = argb[top + x1];
+                int p10 = argb[bottom + x], p11 = argb[bottom + x1];
+
+                // A missing column or row rewrites the same luma, so the edge needs no tail loop
+                nv21[top + x] = luma(yt, p00);
+                nv21[top + x1] = luma(yt, p01);
+                nv21[bottom + x] = luma(yt, p10);
+                nv21[bottom + x1] = luma(yt, p11);
+
+                int r = ((p00 >> 16) & 0xFF) + ((p01 >> 16) & 0xFF) + ((p10 >> 16) & 0xFF) + ((p11 >> 16) & 0xFF);
+                int g = ((p00 >> 8) & 0xFF) + ((p01 >> 8) & 0xFF) + ((p10 >> 8) & 0xFF) + ((p11 >> 8) & 0xFF);
+                int b = (p00 & 0xFF) + (p01 & 0xFF) + (p10 & 0xFF) + (p11 & 0xFF);
+                r >>= 2;
+                g >>= 2;
+                b >>= 2;
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(vt, r, g, b);
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(ut, r, g, b);
+            }
+        }
+    }
+
+    private static byte luma(int[] table, int pixel) {
+        return (byte) ColorSpec.luma(table, (pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+    }
+}
@@ -0,0 +1,36 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrameQueue} over a {@link LinkedBlockingQueue}, the hand-off the app has always used.
+ */
+public class BlockingFrameQueue implements FrameQueue {
+    private final LinkedBlockingQueue<Frame> queue = new LinkedBlockingQueue<>();
+    private final int capacity;
+
+    public BlockingFrameQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Frame offer(Frame frame) {
+        Frame dropped = null;
+        if (queue.size() >= capacity) {
+            dropped = queue.poll();
+        }
+        queue.add(frame);
+        return dropped;
+    }
+
+    @Override
+    public Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+}
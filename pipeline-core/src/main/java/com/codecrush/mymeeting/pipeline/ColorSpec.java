@@ -0,0 +1,153 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * The RGB to YUV conversion every converter performs: a matrix (the luma weights of the
+ * primaries) and a code range. Pass the same spec to the CPU converters and the GPU pass and
+ * they produce the same bytes.
+ *
+ * <p>Each spec precomputes per-channel lookup tables holding coefficient * value in 16.16 fixed
+ * point, with the offset and rounding folded into the blue table, so a sample costs three loads
+ * and two adds whichever matrix is selected. {@link #BT601_LIMITED} keeps the classic 8-bit
+ * integer matrix ((66 R + 129 G + 25 B + 128) >> 8) + 16 the converters have always used, so
+ * its output is unchanged; the other specs are derived from the standard's Kr and Kb at full
+ * table precision. Specs are immutable and shared.
+ */
+public final class ColorSpec {
+    /** Luma weights of the red and blue primaries; green takes the rest. */
+    public enum Matrix {
+        BT601(0.299, 0.114),
+        BT709(0.2126, 0.0722);
+
+        final double kr, kb;
+
+        Matrix(double kr, double kb) {
+            this.kr = kr;
+            this.kb = kb;
+        }
+    }
+
+    /** Output code range: FULL uses 0-255 for every plane, LIMITED Y 16-235 and U/V 16-240. */
+    public enum Range { FULL, LIMITED }
+
+    /** Fraction bits of the table entries and of {@link #getYCoefficients()} and friends. */
+    public static final int SHIFT = 16;
+    private static final int ONE = 1 << SHIFT;
+
+    public static final ColorSpec BT601_LIMITED = new ColorSpec(Matrix.BT601, Range.LIMITED,
+            new int[]{66 << 8, 129 << 8, 25 << 8, (16 << SHIFT) + ONE / 2},
+            new int[]{-38 << 8, -74 << 8, 112 << 8, (128 << SHIFT) + ONE / 2},
+            new int[]{112 << 8, -94 << 8, -18 << 8, (128 << SHIFT) + ONE / 2});
+    public static final ColorSpec BT601_FULL = derive(Matrix.BT601, Range.FULL);
+    public static final ColorSpec BT709_LIMITED = derive(Matrix.BT709, Range.LIMITED);
+    public static final ColorSpec BT709_FULL = derive(Matrix.BT709, Range.FULL);
+
+    private final Matrix matrix;
+    private final Range range;
+    // {r, g, b, offset} per output plane, offsets including rounding
+    private final int[] yCoefficients, uCoefficients, vCoefficients;
+    // coefficient * value for R at [0, 256), G at [256, 512) and B plus offset at [512, 768)
+    final int[] yTable, uTable, vTable;
+
+    private ColorSpec(Matrix matrix, Range range, int[] y, int[] u, int[] v) {
+        this.matrix = matrix;
+        this.range = range;
+        this.yCoefficients = y;
+        this.uCoefficients = u;
+        this.vCoefficients = v;
+        this.yTable = table(y);
+        this.uTable = table(u);
+        this.vTable = table(v);
+    }
+
+    public static ColorSpec of(Matrix matrix, Range range) {
+        if (matrix == Matrix.BT601) {
+            return range == Range.LIMITED ? BT601_LIMITED : BT601_FULL;
+        }
+        return range == Range.LIMITED ? BT709_LIMITED : BT709_FULL;
+    }
+
+    private static ColorSpec derive(Matrix matrix, Range range) {
+        double kr = matrix.kr, kb = matrix.kb;
+        boolean limited = range == Range.LIMITED;
+        double yScale = limited ? 219 / 255.0 : 1;
+        double uvScale = limited ? 224 / 255.0 : 1;
+
+        int yr = fixed(kr * yScale), yb = fixed(kb * yScale);
+        int yg = fixed(yScale) - yr - yb; // White lands exactly on the top code
+        // U = (B - Y) / (2 (1 - Kb)), V = (R - Y) / (2 (1 - Kr)); each row sums to 0 so greys stay 128
+        int ub = fixed(0.5 * uvScale), ur = fixed(-kr / (2 * (1 - kb)) * uvScale);
+        int vr = fixed(0.5 * uvScale), vb = fixed(-kb / (2 * (1 - kr)) * uvScale);
+        int uvOffset = (128 << SHIFT) + ONE / 2;
+        return new ColorSpec(matrix, range,
+                new int[]{yr, yg, yb, ((limited ? 16 : 0) << SHIFT) + ONE / 2},
+                new int[]{ur, -ub - ur, ub, uvOffset},
+                new int[]{vr, -vr - vb, vb, uvOffset});
+    }
+
+    private static int fixed(double value) {
+        return (int) Math.round(value * ONE);
+    }
+
+    private static int[] table(int[] coefficients) {
+        int[] table = new int[768];
+        for (int value = 0; value < 256; value++) {
+            table[value] = coefficients[0] * value;
+            table[256 + value] = coefficients[1] * value;
+            table[512 + value] = coefficients[2] * value + coefficients[3];
+        }
+        return table;
+    }
+
+    public Matrix getMatrix() {
+        return matrix;
+    }
+
+    public Range getRange() {
+        return range;
+    }
+
+    /** Y of an RGB sample, each channel 0-255. */
+    public int luma(int r, int g, int b) {
+        return luma(yTable, r, g, b);
+    }
+
+    public int chromaU(int r, int g, int b) {
+        return chroma(uTable, r, g, b);
+    }
+
+    public int chromaV(int r, int g, int b) {
+        return chroma(vTable, r, g, b);
+    }
+
+    static int luma(int[] table, int r, int g, int b) {
+        return (table[r] + table[256 + g] + table[512 + b]) >> SHIFT;
+    }
+
+    /** Full-range chroma of saturated blue or red rounds to 256, hence the clamp. */
+    static int chroma(int[] table, int r, int g, int b) {
+        return Math.min(255, (table[r] + table[256 + g] + table[512 + b]) >> SHIFT);
+    }
+
+    /**
+     * Y coefficients as {r, g, b, offset} in 16.16 fixed point, offset including rounding, for
+     * shaders that evaluate the same matrix: Y = (r * R + g * G + b * B + offset) >> 16.
+     */
+    public int[] getYCoefficients() {
+        return yCoefficients.clone();
+    }
+
+    /** U coefficients, laid out as in {@link #getYCoefficients()}. */
+    public int[] getUCoefficients() {
+        return uCoefficients.clone();
+    }
+
+    /** V coefficients, laid out as in {@link #getYCoefficients()}. */
+    public int[] getVCoefficients() {
+        return vCoefficients.clone();
+    }
+
+    @Override
+    public String toString() {
+        return matrix + "_" + range;
+    }
+}
@@ -0,0 +1,170 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Where each camera goes in the composite. A layout is a list of tiles, each placing one
+ * source (a camera index, e.g. {@link FramePairSynchronizer#FRONT}) at a position and size given
+ * as fractions of the canvas, measured from the top-left corner, and drawn in z order so later
+ * tiles cover earlier ones. Because positions are fractions, one layout fits every output size,
+ * and switching layouts changes only where tiles are drawn, never any buffer sizes.
+ *
+ * <p>The GL renderer and the CPU {@link LayoutCompositor} both resolve tiles to pixels with
+ * {@link Tile#left}, {@link Tile#top}, {@link Tile#right} and {@link Tile#bottom}, which round
+ * to even pixels, or to the canvas edge, so every edge falls on an NV21 chroma boundary.
+ * Layouts are immutable and safe to share between threads.
+ */
+public final class CompositeLayout {
+    /** One source placed on the canvas. */
+    public static final class Tile {
+        private final int source;
+        private final float left, top, width, height;
+        private final int z;
+
+        /**
+         * @param source camera index the tile shows
+         * @param left   left edge as a fraction of the canvas width
+         * @param top    top edge as a fraction of the canvas height
+         * @param width  fraction of the canvas width
+         * @param height fraction of the canvas height
+         * @param z      drawing order; higher tiles are drawn over lower ones
+         */
+        public Tile(int source, float left, float top, float width, float height, int z) {
+            if (source < 0) {
+                throw new IllegalArgumentException("source must be >= 0: " + source);
+            }
+            if (!(width > 0) || !(height > 0) || left < 0 || top < 0
+                    || left + width > 1.0001f || top + height > 1.0001f) {
+                throw new IllegalArgumentException("Tile must lie within the canvas: "
+                        + left + "," + top + " " + width + "x" + height);
+            }
+            this.source = source;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.z = z;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        /** Left edge in pixels on a canvas this wide, rounded to even or the canvas edge. */
+        public int left(int canvasWidth) {
+            return toEvenPixel(left, canvasWidth);
+        }
+
+        /** Right edge (exclusive) in pixels on a canvas this wide, rounded to even or the canvas edge. */
+        public int right(int canvasWidth) {
+            return toEvenPixel(left + width, canvasWidth);
+        }
+
+        /** Top edge in pixels on a canvas this tall, rounded to even or the canvas edge. */
+        public int top(int canvasHeight) {
+            return toEvenPixel(top, canvasHeight);
+        }
+
+        /** Bottom edge (exclusive) in pixels on a canvas this tall, rounded to even or the canvas edge. */
+        public int bottom(int canvasHeight) {
+            return toEvenPixel(top + height, canvasHeight);
+        }
+
+        private static int toEvenPixel(float fraction, int size) {
+            int pixel = Math.round(fraction * size / 2) * 2;
+            return pixel >= size ? size : Math.max(0, pixel); // An odd canvas keeps its last column
+        }
+    }
+
+    private final Tile[] tiles;
+    private final boolean coversCanvas;
+
+    /** Tiles are drawn by ascending z; tiles with equal z keep the given order. */
+    public CompositeLayout(Tile... tiles) {
+        if (tiles.length == 0) {
+            throw new IllegalArgumentException("A layout needs at least one tile");
+        }
+        this.tiles = tiles.clone();
+        Arrays.sort(this.tiles, (a, b) -> Integer.compare(a.z, b.z)); // Stable
+        this.coversCanvas = computeCoversCanvas(this.tiles);
+    }
+
+    /** The first source over the second, each taking half the height. */
+    public static CompositeLayout split(int topSource, int bottomSource) {
+        return new CompositeLayout(
+                new Tile(topSource, 0, 0, 1, 0.5f, 0),
+                new Tile(bottomSource, 0, 0.5f, 1, 0.5f, 0));
+    }
+
+    /** The first source left of the second, each taking half the width. */
+    public static CompositeLayout sideBySide(int leftSource, int rightSource) {
+        return new CompositeLayout(
+                new Tile(leftSource, 0, 0, 0.5f, 1, 0),
+                new Tile(rightSource, 0.5f, 0, 0.5f, 1, 0));
+    }
+
+    /**
+     * The main source filling the canvas, with the inset drawn over its bottom-right corner at
+     * 30% of the canvas size.
+     */
+    public static CompositeLayout pictureInPicture(int mainSource, int insetSource) {
+        return new CompositeLayout(
+                new Tile(mainSource, 0, 0, 1, 1, 0),
+                new Tile(insetSource, 0.66f, 0.66f, 0.3f, 0.3f, 1));
+    }
+
+    public int getTileCount() {
+        return tiles.length;
+    }
+
+    /** Tiles in drawing order, lowest z first. */
+    public Tile getTile(int index) {
+        return tiles[index];
+    }
+
+    /**
+     * Whether the tiles leave no part of the canvas uncovered, in which case compositors can
+     * skip clearing it. Judged on the fractional layout, before rounding to pixels.
+     */
+    public boolean coversCanvas() {
+        return coversCanvas;
+    }
+
+    private static boolean computeCoversCanvas(Tile[] tiles) {
+        // Every cell of the grid formed by the tile edges must lie inside some tile
+        TreeSet<Float> xs = new TreeSet<>(Arrays.asList(0f, 1f));
+        TreeSet<Float> ys = new TreeSet<>(Arrays.asList(0f, 1f));
+        for (Tile tile : tiles) {
+            xs.add(tile.left);
+            xs.add(Math.min(1f, tile.left + tile.width));
+            ys.add(tile.top);
+            ys.add(Math.min(1f, tile.top + tile.height));
+        }
+        Float[] xEdges = xs.toArray(new Float[0]);
+        Float[] yEdges = ys.toArray(new Float[0]);
+        for (int i = 0; i + 1 < xEdges.length; i++) {
+            float x = (xEdges[i] + xEdges[i + 1]) / 2;
+            for (int j = 0; j + 1 < yEdges.length; j++) {
+                float y = (yEdges[j] + yEdges[j + 1]) / 2;
+                if (!covered(tiles, x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean covered(Tile[] tiles, float x, float y) {
+        for (Tile tile : tiles) {
+            if (x >= tile.left && x < tile.left + tile.width && y >= tile.top && y < tile.top + tile.height) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
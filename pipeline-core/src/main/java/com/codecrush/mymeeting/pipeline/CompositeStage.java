@@ -0,0 +1,37 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Convert and composite stage: turns one RGBA frame per camera into a single pooled NV21
+ * composite. Per-camera NV21 tiles are scratch buffers owned by the stage, so a steady stream
+ * allocates nothing. Not thread-safe; drive it from one producer thread.
+ */
+public class CompositeStage {
+    private final FrameConverter converter;
+    private final FrameCompositor compositor;
+    private final FramePool outputPool;
+    private final int tileWidth, tileHeight;
+    private final byte[][] nv21Tiles;
+
+    public CompositeStage(FrameConverter converter, FrameCompositor compositor,
+                          int tileWidth, int tileHeight, int tileCount, int poolCapacity) {
+        this.converter = converter;
+        this.compositor = compositor;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.nv21Tiles = new byte[tileCount][YUVConverter.nv21Size(tileWidth, tileHeight)];
+        this.outputPool = new FramePool(poolCapacity,
+                compositor.compositeWidth(tileWidth, tileHeight, tileCount),
+                compositor.compositeHeight(tileWidth, tileHeight, tileCount));
+    }
+
+    public Frame process(byte[][] rgbaTiles, long timestampNs) {
+        for (int i = 0; i < nv21Tiles.length; i++) {
+            converter.convert(rgbaTiles[i], tileWidth, tileHeight, nv21Tiles[i]);
+        }
+        Frame frame = outputPool.acquire();
+        compositor.compose(nv21Tiles, tileWidth, tileHeight, frame.getData());
+        frame.setTimestampNs(timestampNs);
+        frame.mark(LatencyTracker.Stage.CONVERTED);
+        return frame;
+    }
+}
@@ -0,0 +1,18 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The inner loop of RGBA to NV21/NV12 conversion, over a band of rows. Implementations must
+ * produce exactly the bytes of {@link YUVConverter#JAVA_KERNEL}, which is the reference, and
+ * follow its banding rule: rowStart is even, and only the rows of the band and their chroma
+ * row are written, so {@link ParallelNV21Converter} can run bands concurrently.
+ */
+public interface ConversionKernel {
+    void convertRows(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec,
+                     int rowStart, int rowEnd);
+
+    /** {@code vOffset} is 0 to write V first (NV21) or 1 to write U first (NV12). */
+    void convertRows(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset,
+                     ColorSpec spec, int rowStart, int rowEnd);
+}
@@ -0,0 +1,28 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts frames and releases them at once, for measuring how fast the pipeline can go without
+ * an SDK or a network behind it.
+ */
+public class CountingVideoSink implements VideoSink {
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    @Override
+    public void onFrame(Frame frame) {
+        frames.incrementAndGet();
+        bytes.addAndGet(YuvFormat.size(frame.getWidth(), frame.getHeight()));
+        frame.release();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /** YUV bytes received, as if every frame had been sent. */
+    public long getBytes() {
+        return bytes.get();
+    }
+}
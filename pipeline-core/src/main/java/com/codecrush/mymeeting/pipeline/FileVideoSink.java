@@ -0,0 +1,124 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes frames as uncompressed YUV4MPEG2 (.y4m), which ffplay, ffmpeg and most video tools open
+ * directly, to inspect what the pipeline would have published. The stream's size is taken from
+ * the first frame; frames of any other size are released unwritten and counted.
+ *
+ * <p>Y4M stores planar I420, so the interleaved chroma of NV21 and NV12 frames is split into
+ * its U and V planes on the way out. Writes happen on the publishing thread; wrap the stream in
+ * a BufferedOutputStream. The first write error stops further writes and is kept for
+ * {@link #getError()} rather than thrown into the pipeline.
+ */
+public class FileVideoSink implements VideoSink, Closeable {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(ASCII);
+
+    private final OutputStream out;
+    private final int fps;
+    private int width, height;
+    private byte[] row;
+    private long framesWritten, framesSkipped;
+    private volatile IOException error;
+
+    public FileVideoSink(OutputStream out, int fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        }
+        this.out = out;
+        this.fps = fps;
+    }
+
+    @Override
+    public synchronized void onFrame(Frame frame) {
+        try {
+            if (error != null) {
+                framesSkipped++;
+                return;
+            }
+            if (width == 0) {
+                width = frame.getWidth();
+                height = frame.getHeight();
+                row = new byte[Math.max(width, YUVConverter.chromaRowBytes(width))];
+                out.write(("YUV4MPEG2 W" + width + " H" + height + " F" + fps
+                        + ":1 Ip A1:1 C420\n").getBytes(ASCII));
+            } else if (frame.getWidth() != width || frame.getHeight() != height) {
+                framesSkipped++;
+                return;
+            }
+            writeFrame(frame);
+            framesWritten++;
+        } catch (IOException e) {
+            error = e;
+            framesSkipped++;
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Writes the frame's planes in I420 order. Heap and direct frames are read the same way,
+     * by absolute index into {@link Frame#getBuffer()}, which holds the frame from index 0 as
+     * {@link YuvFormat} lays it out: width-byte luma rows, then interleaved chroma rows of
+     * {@code chromaRowBytes(width)} bytes.
+     */
+    private void writeFrame(Frame frame) throws IOException {
+        out.write(FRAME_HEADER);
+        ByteBuffer buffer = frame.getBuffer();
+        for (int y = 0; y < height; y++) {
+            writeRow(buffer, y * width, 1, width);
+        }
+        // NV21 interleaves V, U and NV12 U, V; write the U plane, then the V plane
+        int vOffset = frame.getFormat() == Frame.Format.NV21 ? 0 : 1;
+        writeChromaPlane(buffer, 1 - vOffset);
+        writeChromaPlane(buffer, vOffset);
+    }
+
+    private void writeChromaPlane(ByteBuffer buffer, int offset) throws IOException {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int rowBytes = YUVConverter.chromaRowBytes(width);
+        int start = width * height + offset;
+        for (int y = 0; y < chromaHeight; y++) {
+            writeRow(buffer, start + y * rowBytes, 2, chromaWidth);
+        }
+    }
+
+    /** Writes {@code count} bytes taken every {@code step} bytes from {@code index}. */
+    private void writeRow(ByteBuffer buffer, int index, int step, int count) throws IOException {
+        for (int x = 0; x < count; x++, index += step) {
+            row[x] = buffer.get(index);
+        }
+        out.write(row, 0, count);
+    }
+
+    public synchronized long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /** Frames released unwritten: a different size from the first frame, or after an error. */
+    public synchronized long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /** The write error that stopped the sink, or null. */
+    public IOException getError() {
+        return error;
+    }
+
+    /** Flushes and closes the stream; call once the pipeline has stopped. */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A YUV 4:2:0 frame travelling through the pipeline. Frames normally come from a
+ * {@link FramePool} and must be released exactly once by whoever ends up owning them, so the
+ * backing memory can be reused for a later frame.
+ *
+ * <p>Heap frames hold NV21 in a byte array. Direct frames live in a direct {@link ByteBuffer}
+ * with no backing array, so they can be filled from a mapped PBO and handed to the streaming
+ * SDK without an intermediate heap copy; check {@link #getFormat()} for their chroma order.
+ *
+ * <p>The timestamp is the camera capture time on the System.nanoTime() clock, and each stage
+ * marks the frame as it leaves so a {@link LatencyTracker} can break the latency down.
+ */
+public final class Frame {
+    /** Chroma order of the interleaved plane: NV21 is V, U; NV12 is U, V. */
+    public enum Format { NV21, NV12 }
+
+    private final FramePool pool;
+    private final byte[] data;
+    private final ByteBuffer buffer;
+    private final Format format;
+    private int width, height;
+    private final long[] marks = new long[LatencyTracker.Stage.values().length];
+    private long timestampNs;
+    // 1 once released to the pool, 0 while out of it
+    private volatile int released;
+    private static final AtomicIntegerFieldUpdater<Frame> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(Frame.class, "released");
+    // Set while the frame is out of a pool with leak detection on
+    FramePool.LeakRecord leakRecord;
+
+    Frame(FramePool pool, byte[] data, int width, int height) {
+        this.pool = pool;
+        this.data = data;
+        this.buffer = ByteBuffer.wrap(data);
+        this.format = Format.NV21;
+        this.width = width;
+        this.height = height;
+    }
+
+    Frame(FramePool pool, ByteBuffer buffer, Format format, int width, int height) {
+        this.pool = pool;
+        this.data = null;
+        this.buffer = buffer;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Wraps an existing NV21 array in a frame that is not pooled; release() is a no-op. */
+    public static Frame wrap(byte[] nv21, int width, int height) {
+        if (nv21.length < YUVConverter.nv21Size(width, height)) {
+            throw new IllegalArgumentException("NV21 buffer too small for " + width + "x" + height);
+        }
+        return new Frame(null, nv21, width, height);
+    }
+
+    /**
+     * The NV21 bytes of a heap frame.
+     *
+     * @throws IllegalStateException for direct frames, which have no backing array
+     */
+    public byte[] getData() {
+        if (data == null) {
+            throw new IllegalStateException("Direct frame has no backing array; use getBuffer()");
+        }
+        return data;
+    }
+
+    /**
+     * The frame's bytes as a buffer, from index 0. Available for heap and direct frames alike;
+     * the position is reset when the frame returns to its pool, so prefer absolute access.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public boolean isDirect() {
+        return data == null;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Reuses the frame for another resolution of the same byte size; pool use only. */
+    void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public void setTimestampNs(long timestampNs) {
+        this.timestampNs = timestampNs;
+    }
+
+    /** Records that the frame leaves the given stage now. */
+    public void mark(LatencyTracker.Stage stage) {
+        marks[stage.ordinal()] = System.nanoTime();
+    }
+
+    public void mark(LatencyTracker.Stage stage, long timeNs) {
+        marks[stage.ordinal()] = timeNs;
+    }
+
+    /** When the frame left the given stage, or 0 if it has not passed it. */
+    public long getMarkNs(LatencyTracker.Stage stage) {
+        return marks[stage.ordinal()];
+    }
+
+    /** Called by the pool as it hands the frame out. */
+    void markAcquired() {
+        released = 0;
+    }
+
+    /**
+     * Returns a pooled frame to its pool; a no-op for wrapped frames.
+     *
+     * @throws IllegalStateException if the frame was already released since it was acquired
+     */
+    public void release() {
+        if (pool != null) {
+            if (!RELEASED.compareAndSet(this, 0, 1)) {
+                throw new IllegalStateException("Frame released twice");
+            }
+            buffer.clear();
+            timestampNs = 0;
+            Arrays.fill(marks, 0);
+            pool.release(this);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Composes per-camera NV21 tiles into one NV21 output frame.
+ */
+public interface FrameCompositor {
+    /**
+     * @param tiles  NV21 tiles, one per camera, each tileWidth x tileHeight
+     * @param output NV21 buffer for the composite, sized for {@link #compositeHeight}
+     */
+    void compose(byte[][] tiles, int tileWidth, int tileHeight, byte[] output);
+
+    int compositeWidth(int tileWidth, int tileHeight, int tileCount);
+
+    int compositeHeight(int tileWidth, int tileHeight, int tileCount);
+}
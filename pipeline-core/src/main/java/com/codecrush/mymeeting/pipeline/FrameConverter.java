@@ -0,0 +1,10 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Converts one RGBA frame into a caller-supplied NV21 buffer.
+ */
+public interface FrameConverter {
+    FrameConverter SERIAL = YUVConverter::rgbaToNV21;
+
+    void convert(byte[] rgba, int width, int height, byte[] nv21);
+}
@@ -0,0 +1,171 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pairs the front and back camera streams so each composite combines two new images taken as
+ * close together as possible. Cameras report new images with {@link #onFrameAvailable} from
+ * any thread; the render thread then asks {@link #beginLatch} before latching a camera's
+ * image, reports what it latched with {@link #onLatched}, and composites only when
+ * {@link #shouldComposite} says a fresh pair is ready.
+ *
+ * <p>Only the newest image of a camera can be latched, so partners are chosen by deciding when
+ * to latch: a fresh image is held while its partner catches up, and a lagging camera is only
+ * paired with its current image if its next one (predicted from its frame interval) would be
+ * further away. Pairs within the tolerance are composited at once. If a partner does not
+ * arrive within the maximum wait, the fresh image is composited with the partner's previous
+ * one, and while a camera delivers nothing for that long it is not waited for at all, so a
+ * stalled or slower camera cannot freeze the stream. Waits are re-evaluated on each draw, so
+ * an expired wait is only noticed when the next image arrives.
+ *
+ * <p>All methods except {@link #onFrameAvailable} and the getters must be called from the
+ * render thread.
+ */
+public class FramePairSynchronizer {
+    public static final int FRONT = 0;
+    public static final int BACK = 1;
+
+    private final long toleranceNs;
+    private final long maxWaitNs;
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(2);
+    private final long[] timestampNs = new long[2];
+    private final long[] intervalNs = new long[2];
+    private final long[] latchedAtNs = new long[2];
+    private final boolean[] latched = new boolean[2];
+    private final boolean[] fresh = new boolean[2];
+    private long waitStartNs;
+    private final LatencyHistogram skew = new LatencyHistogram();
+    private volatile long pairs, timeouts;
+
+    /**
+     * @param toleranceNs largest skew composited without considering the partner's next image
+     * @param maxWaitNs   how long a fresh image waits for its partner before going out alone
+     */
+    public FramePairSynchronizer(long toleranceNs, long maxWaitNs) {
+        if (toleranceNs < 0 || maxWaitNs < 0) {
+            throw new IllegalArgumentException("tolerance and wait must be >= 0");
+        }
+        this.toleranceNs = toleranceNs;
+        this.maxWaitNs = maxWaitNs;
+    }
+
+    /** A new image is waiting to be latched for the camera. Any thread. */
+    public void onFrameAvailable(int camera) {
+        pending.incrementAndGet(camera);
+    }
+
+    /**
+     * Whether to latch the camera's newest image now. False when nothing new arrived, or when
+     * its current image is still waiting for a partner and a newer one would only widen the
+     * skew. When true, the images announced so far are claimed; latch, then call
+     * {@link #onLatched}.
+     */
+    public boolean beginLatch(int camera, long nowNs) {
+        if (pending.get(camera) == 0) {
+            return false;
+        }
+        if (fresh[camera]) {
+            // Replacing an unused image only helps the camera behind its partner, or one whose
+            // partner has stopped delivering
+            int other = 1 - camera;
+            boolean helps = fresh[other]
+                    ? timestampNs[camera] < timestampNs[other]
+                    : isStalled(other, nowNs);
+            if (!helps) {
+                return false;
+            }
+        }
+        // Cleared before latching, so an image arriving meanwhile is latched next time
+        pending.set(camera, 0);
+        return true;
+    }
+
+    /**
+     * The camera's newest image was latched; it is fresh until the next composite. An image
+     * no newer than the last one latched is ignored.
+     */
+    public void onLatched(int camera, long imageTimestampNs, long nowNs) {
+        if (latched[camera]) {
+            if (imageTimestampNs <= timestampNs[camera]) {
+                return;
+            }
+            intervalNs[camera] = imageTimestampNs - timestampNs[camera];
+        }
+        if (!fresh[0] && !fresh[1]) {
+            waitStartNs = nowNs;
+        }
+        timestampNs[camera] = imageTimestampNs;
+        latchedAtNs[camera] = nowNs;
+        latched[camera] = true;
+        fresh[camera] = true;
+    }
+
+    /** Whether the latched images make a pair worth compositing now. */
+    public boolean shouldComposite(long nowNs) {
+        if (!fresh[FRONT] && !fresh[BACK]) {
+            return false;
+        }
+        if (!latched[FRONT] || !latched[BACK]) {
+            return true; // Only one camera is running; nothing to pair with
+        }
+        boolean timedOut = nowNs - waitStartNs >= maxWaitNs;
+        if (!fresh[FRONT] || !fresh[BACK]) {
+            int waitingFor = fresh[FRONT] ? BACK : FRONT;
+            if (timedOut || isStalled(waitingFor, nowNs)) {
+                timeouts++;
+                return true;
+            }
+            return false;
+        }
+
+        long currentSkew = Math.abs(timestampNs[FRONT] - timestampNs[BACK]);
+        if (currentSkew <= toleranceNs || timedOut) {
+            return true;
+        }
+        int lagging = timestampNs[FRONT] < timestampNs[BACK] ? FRONT : BACK;
+        long interval = intervalNs[lagging];
+        if (interval == 0) {
+            return false; // Wait for its next image, which also gives its interval
+        }
+        long nextSkew = Math.abs(timestampNs[lagging] + interval - timestampNs[1 - lagging]);
+        return currentSkew <= nextSkew;
+    }
+
+    /** The latched images were composited; records their skew and waits for new ones. */
+    public void onComposited() {
+        if (latched[FRONT] && latched[BACK]) {
+            skew.record(Math.abs(timestampNs[FRONT] - timestampNs[BACK]));
+            pairs++;
+        }
+        fresh[FRONT] = false;
+        fresh[BACK] = false;
+    }
+
+    private boolean isStalled(int camera, long nowNs) {
+        return nowNs - latchedAtNs[camera] >= maxWaitNs;
+    }
+
+    /** Forgets all latched images, for when the cameras or the render context restart. */
+    public void reset() {
+        for (int camera = 0; camera < 2; camera++) {
+            latched[camera] = false;
+            fresh[camera] = false;
+            intervalNs[camera] = 0;
+        }
+    }
+
+    /** Capture time difference between the two images of each composited pair. */
+    public LatencyHistogram getSkew() {
+        return skew;
+    }
+
+    /** Composites made from images of both cameras. */
+    public long getPairs() {
+        return pairs;
+    }
+
+    /** Composites made after waiting too long for one camera, with its previous image. */
+    public long getTimeouts() {
+        return timeouts;
+    }
+}
@@ -0,0 +1,112 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publish stage: frames submitted from the producer are queued and handed to the
+ * {@link VideoSink} on a dedicated thread. Frames evicted by the queue, or still queued
+ * when the pipeline stops, are released here, as are frames the sink threw on; a failing sink
+ * is counted and the publish thread keeps going. Frames are marked
+ * {@link LatencyTracker.Stage#SUBMITTED} and {@link LatencyTracker.Stage#DEQUEUED} on the way.
+ */
+public class FramePipeline {
+    private final FrameQueue queue;
+    private final VideoSink sink;
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong publishedFrames = new AtomicLong();
+    private final AtomicLong sinkFailures = new AtomicLong();
+    private Thread publishThread;
+    private volatile boolean running;
+
+    public FramePipeline(FrameQueue queue, VideoSink sink) {
+        this.queue = queue;
+        this.sink = sink;
+    }
+
+    public void submit(Frame frame) {
+        frame.mark(LatencyTracker.Stage.SUBMITTED);
+        Frame dropped = queue.offer(frame);
+        if (dropped != null) {
+            droppedFrames.incrementAndGet();
+            dropped.release();
+        }
+    }
+
+    public synchronized void start() {
+        if (publishThread != null) {
+            return;
+        }
+        running = true;
+        publishThread = new Thread(this::publishLoop, "FramePublisher");
+        publishThread.start();
+    }
+
+    public synchronized void stop() {
+        if (publishThread == null) {
+            return;
+        }
+        running = false;
+        publishThread.interrupt();
+        try {
+            publishThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publishThread = null;
+        drain();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /** Frames the sink accepted. */
+    public long getPublishedFrames() {
+        return publishedFrames.get();
+    }
+
+    /** Frames the sink threw on; they were released here and not published. */
+    public long getSinkFailures() {
+        return sinkFailures.get();
+    }
+
+    /** Frames currently waiting to be published. */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void publishLoop() {
+        while (running) {
+            Frame frame;
+            try {
+                frame = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame != null) {
+                frame.mark(LatencyTracker.Stage.DEQUEUED);
+                try {
+                    sink.onFrame(frame);
+                } catch (RuntimeException e) {
+                    // The sink never took ownership, so the frame is still ours to return
+                    sinkFailures.incrementAndGet();
+                    frame.release();
+                    continue;
+                }
+                publishedFrames.incrementAndGet();
+            }
+        }
+    }
+
+    private void drain() {
+        Frame frame;
+        try {
+            while ((frame = queue.poll(0, TimeUnit.MILLISECONDS)) != null) {
+                frame.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
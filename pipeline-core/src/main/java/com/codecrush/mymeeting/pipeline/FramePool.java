@@ -0,0 +1,295 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Recycles NV21 frames between the producing and publishing threads. Once enough frames are in
+ * circulation to cover those in flight, acquire() stops allocating and the steady state
+ * produces no garbage.
+ *
+ * <p>Frames are kept per size class, the byte size of the frame, so one pool serves every
+ * output resolution (a rotated output has the same size, for example). The class last acquired
+ * from is the active one. When another size becomes active, the idle frames of every other
+ * class are dropped. Frames still in flight at the switch go back to their own class, so
+ * switching straight back reuses them, until the next switch drops them. Idle memory is
+ * therefore {@code capacity} frames of the active size plus at most the frames that were out
+ * when it became active. Each class keeps at most {@code capacity} idle frames, and frames
+ * released beyond that are left to the garbage collector. Acquire and release are lock-free
+ * and may be called from any threads.
+ *
+ * <p>A direct pool hands out frames backed by direct buffers in the requested chroma order,
+ * for stages that fill frames from native memory and publish them without a heap copy.
+ *
+ * <p>With leak detection on, every acquired frame is watched through a weak reference; a frame
+ * that becomes unreachable without being released is counted and reported with the stack of
+ * the acquire that produced it. Detection costs a stack trace per acquire, so it is meant for
+ * debug builds. Releasing a frame twice throws, since the second release would hand one frame
+ * out to two owners.
+ */
+public class FramePool {
+    /** Told about frames that were dropped without being released. */
+    public interface LeakListener {
+        /** @param acquiredAt stack trace of the acquire that handed out the leaked frame */
+        void onLeak(Throwable acquiredAt);
+    }
+
+    private final int capacity;
+    private final int width, height;
+    private final Frame.Format directFormat;
+    private final ConcurrentHashMap<Integer, SizeClass> classes = new ConcurrentHashMap<>();
+    // Class last acquired from. Frame sizes are far outside the Integer cache, so checking this
+    // first keeps map lookups, which box, to size switches and stale frames
+    private volatile SizeClass activeClass;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+
+    private volatile boolean leakDetection;
+    private volatile LeakListener leakListener;
+    private final ReferenceQueue<Frame> collected = new ReferenceQueue<>();
+    private final Set<LeakRecord> watched = Collections.newSetFromMap(new ConcurrentHashMap<LeakRecord, Boolean>());
+    private final AtomicLong leaks = new AtomicLong();
+
+    public FramePool(int capacity, int width, int height) {
+        this(capacity, width, height, null);
+    }
+
+    /**
+     * Preallocates {@code capacity} frames of the given size, which {@link #acquire()} hands out.
+     *
+     * @param directFormat chroma order of direct frames, or null for heap NV21 frames
+     */
+    public FramePool(int capacity, int width, int height, Frame.Format directFormat) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.width = width;
+        this.height = height;
+        this.directFormat = directFormat;
+        if (width > 0 && height > 0) {
+            SizeClass sizeClass = activate(YUVConverter.nv21Size(width, height));
+            for (int i = 0; i < capacity; i++) {
+                sizeClass.offer(newFrame(sizeClass.bytes, width, height));
+            }
+        }
+    }
+
+    /**
+     * A pool without a default size, for outputs whose resolution changes: frames are only
+     * allocated by {@link #acquire(int, int)}.
+     */
+    public FramePool(int capacity, Frame.Format directFormat) {
+        this(capacity, 0, 0, directFormat);
+    }
+
+    /** A frame of the pool's default size. */
+    public Frame acquire() {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalStateException("Pool has no default size; use acquire(width, height)");
+        }
+        return acquire(width, height);
+    }
+
+    /** A frame of the given size, recycled from its size class when one is idle. */
+    public Frame acquire(int width, int height) {
+        SizeClass sizeClass = activate(YUVConverter.nv21Size(width, height));
+        Frame frame = sizeClass.poll();
+        if (frame != null) {
+            hits.incrementAndGet();
+            frame.setSize(width, height);
+        } else {
+            misses.incrementAndGet();
+            frame = newFrame(sizeClass.bytes, width, height); // Class drained, grow once
+        }
+        frame.markAcquired();
+
+        int inFlight = outstanding.incrementAndGet();
+        int mark;
+        while (inFlight > (mark = highWaterMark.get()) && !highWaterMark.compareAndSet(mark, inFlight)) {
+            // Retry until the mark covers this acquire
+        }
+        if (leakDetection) {
+            pollLeaks();
+            LeakRecord record = new LeakRecord(frame, collected);
+            frame.leakRecord = record;
+            watched.add(record);
+        }
+        return frame;
+    }
+
+    void release(Frame frame) {
+        LeakRecord record = frame.leakRecord;
+        if (record != null) {
+            frame.leakRecord = null;
+            watched.remove(record);
+            record.clear();
+        }
+        outstanding.decrementAndGet();
+        // Extra frames allocated while a class was drained are dropped when it is full
+        sizeClass(frame.getBuffer().capacity()).offer(frame);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Acquires served by a recycled frame. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Acquires that had to allocate because every frame was in use. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Frames acquired and not yet released. */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /** The most frames ever out of the pool at once. */
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    public boolean isDirect() {
+        return directFormat != null;
+    }
+
+    /** Starts or stops watching acquired frames for leaks; frames already out stay unwatched. */
+    public void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    public void setLeakListener(LeakListener listener) {
+        leakListener = listener;
+    }
+
+    /**
+     * Frames found unreachable without having been released. Leaks are noticed on later
+     * acquires, or when this is called, once the garbage collector has cleared the frame.
+     */
+    public long getLeakCount() {
+        pollLeaks();
+        return leaks.get();
+    }
+
+    private void pollLeaks() {
+        LeakRecord record;
+        while ((record = (LeakRecord) collected.poll()) != null) {
+            if (watched.remove(record)) {
+                leaks.incrementAndGet();
+                outstanding.decrementAndGet(); // It will never come back
+                LeakListener listener = leakListener;
+                if (listener != null) {
+                    listener.onLeak(record.acquiredAt);
+                }
+            }
+        }
+    }
+
+    /** The class for frames of this size, without making it the active one. */
+    private SizeClass sizeClass(int bytes) {
+        SizeClass active = activeClass;
+        if (active != null && active.bytes == bytes) {
+            return active;
+        }
+        SizeClass sizeClass = classes.get(bytes);
+        if (sizeClass == null) {
+            SizeClass created = new SizeClass(bytes, capacity);
+            sizeClass = classes.putIfAbsent(bytes, created);
+            if (sizeClass == null) {
+                sizeClass = created;
+            }
+        }
+        return sizeClass;
+    }
+
+    /** Makes this size active, dropping the idle frames of every other size on a switch. */
+    private SizeClass activate(int bytes) {
+        SizeClass active = activeClass;
+        if (active != null && active.bytes == bytes) {
+            return active;
+        }
+        SizeClass sizeClass = sizeClass(bytes);
+        activeClass = sizeClass;
+        for (SizeClass other : classes.values()) {
+            if (other != sizeClass) {
+                other.clear();
+            }
+        }
+        return sizeClass;
+    }
+
+    private Frame newFrame(int bytes, int width, int height) {
+        if (directFormat != null) {
+            return new Frame(this, ByteBuffer.allocateDirect(bytes), directFormat, width, height);
+        }
+        return new Frame(this, new byte[bytes], width, height);
+    }
+
+    /**
+     * Idle frames of one byte size in a fixed array of slots, claimed and filled with CAS so
+     * no thread ever blocks. Slots never allocate, so recycling produces no garbage.
+     */
+    private static final class SizeClass {
+        final int bytes;
+        private final AtomicReferenceArray<Frame> slots;
+
+        SizeClass(int bytes, int capacity) {
+            this.bytes = bytes;
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        Frame poll() {
+            for (int i = 0; i < slots.length(); i++) {
+                Frame frame = slots.get(i);
+                if (frame != null && slots.compareAndSet(i, frame, null)) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        /** Drops every idle frame, leaving them to the garbage collector. */
+        void clear() {
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) != null) {
+                    slots.set(i, null);
+                }
+            }
+        }
+
+        void offer(Frame frame) {
+            for (int i = 0; i < slots.length(); i++) {
+                if (slots.get(i) == null && slots.compareAndSet(i, null, frame)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Cleared on release; enqueued by the collector only for frames dropped while out. */
+    static final class LeakRecord extends WeakReference<Frame> {
+        final Throwable acquiredAt = new Throwable("Frame acquired here was never released");
+
+        LeakRecord(Frame frame, ReferenceQueue<Frame> queue) {
+            super(frame, queue);
+        }
+    }
+}
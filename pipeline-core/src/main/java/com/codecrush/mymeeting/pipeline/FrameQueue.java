@@ -0,0 +1,21 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off between the producing stage and the publish stage. When the queue is full
+ * the oldest frame is evicted to make room, since a late frame is worth less than a new one.
+ */
+public interface FrameQueue {
+    /**
+     * Enqueues a frame.
+     *
+     * @return the frame evicted to make room, or null; the caller owns and must release it
+     */
+    Frame offer(Frame frame);
+
+    /** Waits up to the given time for a frame, returning null on timeout. */
+    Frame poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    int size();
+}
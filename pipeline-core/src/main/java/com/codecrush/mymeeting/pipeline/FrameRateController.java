@@ -0,0 +1,105 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Decides which rendered frames are worth reading back and converting. The target rate is a
+ * fixed cap, lowered further by whatever rate the encoder reports it is actually producing, so
+ * frames the encoder would drop are never read back or converted in the first place.
+ *
+ * <p>Frames are paced against their own timestamps: each accepted frame schedules the next
+ * one a frame interval later, and a frame is taken once it is within half a source frame of
+ * that schedule, so timestamp jitter does not flip frames between kept and skipped. Repeated
+ * or out-of-order timestamps are skipped; a gap of two intervals or more restarts the schedule.
+ *
+ * <p>{@link #shouldCapture} must be called from one thread; the rates may be set from any.
+ */
+public class FrameRateController {
+    // Encoder feedback never throttles below this, so a stalled estimate cannot starve the encoder
+    private static final int MIN_FEEDBACK_FPS = 5;
+
+    private volatile int maxFps;
+    private volatile int encoderFps;
+    private volatile long skippedFrames;
+    private long intervalNs;
+    private long nextFrameNs;
+    private long lastTimestampNs;
+    private long sourceIntervalNs;
+    private boolean scheduled;
+
+    /** @param maxFps fixed upper bound on captured frames per second; 0 captures every frame */
+    public FrameRateController(int maxFps) {
+        setMaxFps(maxFps);
+    }
+
+    public void setMaxFps(int fps) {
+        if (fps < 0) {
+            throw new IllegalArgumentException("fps must be >= 0: " + fps);
+        }
+        maxFps = fps;
+    }
+
+    /**
+     * Feeds back the frame rate the encoder is currently targeting, or 0 to ignore feedback.
+     * Values below 5 fps are raised to 5.
+     */
+    public void setEncoderFps(int fps) {
+        encoderFps = Math.max(0, fps);
+    }
+
+    /** The rate frames are currently captured at, or 0 when every frame is captured. */
+    public int getTargetFps() {
+        int max = maxFps;
+        int encoder = encoderFps;
+        if (encoder == 0) {
+            return max;
+        }
+        encoder = Math.max(MIN_FEEDBACK_FPS, encoder);
+        return max == 0 ? encoder : Math.min(max, encoder);
+    }
+
+    /** Frames rejected by {@link #shouldCapture} since creation. */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Whether the frame with this timestamp should be captured. Returns true at most
+     * {@link #getTargetFps()} times per second of timestamps.
+     */
+    public boolean shouldCapture(long timestampNs) {
+        int fps = getTargetFps();
+        if (fps == 0) {
+            scheduled = false;
+            return true;
+        }
+        long interval = 1_000_000_000L / fps;
+        if (interval != intervalNs) {
+            intervalNs = interval;
+            scheduled = false; // Re-phase to the new rate
+        }
+
+        if (scheduled) {
+            long sinceLast = timestampNs - lastTimestampNs;
+            if (sinceLast <= 0) {
+                skippedFrames++; // Same image as last time, or older
+                return false;
+            }
+            sourceIntervalNs = sinceLast;
+            lastTimestampNs = timestampNs;
+
+            long untilNext = nextFrameNs - timestampNs;
+            if (Math.abs(untilNext) < 2 * interval) {
+                if (untilNext > Math.min(interval, sourceIntervalNs) / 2) {
+                    skippedFrames++;
+                    return false;
+                }
+                nextFrameNs += interval;
+                return true;
+            }
+        }
+        nextFrameNs = timestampNs + interval;
+        lastTimestampNs = timestampNs;
+        sourceIntervalNs = interval;
+        scheduled = true;
+        return true;
+    }
+}
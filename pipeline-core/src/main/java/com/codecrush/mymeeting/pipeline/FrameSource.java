@@ -0,0 +1,19 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Supplies one RGBA frame per camera, the input of {@link CompositeStage}.
+ */
+public interface FrameSource {
+    int getCameraCount();
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Fills {@code rgbaTiles[i]} (width * height * 4 bytes) with the next frame of camera i.
+     *
+     * @return capture timestamp of the frames in nanoseconds
+     */
+    long read(byte[][] rgbaTiles);
+}
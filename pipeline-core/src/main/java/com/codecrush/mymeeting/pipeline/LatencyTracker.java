@@ -0,0 +1,114 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Per-stage latency of frames from camera capture to publish. Each stage marks the frame with
+ * {@link Frame#mark(Stage)} as the frame leaves it; once published, {@link #record(Frame)} turns
+ * the marks into one duration per stage (from the previous mark, or from the capture timestamp
+ * for the first) plus the end-to-end total. All times are System.nanoTime().
+ */
+public class LatencyTracker {
+    /** Points a frame passes, in pipeline order. */
+    public enum Stage {
+        /** Readback mapped on the GL thread: covers composite, GPU work and the PBO fence. */
+        MAPPED("readback"),
+        /** RGBA converted (or GPU-packed NV21 copied) into the output frame. */
+        CONVERTED("convert"),
+        /** Handed to the publish pipeline, after the hop to the listener thread. */
+        SUBMITTED("handoff"),
+        /** Taken off the queue by the publish thread. */
+        DEQUEUED("queue"),
+        /** Pushed to the streaming SDK. */
+        PUBLISHED("push");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    public LatencyTracker() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the frame's stage durations. Call once the frame has been published but before it
+     * is released, since release clears the marks. Stages the frame skipped are left out.
+     */
+    public void record(Frame frame) {
+        long capture = frame.getTimestampNs();
+        long previous = capture;
+        for (Stage stage : STAGES) {
+            long mark = frame.getMarkNs(stage);
+            if (mark == 0) {
+                continue;
+            }
+            if (previous != 0) {
+                stages[stage.ordinal()].record(mark - previous);
+            }
+            previous = mark;
+        }
+        if (capture != 0 && previous != capture) {
+            total.record(previous - capture);
+        }
+    }
+
+    /**
+     * Records a frame that carries no marks of its own, such as a composite published as a
+     * texture straight from the GL thread: the time from capture to {@code markNs} counts
+     * towards {@code stage} and the total, as if the frame had been marked at that stage only.
+     */
+    public void record(long timestampNs, Stage stage, long markNs) {
+        if (timestampNs == 0) {
+            return;
+        }
+        stages[stage.ordinal()].record(markNs - timestampNs);
+        total.record(markNs - timestampNs);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /** End-to-end latency from capture to the last mark. */
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+        total.reset();
+    }
+
+    /** One line per stage plus the total, with p50/p95/p99 and max in milliseconds. */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Stage stage : STAGES) {
+            appendLine(report, stage.getLabel(), stages[stage.ordinal()]);
+        }
+        appendLine(report, "total", total);
+        return report.toString();
+    }
+
+    private static void appendLine(StringBuilder report, String label, LatencyHistogram histogram) {
+        report.append(String.format(Locale.US, "%-8s n=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms%n",
+                label, histogram.getCount(),
+                histogram.percentileNs(50) / 1e6, histogram.percentileNs(95) / 1e6,
+                histogram.percentileNs(99) / 1e6, histogram.getMaxNs() / 1e6));
+    }
+}
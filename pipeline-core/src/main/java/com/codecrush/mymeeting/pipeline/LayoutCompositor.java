@@ -0,0 +1,409 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composes YUV 4:2:0 camera tiles onto a fixed-size canvas following a {@link CompositeLayout},
+ * the CPU counterpart of the renderer's GL composite. Tiles may be NV21, NV12 or I420 and of
+ * any size, odd ones included; each is scaled to its rectangle with the selected
+ * {@link Filter}, and tiles whose size already matches are copied row by row. The canvas is
+ * written in place, so with a pooled output a steady stream allocates nothing.
+ *
+ * <p>Rectangles are chroma-aligned before drawing: edges snap down to even pixels, except at
+ * the canvas border, so a tile never writes half of a chroma sample it shares with a
+ * neighbour. Large tiles are split into row bands drawn in parallel on a fixed worker pool;
+ * band boundaries are even, so no chroma row is written by two bands, and the output does not
+ * depend on the worker count.
+ *
+ * <p>The layout and filter can be switched at any time and take effect on the next frame;
+ * the canvas, and therefore every buffer, stays the same. One composite runs at a time per
+ * instance.
+ */
+public class LayoutCompositor implements FrameCompositor {
+    /** How tiles are sampled when their size differs from their rectangle. */
+    public enum Filter {
+        /** Nearest source pixel; cheapest, blocky when enlarging. */
+        NEAREST,
+        /** Weighted average of the four nearest source pixels, with 8-bit weights. */
+        BILINEAR
+    }
+
+    // Limited-range black, used where the layout leaves the canvas uncovered
+    private static final byte BLACK_Y = 16;
+    private static final byte BLACK_UV = (byte) 128;
+    // Bands of fewer rows cost more in hand-off than they save
+    private static final int MIN_BAND_ROWS = 32;
+
+    private final int canvasWidth, canvasHeight;
+    private final YuvFormat canvasFormat;
+    private final int workerCount;
+    private final ExecutorService workers;
+    private final Band[] bands;
+    private final Semaphore bandsDone = new Semaphore(0);
+    private volatile Throwable bandFailure;
+    private volatile CompositeLayout layout;
+    private volatile Filter filter;
+
+    // The blit in progress; set before the bands start and only read by them
+    private byte[] src, dst;
+    private YuvFormat srcFormat;
+    private int srcWidth, srcHeight;
+    private int left, top, width, height, chromaLeft, chromaTop, chromaWidth, chromaHeight;
+    private Filter blitFilter;
+    private boolean copyRows;
+    // Source column of each destination column in 16.16 fixed point, grown as needed
+    private int[] lumaColumns = new int[0], chromaColumns = new int[0];
+
+    /** An NV21 canvas drawn with nearest sampling on the calling thread only. */
+    public LayoutCompositor(int canvasWidth, int canvasHeight, CompositeLayout layout) {
+        this(canvasWidth, canvasHeight, YuvFormat.NV21, layout, Filter.NEAREST, 1);
+    }
+
+    /**
+     * @param workerCount threads drawing bands, the calling thread included; 1 draws serially
+     */
+    public LayoutCompositor(int canvasWidth, int canvasHeight, YuvFormat canvasFormat,
+                            CompositeLayout layout, Filter filter, int workerCount) {
+        if (canvasWidth <= 0 || canvasHeight <= 0) {
+            throw new IllegalArgumentException("Canvas size must be positive: " + canvasWidth + "x" + canvasHeight);
+        }
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be >= 1: " + workerCount);
+        }
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.canvasFormat = canvasFormat;
+        this.workerCount = workerCount;
+        this.workers = workerCount > 1
+                ? Executors.newFixedThreadPool(workerCount - 1, new WorkerThreadFactory())
+                : null;
+        this.bands = new Band[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            bands[i] = new Band();
+        }
+        setLayout(layout);
+        setFilter(filter);
+    }
+
+    public void setLayout(CompositeLayout layout) {
+        if (layout == null) {
+            throw new IllegalArgumentException("layout must not be null");
+        }
+        this.layout = layout;
+    }
+
+    public CompositeLayout getLayout() {
+        return layout;
+    }
+
+    public void setFilter(Filter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("filter must not be null");
+        }
+        this.filter = filter;
+    }
+
+    /**
+     * @param tiles NV21 tiles indexed by source, each tileWidth x tileHeight
+     */
+    @Override
+    public void compose(byte[][] tiles, int tileWidth, int tileHeight, byte[] output) {
+        compose(tiles, YuvFormat.NV21, tileWidth, tileHeight, output);
+    }
+
+    /**
+     * Draws the current layout onto {@code output}, a canvas-sized frame in the canvas format.
+     *
+     * @param tiles tiles indexed by source, each tileWidth x tileHeight in tileFormat; layout
+     *              tiles whose source has no entry are left out
+     */
+    public synchronized void compose(byte[][] tiles, YuvFormat tileFormat, int tileWidth, int tileHeight,
+                                     byte[] output) {
+        compose(tiles, tileFormat, null, null, tileWidth, tileHeight, output);
+    }
+
+    /**
+     * As {@link #compose(byte[][], YuvFormat, int, int, byte[])} for tiles of different sizes,
+     * e.g. two cameras with different preview resolutions.
+     */
+    public synchronized void compose(byte[][] tiles, YuvFormat tileFormat, int[] tileWidths, int[] tileHeights,
+                                     byte[] output) {
+        compose(tiles, tileFormat, tileWidths, tileHeights, 0, 0, output);
+    }
+
+    private void compose(byte[][] tiles, YuvFormat tileFormat, int[] tileWidths, int[] tileHeights,
+                         int tileWidth, int tileHeight, byte[] output) {
+        checkSize(output, canvasWidth, canvasHeight, "output");
+        CompositeLayout current = layout;
+        if (!current.coversCanvas()) {
+            int ySize = canvasWidth * canvasHeight;
+            Arrays.fill(output, 0, ySize, BLACK_Y);
+            Arrays.fill(output, ySize, YuvFormat.size(canvasWidth, canvasHeight), BLACK_UV);
+        }
+        for (int i = 0; i < current.getTileCount(); i++) {
+            CompositeLayout.Tile tile = current.getTile(i);
+            int source = tile.getSource();
+            if (source < tiles.length && tiles[source] != null) {
+                int tileLeft = tile.left(canvasWidth);
+                int tileTop = tile.top(canvasHeight);
+                blit(tiles[source], tileFormat,
+                        tileWidths != null ? tileWidths[source] : tileWidth,
+                        tileHeights != null ? tileHeights[source] : tileHeight,
+                        output, tileLeft, tileTop,
+                        tile.right(canvasWidth) - tileLeft, tile.bottom(canvasHeight) - tileTop);
+            }
+        }
+    }
+
+    /**
+     * Scales one image into a rectangle of the canvas, leaving the rest of it untouched. The
+     * rectangle is clipped to the canvas and chroma-aligned first (see the class comment), so
+     * it may shrink by a pixel on each side.
+     */
+    public synchronized void blit(byte[] source, YuvFormat sourceFormat, int sourceWidth, int sourceHeight,
+                                  byte[] output, int rectLeft, int rectTop, int rectWidth, int rectHeight) {
+        if (sourceWidth <= 0 || sourceHeight <= 0) {
+            throw new IllegalArgumentException("Source size must be positive: " + sourceWidth + "x" + sourceHeight);
+        }
+        checkSize(source, sourceWidth, sourceHeight, "source");
+        checkSize(output, canvasWidth, canvasHeight, "output");
+
+        int x0 = alignEdge(Math.max(0, rectLeft), canvasWidth);
+        int y0 = alignEdge(Math.max(0, rectTop), canvasHeight);
+        int x1 = alignEdge(Math.min(canvasWidth, rectLeft + rectWidth), canvasWidth);
+        int y1 = alignEdge(Math.min(canvasHeight, rectTop + rectHeight), canvasHeight);
+        if (x1 <= x0 || y1 <= y0) {
+            return;
+        }
+
+        src = source;
+        dst = output;
+        srcFormat = sourceFormat;
+        srcWidth = sourceWidth;
+        srcHeight = sourceHeight;
+        left = x0;
+        top = y0;
+        width = x1 - x0;
+        height = y1 - y0;
+        chromaLeft = x0 / 2;
+        chromaTop = y0 / 2;
+        chromaWidth = YuvFormat.chromaWidth(x1) - chromaLeft;
+        chromaHeight = YuvFormat.chromaHeight(y1) - chromaTop;
+        blitFilter = filter;
+        copyRows = width == sourceWidth && height == sourceHeight;
+        if (!copyRows) {
+            lumaColumns = sourcePositions(lumaColumns, width, sourceWidth);
+            chromaColumns = sourcePositions(chromaColumns, chromaWidth, YuvFormat.chromaWidth(sourceWidth));
+        }
+
+        int bandCount = Math.max(1, Math.min(workerCount, height / MIN_BAND_ROWS));
+        for (int i = 0; i < bandCount; i++) {
+            bands[i].set(evenRow(height, i, bandCount), evenRow(height, i + 1, bandCount));
+        }
+        try {
+            runBands(bandCount);
+        } finally {
+            src = null;
+            dst = null;
+        }
+    }
+
+    private void runBands(int bandCount) {
+        bandFailure = null;
+        for (int i = 1; i < bandCount; i++) {
+            workers.execute(bands[i]);
+        }
+        try {
+            bands[0].draw();
+        } finally {
+            bandsDone.acquireUninterruptibly(bandCount - 1);
+        }
+
+        Throwable failure = bandFailure;
+        if (failure != null) {
+            throw new IllegalStateException("Tile band failed", failure);
+        }
+    }
+
+    /** Draws rectangle rows [rowStart, rowEnd) and the chroma rows they begin. */
+    private void drawRows(int rowStart, int rowEnd) {
+        for (int y = rowStart; y < rowEnd; y++) {
+            int dstRow = (top + y) * canvasWidth + left;
+            if (copyRows) {
+                System.arraycopy(src, y * srcWidth, dst, dstRow, width);
+            } else {
+                scaleRow(src, 0, srcWidth, 1, srcWidth, srcHeight, lumaColumns, width, height, y, dst, dstRow, 1);
+            }
+        }
+
+        int srcChromaWidth = YuvFormat.chromaWidth(srcWidth);
+        int srcChromaHeight = YuvFormat.chromaHeight(srcHeight);
+        int srcRowStride = srcFormat.chromaRowStride(srcWidth);
+        int srcPixelStride = srcFormat.chromaPixelStride();
+        int dstRowStride = canvasFormat.chromaRowStride(canvasWidth);
+        int dstPixelStride = canvasFormat.chromaPixelStride();
+        int srcU = srcFormat.uOffset(srcWidth, srcHeight);
+        int srcV = srcFormat.vOffset(srcWidth, srcHeight);
+        int dstU = canvasFormat.uOffset(canvasWidth, canvasHeight);
+        int dstV = canvasFormat.vOffset(canvasWidth, canvasHeight);
+        boolean interleavedCopy = copyRows && srcFormat == canvasFormat && srcPixelStride == 2;
+
+        int chromaEnd = Math.min(chromaHeight, YuvFormat.chromaHeight(rowEnd));
+        for (int y = rowStart / 2; y < chromaEnd; y++) {
+            int dstOffset = (chromaTop + y) * dstRowStride + chromaLeft * dstPixelStride;
+            if (interleavedCopy) {
+                // Both chroma planes in one copy
+                System.arraycopy(src, Math.min(srcU, srcV) + y * srcRowStride,
+                        dst, Math.min(dstU, dstV) + dstOffset, chromaWidth * 2);
+            } else if (copyRows) {
+                copyChromaRow(srcU + y * srcRowStride, srcPixelStride, dstU + dstOffset, dstPixelStride);
+                copyChromaRow(srcV + y * srcRowStride, srcPixelStride, dstV + dstOffset, dstPixelStride);
+            } else {
+                scaleRow(src, srcU, srcRowStride, srcPixelStride, srcChromaWidth, srcChromaHeight, chromaColumns,
+                        chromaWidth, chromaHeight, y, dst, dstU + dstOffset, dstPixelStride);
+                scaleRow(src, srcV, srcRowStride, srcPixelStride, srcChromaWidth, srcChromaHeight, chromaColumns,
+                        chromaWidth, chromaHeight, y, dst, dstV + dstOffset, dstPixelStride);
+            }
+        }
+    }
+
+    private void copyChromaRow(int srcOffset, int srcPixelStride, int dstOffset, int dstPixelStride) {
+        for (int x = 0; x < chromaWidth; x++) {
+            dst[dstOffset + x * dstPixelStride] = src[srcOffset + x * srcPixelStride];
+        }
+    }
+
+    /**
+     * Writes row y of a dstColumns x dstRows plane, scaled from a srcColumns x srcRows plane
+     * at the precomputed source columns.
+     */
+    private void scaleRow(byte[] plane, int planeOffset, int rowStride, int pixelStride,
+                          int srcColumns, int srcRows, int[] columns, int dstColumns, int dstRows, int y,
+                          byte[] out, int outOffset, int outPixelStride) {
+        int position = sourcePosition(y, dstRows, srcRows);
+        if (blitFilter == Filter.NEAREST) {
+            int row = planeOffset + nearest(position) * rowStride;
+            for (int x = 0; x < dstColumns; x++) {
+                out[outOffset + x * outPixelStride] = plane[row + nearest(columns[x]) * pixelStride];
+            }
+            return;
+        }
+
+        int row0 = planeOffset + (position >> 16) * rowStride;
+        int row1 = planeOffset + Math.min((position >> 16) + 1, srcRows - 1) * rowStride;
+        int fy = (position >> 8) & 0xFF;
+        int lastColumn = (srcColumns - 1) * pixelStride;
+        for (int x = 0; x < dstColumns; x++) {
+            int column = columns[x];
+            int c0 = (column >> 16) * pixelStride;
+            int c1 = Math.min(c0 + pixelStride, lastColumn);
+            int fx = (column >> 8) & 0xFF;
+            int upper = (plane[row0 + c0] & 0xFF) * (256 - fx) + (plane[row0 + c1] & 0xFF) * fx;
+            int lower = (plane[row1 + c0] & 0xFF) * (256 - fx) + (plane[row1 + c1] & 0xFF) * fx;
+            out[outOffset + x * outPixelStride] = (byte) ((upper * (256 - fy) + lower * fy + 32768) >> 16);
+        }
+    }
+
+    /** Fills {@code positions} (or a larger replacement) with the source position of each column. */
+    private static int[] sourcePositions(int[] positions, int dstSize, int srcSize) {
+        if (positions.length < dstSize) {
+            positions = new int[dstSize];
+        }
+        for (int i = 0; i < dstSize; i++) {
+            positions[i] = sourcePosition(i, dstSize, srcSize);
+        }
+        return positions;
+    }
+
+    /**
+     * Source position of destination pixel {@code index} in 16.16 fixed point, mapping pixel
+     * centres to pixel centres and clamped to the source, so unscaled tiles come out exact and
+     * scaled ones unshifted.
+     */
+    private static int sourcePosition(int index, int dstSize, int srcSize) {
+        long position = ((2L * index + 1) * srcSize << 16) / (2L * dstSize) - (1 << 15);
+        return (int) Math.max(0, Math.min((long) (srcSize - 1) << 16, position));
+    }
+
+    private static int nearest(int position) {
+        return (position + (1 << 15)) >> 16;
+    }
+
+    /** Snaps an edge down to an even pixel, unless it is the canvas border. */
+    private static int alignEdge(int edge, int size) {
+        return edge >= size ? size : edge & ~1;
+    }
+
+    private static int evenRow(int height, int band, int bandCount) {
+        if (band == bandCount) {
+            return height;
+        }
+        return (int) ((long) height * band / bandCount) & ~1;
+    }
+
+    private static void checkSize(byte[] frame, int width, int height, String name) {
+        if (frame.length < YuvFormat.size(width, height)) {
+            throw new IllegalArgumentException(name + " too small for " + width + "x" + height + ": " + frame.length);
+        }
+    }
+
+    @Override
+    public int compositeWidth(int tileWidth, int tileHeight, int tileCount) {
+        return canvasWidth;
+    }
+
+    @Override
+    public int compositeHeight(int tileWidth, int tileHeight, int tileCount) {
+        return canvasHeight;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    private final class Band implements Runnable {
+        private int rowStart, rowEnd;
+
+        void set(int rowStart, int rowEnd) {
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        void draw() {
+            drawRows(rowStart, rowEnd);
+        }
+
+        @Override
+        public void run() {
+            try {
+                draw();
+            } catch (Throwable t) {
+                bandFailure = t;
+            } finally {
+                bandsDone.release();
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "compositor-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
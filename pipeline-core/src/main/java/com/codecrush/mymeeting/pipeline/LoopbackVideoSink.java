@@ -0,0 +1,88 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the SDK when load-testing offline: checks that every frame arrives with the
+ * content it had when it entered the pipeline, and measures how long it took.
+ *
+ * <p>The producer calls {@link #expect(Frame)} just before submitting a frame, which records a
+ * checksum of its pixels; on arrival the checksum is taken again, so a frame overwritten while
+ * queued, e.g. released to its pool too early, is counted as corrupted. Frames never expected
+ * are counted separately. End-to-end latency runs from the capture timestamp to arrival, and
+ * the frame's stage marks go to the {@link LatencyTracker}.
+ */
+public class LoopbackVideoSink implements VideoSink {
+    // Keyed by identity: a pooled frame is only expected again after it has been released
+    private final Map<Frame, Long> expected = new IdentityHashMap<>();
+    private final LatencyTracker latency = new LatencyTracker();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+    private final AtomicLong unexpected = new AtomicLong();
+
+    /** Records the frame's content; call on the producer thread right before submitting it. */
+    public void expect(Frame frame) {
+        long checksum = checksum(frame);
+        synchronized (expected) {
+            expected.put(frame, checksum);
+        }
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        frame.mark(LatencyTracker.Stage.PUBLISHED);
+        Long checksum;
+        synchronized (expected) {
+            checksum = expected.remove(frame);
+        }
+        if (checksum == null) {
+            unexpected.incrementAndGet();
+        } else if (checksum != checksum(frame)) {
+            corrupted.incrementAndGet();
+        }
+        frames.incrementAndGet();
+        latency.record(frame); // Before release, which clears the marks
+        frame.release();
+    }
+
+    /** Frames received. */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /** Frames whose content changed between {@link #expect(Frame)} and arrival. */
+    public long getCorrupted() {
+        return corrupted.get();
+    }
+
+    /** Frames that arrived without having been expected, so their content was not checked. */
+    public long getUnexpected() {
+        return unexpected.get();
+    }
+
+    /** Capture to arrival, plus the per-stage breakdown of the frames' marks. */
+    public LatencyTracker getLatency() {
+        return latency;
+    }
+
+    /** 64-bit FNV-1a over the frame's YUV bytes, for heap and direct frames alike. */
+    static long checksum(Frame frame) {
+        int size = YuvFormat.size(frame.getWidth(), frame.getHeight());
+        long hash = 0xcbf29ce484222325L;
+        if (frame.isDirect()) {
+            ByteBuffer buffer = frame.getBuffer();
+            for (int i = 0; i < size; i++) {
+                hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x100000001b3L;
+            }
+        } else {
+            byte[] data = frame.getData();
+            for (int i = 0; i < size; i++) {
+                hash = (hash ^ (data[i] & 0xFF)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,48 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Stacks NV21 tiles vertically, first tile on top. Used for the front-over-back composite.
+ */
+public class NV21Compositor implements FrameCompositor {
+    public static byte[] combineFrames(byte[] frontFrame, byte[] backFrame, int width, int height) {
+        byte[] combined = new byte[width * height * 3 / 2];
+        combineFrames(frontFrame, backFrame, width, height, combined);
+        return combined;
+    }
+
+    /** Writes the front-over-back composite of two width x height/2 frames into {@code combined}. */
+    public static void combineFrames(byte[] frontFrame, byte[] backFrame, int width, int height, byte[] combined) {
+        int frameSizePerCamera = width * height / 2; // Each camera provides half the height
+        int totalFrameSize = width * height;        // Combined frame size for Y plane
+
+        // Combine Y plane
+        System.arraycopy(frontFrame, 0, combined, 0, frameSizePerCamera); // Top half from front camera
+        System.arraycopy(backFrame, 0, combined, frameSizePerCamera, frameSizePerCamera); // Bottom half from back camera
+
+        // Combine UV planes
+        int uvSizePerCamera = frameSizePerCamera / 2;
+        System.arraycopy(frontFrame, frameSizePerCamera, combined, totalFrameSize, uvSizePerCamera);
+        System.arraycopy(backFrame, frameSizePerCamera, combined, totalFrameSize + uvSizePerCamera, uvSizePerCamera);
+    }
+
+    @Override
+    public void compose(byte[][] tiles, int tileWidth, int tileHeight, byte[] output) {
+        int ySize = tileWidth * tileHeight;
+        int uvSize = ySize / 2;
+        int totalYSize = ySize * tiles.length;
+        for (int i = 0; i < tiles.length; i++) {
+            System.arraycopy(tiles[i], 0, output, i * ySize, ySize);
+            System.arraycopy(tiles[i], ySize, output, totalYSize + i * uvSize, uvSize);
+        }
+    }
+
+    @Override
+    public int compositeWidth(int tileWidth, int tileHeight, int tileCount) {
+        return tileWidth;
+    }
+
+    @Override
+    public int compositeHeight(int tileWidth, int tileHeight, int tileCount) {
+        return tileHeight * tileCount;
+    }
+}
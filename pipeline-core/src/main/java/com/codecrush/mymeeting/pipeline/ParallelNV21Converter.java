@@ -0,0 +1,218 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a frame into horizontal bands and converts them on a fixed worker pool. Band
+ * boundaries are kept on even rows so each 2x2 chroma block is produced by exactly one band,
+ * which keeps the output byte-identical to {@link YUVConverter}.
+ *
+ * <p>The calling thread converts the first band itself, so a converter with N workers uses
+ * N - 1 pool threads. One conversion runs at a time per instance. The color spec can be
+ * switched from any thread and applies from the next frame.
+ *
+ * <p>Bands run the given {@link ConversionKernel}, {@link YUVConverter#DEFAULT_KERNEL} unless
+ * another, such as a native one, is supplied.
+ */
+public class ParallelNV21Converter implements FrameConverter {
+    private final int workerCount;
+    private final ExecutorService workers;
+    private final Band[] bands;
+    private final Semaphore bandsDone = new Semaphore(0);
+    private volatile Throwable bandFailure;
+    private volatile ColorSpec colorSpec;
+    private final ConversionKernel kernel;
+
+    public ParallelNV21Converter(int workerCount) {
+        this(workerCount, ColorSpec.BT601_LIMITED);
+    }
+
+    public ParallelNV21Converter(int workerCount, ColorSpec colorSpec) {
+        this(workerCount, colorSpec, YUVConverter.DEFAULT_KERNEL);
+    }
+
+    public ParallelNV21Converter(int workerCount, ColorSpec colorSpec, ConversionKernel kernel) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("workerCount must be >= 1: " + workerCount);
+        }
+        this.workerCount = workerCount;
+        this.colorSpec = colorSpec;
+        this.kernel = kernel;
+        this.workers = workerCount > 1
+                ? Executors.newFixedThreadPool(workerCount - 1, new WorkerThreadFactory())
+                : null;
+        this.bands = new Band[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            bands[i] = new Band();
+        }
+    }
+
+    public synchronized void rgbaToNV21(byte[] rgba, int width, int height, byte[] nv21) {
+        YUVConverter.checkOutput(nv21, width, height);
+
+        int bandCount = bandCount(height);
+        ColorSpec spec = colorSpec;
+        for (int i = 0; i < bandCount; i++) {
+            bands[i].set(rgba, width, height, nv21, spec,
+                    evenRow(height, i, bandCount), evenRow(height, i + 1, bandCount));
+        }
+        runBands(bandCount);
+    }
+
+    /**
+     * Buffer variant of {@link #rgbaToNV21(byte[], int, int, byte[])}, converting straight out
+     * of a mapped or direct RGBA buffer. See {@link YUVConverter#rgbaToNV21(ByteBuffer, int, int, ByteBuffer)}.
+     */
+    public synchronized void rgbaToNV21(ByteBuffer rgba, int width, int height, ByteBuffer nv21) {
+        YUVConverter.checkOutput(nv21, width, height);
+        convertBuffers(rgba, width, height, nv21, 0);
+    }
+
+    /** As {@link #rgbaToNV21(ByteBuffer, int, int, ByteBuffer)} with U, V chroma order. */
+    public synchronized void rgbaToNV12(ByteBuffer rgba, int width, int height, ByteBuffer nv12) {
+        YUVConverter.checkOutput(nv12, width, height);
+        convertBuffers(rgba, width, height, nv12, 1);
+    }
+
+    private void convertBuffers(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset) {
+        int bandCount = bandCount(height);
+        ColorSpec spec = colorSpec;
+        for (int i = 0; i < bandCount; i++) {
+            bands[i].set(rgba, width, height, out, vOffset, spec,
+                    evenRow(height, i, bandCount), evenRow(height, i + 1, bandCount));
+        }
+        runBands(bandCount);
+    }
+
+    private void runBands(int bandCount) {
+        bandFailure = null;
+        for (int i = 1; i < bandCount; i++) {
+            workers.execute(bands[i]);
+        }
+        try {
+            bands[0].convert();
+        } finally {
+            bandsDone.acquireUninterruptibly(bandCount - 1);
+            for (int i = 0; i < bandCount; i++) {
+                bands[i].clear();
+            }
+        }
+
+        Throwable failure = bandFailure;
+        if (failure != null) {
+            throw new IllegalStateException("NV21 band conversion failed", failure);
+        }
+    }
+
+    @Override
+    public void convert(byte[] rgba, int width, int height, byte[] nv21) {
+        rgbaToNV21(rgba, width, height, nv21);
+    }
+
+    public void setColorSpec(ColorSpec colorSpec) {
+        this.colorSpec = colorSpec;
+    }
+
+    public ColorSpec getColorSpec() {
+        return colorSpec;
+    }
+
+    public ConversionKernel getKernel() {
+        return kernel;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    private int bandCount(int height) {
+        // Never hand out empty bands on tiny frames
+        return Math.max(1, Math.min(workerCount, height / 2));
+    }
+
+    private static int evenRow(int height, int band, int bandCount) {
+        if (band == bandCount) {
+            return height;
+        }
+        return (int) ((long) height * band / bandCount) & ~1;
+    }
+
+    private final class Band implements Runnable {
+        private byte[] rgba;
+        private byte[] nv21;
+        private ByteBuffer rgbaBuffer;
+        private ByteBuffer outBuffer;
+        private ColorSpec spec;
+        private int width, height, vOffset, rowStart, rowEnd;
+
+        void set(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec, int rowStart, int rowEnd) {
+            this.rgba = rgba;
+            this.nv21 = nv21;
+            this.spec = spec;
+            this.width = width;
+            this.height = height;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        void set(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset, ColorSpec spec,
+                 int rowStart, int rowEnd) {
+            this.rgbaBuffer = rgba;
+            this.outBuffer = out;
+            this.spec = spec;
+            this.vOffset = vOffset;
+            this.width = width;
+            this.height = height;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        void clear() {
+            rgba = null;
+            nv21 = null;
+            rgbaBuffer = null;
+            outBuffer = null;
+        }
+
+        void convert() {
+            if (outBuffer != null) {
+                kernel.convertRows(rgbaBuffer, width, height, outBuffer, vOffset, spec, rowStart, rowEnd);
+            } else {
+                kernel.convertRows(rgba, width, height, nv21, spec, rowStart, rowEnd);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                convert();
+            } catch (Throwable t) {
+                bandFailure = t;
+            } finally {
+                bandsDone.release();
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "nv21-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer, single-consumer {@link FrameQueue}. Slots live in a fixed
+ * array, so a hand-off allocates nothing, and an idle consumer parks instead of spinning.
+ *
+ * <p>Drop-oldest is atomic: the producer evicts by advancing the head with the same
+ * compare-and-set the consumer uses to take a frame, so every frame is either consumed or
+ * returned from {@link #offer} exactly once, never both and never neither.
+ */
+public class SpscFrameRing implements FrameQueue {
+    private final AtomicReferenceArray<Frame> slots;
+    private final int mask;
+    private final int capacity;
+    private final AtomicLong head = new AtomicLong(); // Next frame to take
+    private final AtomicLong tail = new AtomicLong(); // Next slot to fill, written by the producer only
+    private volatile Thread waiter;
+
+    public SpscFrameRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        }
+        this.capacity = capacity;
+        // Power-of-two slot count so indexing is a mask; only capacity of them are ever in use
+        int slotCount = Integer.highestOneBit(capacity);
+        if (slotCount < capacity) {
+            slotCount <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.mask = slotCount - 1;
+    }
+
+    /** Producer side; must only be called from one thread at a time. */
+    @Override
+    public Frame offer(Frame frame) {
+        long t = tail.get();
+        Frame dropped = null;
+        if (t - head.get() >= capacity) {
+            // Full: take the oldest frame ourselves, unless the consumer beats us to it
+            dropped = take();
+        }
+        slots.lazySet((int) t & mask, frame);
+        // Volatile store orders the slot write before the waiter check below
+        tail.set(t + 1);
+
+        Thread consumer = waiter;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return dropped;
+    }
+
+    /** Consumer side; parks while the ring is empty. */
+    @Override
+    public Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        Frame frame = take();
+        if (frame != null || timeout <= 0) {
+            return frame;
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                // Re-check after publishing the waiter so a concurrent offer cannot be missed
+                frame = take();
+                if (frame != null) {
+                    return frame;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Removes the oldest frame, racing safely against the other side doing the same. */
+    private Frame take() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            int index = (int) h & mask;
+            Frame frame = slots.get(index);
+            if (head.compareAndSet(h, h + 1)) {
+                // Clear for GC unless the producer has already refilled the slot
+                slots.compareAndSet(index, frame, null);
+                return frame;
+            }
+        }
+    }
+}
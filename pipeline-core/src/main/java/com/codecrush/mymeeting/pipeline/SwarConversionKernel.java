@@ -0,0 +1,213 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Java kernel that reads pixels a word at a time instead of a byte at a time. Each horizontal
+ * pixel pair is one little-endian long (R in the low byte of each half), read through a
+ * {@link ByteBuffer} view of the input, which wraps heap arrays and reads mapped PBO buffers
+ * in place. A 2x2 block is then two loads instead of twelve bounds-checked byte loads.
+ *
+ * <p>Chroma sums use SIMD-within-a-register: masking a pair with 0x00FF00FF.. leaves R and B
+ * in separate 16-bit lanes, so adding the top and bottom pairs and folding the halves sums all
+ * four R and all four B samples at once (at most 1020, no carry between lanes); G is summed
+ * the same way after a shift. Luma still needs every channel separately and is unpacked with
+ * shifts. Output, tails and banding are exactly those of {@link YUVConverter#JAVA_KERNEL}.
+ *
+ * <p>Words are read with absolute gets, so a little-endian input buffer is read as is. Array
+ * inputs and buffers in the other byte order need a little-endian view; each thread keeps the
+ * view of the last source it converted, so converting the same frame buffer band after band,
+ * frame after frame, allocates nothing.
+ */
+final class SwarConversionKernel implements ConversionKernel {
+    private static final long LANES = 0x00FF00FF00FF00FFL;
+
+    // Bands of one frame run on several threads at once, so views are cached per thread
+    private final ThreadLocal<Views> views = new ThreadLocal<Views>() {
+        @Override
+        protected Views initialValue() {
+            return new Views();
+        }
+    };
+
+    @Override
+    public void convertRows(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec,
+                            int rowStart, int rowEnd) {
+        ByteBuffer in = views.get().of(rgba);
+        int[] yt = spec.yTable, ut = spec.uTable, vt = spec.vTable;
+        int frameSize = width * height;
+        int stride = width * 4;
+        int evenWidth = width & ~1;
+        int uvRowStart = frameSize + (rowStart / 2) * YUVConverter.chromaRowBytes(width);
+        int y = rowStart;
+
+        for (; y + 1 < rowEnd; y += 2, uvRowStart += YUVConverter.chromaRowBytes(width)) {
+            int top = y * stride;
+            int bottom = top + stride;
+            int yTop = y * width;
+            int yBottom = yTop + width;
+            int uvIndex = uvRowStart;
+
+            int x = 0;
+            for (; x < evenWidth; x += 2) {
+                long t = in.getLong(top + x * 4);
+                long b = in.getLong(bottom + x * 4);
+
+                nv21[yTop + x] = (byte) luma(yt, (int) t);
+                nv21[yTop + x + 1] = (byte) luma(yt, (int) (t >>> 32));
+                nv21[yBottom + x] = (byte) luma(yt, (int) b);
+                nv21[yBottom + x + 1] = (byte) luma(yt, (int) (b >>> 32));
+
+                long rb = (t & LANES) + (b & LANES);
+                long ga = ((t >>> 8) & LANES) + ((b >>> 8) & LANES);
+                int rbSum = (int) (rb + (rb >>> 32));
+                int avgR = (rbSum & 0xFFFF) >> 2;
+                int avgG = ((int) (ga + (ga >>> 32)) & 0xFFFF) >> 2;
+                int avgB = (rbSum >>> 16) >> 2;
+                // NV21 stores V first, then U
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(vt, avgR, avgG, avgB);
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(ut, avgR, avgG, avgB);
+            }
+
+            if (x < width) {
+                // Odd width: the block has no right-hand column
+                int p = in.getInt(top + x * 4);
+                int q = in.getInt(bottom + x * 4);
+                nv21[yTop + x] = (byte) luma(yt, p);
+                nv21[yBottom + x] = (byte) luma(yt, q);
+
+                int avgR = (3 * (p & 0xFF) + (q & 0xFF)) >> 2;
+                int avgG = (3 * (p >> 8 & 0xFF) + (q >> 8 & 0xFF)) >> 2;
+                int avgB = (3 * (p >> 16 & 0xFF) + (q >> 16 & 0xFF)) >> 2;
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(vt, avgR, avgG, avgB);
+                nv21[uvIndex] = (byte) ColorSpec.chroma(ut, avgR, avgG, avgB);
+            }
+        }
+
+        if (y < rowEnd) {
+            lastRow(in, y * stride, width, yt, ut, vt, y * width, nv21, null, uvRowStart, 0);
+        }
+    }
+
+    @Override
+    public void convertRows(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset,
+                            ColorSpec spec, int rowStart, int rowEnd) {
+        // Absolute gets only, so the caller's position is left alone; its byte order too
+        ByteBuffer in = rgba.order() == ByteOrder.LITTLE_ENDIAN ? rgba : views.get().of(rgba);
+        int[] yt = spec.yTable, ut = spec.uTable, vt = spec.vTable;
+        int frameSize = width * height;
+        int stride = width * 4;
+        int evenWidth = width & ~1;
+        int uOffset = 1 - vOffset;
+        int uvRowStart = frameSize + (rowStart / 2) * YUVConverter.chromaRowBytes(width);
+        int y = rowStart;
+
+        for (; y + 1 < rowEnd; y += 2, uvRowStart += YUVConverter.chromaRowBytes(width)) {
+            int top = y * stride;
+            int bottom = top + stride;
+            int yTop = y * width;
+            int yBottom = yTop + width;
+            int uvIndex = uvRowStart;
+
+            int x = 0;
+            for (; x < evenWidth; x += 2, uvIndex += 2) {
+                long t = in.getLong(top + x * 4);
+                long b = in.getLong(bottom + x * 4);
+
+                out.put(yTop + x, (byte) luma(yt, (int) t));
+                out.put(yTop + x + 1, (byte) luma(yt, (int) (t >>> 32)));
+                out.put(yBottom + x, (byte) luma(yt, (int) b));
+                out.put(yBottom + x + 1, (byte) luma(yt, (int) (b >>> 32)));
+
+                long rb = (t & LANES) + (b & LANES);
+                long ga = ((t >>> 8) & LANES) + ((b >>> 8) & LANES);
+                int rbSum = (int) (rb + (rb >>> 32));
+                int avgR = (rbSum & 0xFFFF) >> 2;
+                int avgG = ((int) (ga + (ga >>> 32)) & 0xFFFF) >> 2;
+                int avgB = (rbSum >>> 16) >> 2;
+                out.put(uvIndex + vOffset, (byte) ColorSpec.chroma(vt, avgR, avgG, avgB));
+                out.put(uvIndex + uOffset, (byte) ColorSpec.chroma(ut, avgR, avgG, avgB));
+            }
+
+            if (x < width) {
+                // Odd width: the block has no right-hand column
+                int p = in.getInt(top + x * 4);
+                int q = in.getInt(bottom + x * 4);
+                out.put(yTop + x, (byte) luma(yt, p));
+                out.put(yBottom + x, (byte) luma(yt, q));
+
+                int avgR = (3 * (p & 0xFF) + (q & 0xFF)) >> 2;
+                int avgG = (3 * (p >> 8 & 0xFF) + (q >> 8 & 0xFF)) >> 2;
+                int avgB = (3 * (p >> 16 & 0xFF) + (q >> 16 & 0xFF)) >> 2;
+                out.put(uvIndex + vOffset, (byte) ColorSpec.chroma(vt, avgR, avgG, avgB));
+                out.put(uvIndex + uOffset, (byte) ColorSpec.chroma(ut, avgR, avgG, avgB));
+            }
+        }
+
+        if (y < rowEnd) {
+            lastRow(in, y * stride, width, yt, ut, vt, y * width, null, out, uvRowStart, vOffset);
+        }
+    }
+
+    /**
+     * Odd height: the last block row has no bottom row. Runs once per frame at most, so one
+     * body serves both outputs; exactly one of {@code nv21} and {@code out} is non-null.
+     */
+    private static void lastRow(ByteBuffer in, int top, int width, int[] yt, int[] ut, int[] vt,
+                                int yTop, byte[] nv21, ByteBuffer out, int uvIndex, int vOffset) {
+        for (int x = 0; x < width; x += 2, uvIndex += 2) {
+            int p = in.getInt(top + x * 4);
+            int right = x + 1 < width ? in.getInt(top + x * 4 + 4) : p;
+            int avgR = (3 * (p & 0xFF) + (right & 0xFF)) >> 2;
+            int avgG = (3 * (p >> 8 & 0xFF) + (right >> 8 & 0xFF)) >> 2;
+            int avgB = (3 * (p >> 16 & 0xFF) + (right >> 16 & 0xFF)) >> 2;
+            byte v = (byte) ColorSpec.chroma(vt, avgR, avgG, avgB);
+            byte u = (byte) ColorSpec.chroma(ut, avgR, avgG, avgB);
+            if (nv21 != null) {
+                nv21[yTop + x] = (byte) luma(yt, p);
+                if (x + 1 < width) {
+                    nv21[yTop + x + 1] = (byte) luma(yt, right);
+                }
+                nv21[uvIndex] = v;
+                nv21[uvIndex + 1] = u;
+            } else {
+                out.put(yTop + x, (byte) luma(yt, p));
+                if (x + 1 < width) {
+                    out.put(yTop + x + 1, (byte) luma(yt, right));
+                }
+                out.put(uvIndex + vOffset, v);
+                out.put(uvIndex + 1 - vOffset, u);
+            }
+        }
+    }
+
+    /** Little-endian views of the last array and the last buffer one thread converted. */
+    private static final class Views {
+        private byte[] array;
+        private ByteBuffer arrayView;
+        private ByteBuffer buffer;
+        private ByteBuffer bufferView;
+
+        ByteBuffer of(byte[] rgba) {
+            if (rgba != array) {
+                array = rgba;
+                arrayView = ByteBuffer.wrap(rgba).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return arrayView;
+        }
+
+        ByteBuffer of(ByteBuffer rgba) {
+            if (rgba != buffer) {
+                buffer = rgba;
+                bufferView = rgba.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return bufferView;
+        }
+    }
+
+    /** Luma of a little-endian RGBA pixel word. */
+    private static int luma(int[] table, int pixel) {
+        return ColorSpec.luma(table, pixel & 0xFF, pixel >> 8 & 0xFF, pixel >> 16 & 0xFF);
+    }
+}
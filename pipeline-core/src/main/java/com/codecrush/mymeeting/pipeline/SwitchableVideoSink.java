@@ -0,0 +1,34 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Forwards frames to whichever sink is current, so sinks can be swapped at runtime, e.g. from
+ * a counting sink to the SDK once it has joined a channel, without restarting the pipeline.
+ * A frame goes to the sink that was current when it arrived. With no sink set, frames are
+ * released unpublished.
+ */
+public class SwitchableVideoSink implements VideoSink {
+    private volatile VideoSink sink;
+
+    public SwitchableVideoSink(VideoSink sink) {
+        this.sink = sink;
+    }
+
+    /** Takes effect from the next frame; any thread. */
+    public void setSink(VideoSink sink) {
+        this.sink = sink;
+    }
+
+    public VideoSink getSink() {
+        return sink;
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        VideoSink current = sink;
+        if (current == null) {
+            frame.release();
+        } else {
+            current.onFrame(frame);
+        }
+    }
+}
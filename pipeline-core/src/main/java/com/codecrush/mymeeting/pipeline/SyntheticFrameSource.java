@@ -0,0 +1,54 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Deterministic stand-in for the cameras: each camera renders a gradient that scrolls one
+ * pixel per frame, offset per camera so tiles are distinguishable. Lets the pipeline run on a
+ * plain JVM as fast as it can go.
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private final int cameraCount, width, height;
+    private long frameIndex;
+
+    public SyntheticFrameSource(int cameraCount, int width, int height) {
+        this.cameraCount = cameraCount;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getCameraCount() {
+        return cameraCount;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long read(byte[][] rgbaTiles) {
+        int shift = (int) frameIndex++;
+        for (int camera = 0; camera < cameraCount; camera++) {
+            fill(rgbaTiles[camera], shift, camera * 85);
+        }
+        return System.nanoTime();
+    }
+
+    private void fill(byte[] rgba, int shift, int cameraOffset) {
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            byte g = (byte) (y + cameraOffset);
+            for (int x = 0; x < width; x++) {
+                rgba[i++] = (byte) (x + shift);
+                rgba[i++] = g;
+                rgba[i++] = (byte) (x + y);
+                rgba[i++] = (byte) 0xFF;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A composite kept on the GPU, as an RGBA texture with the framebuffer that renders into it,
+ * so it can be published without reading it back. Frames come from a
+ * {@link TextureFramePool}, whose owner on the GL thread creates and sizes their GL objects.
+ *
+ * <p>Frames are reference counted the way the streaming SDK's buffers are: acquiring one
+ * takes the first reference, each extra holder calls {@link #retain()}, and every reference
+ * is given back with {@link #release()}, from any thread. The last release returns the frame
+ * to its pool, and only then may the renderer draw into its texture again.
+ *
+ * <p>The timestamp is the camera capture time on the System.nanoTime() clock.
+ */
+public final class TextureFrame {
+    private final TextureFramePool pool;
+    private final AtomicInteger references = new AtomicInteger();
+    // Set by the GL thread while the frame is free; published to holders by the pool handoff
+    private int framebufferId, textureId, width, height;
+    private long timestampNs;
+
+    TextureFrame(TextureFramePool pool) {
+        this.pool = pool;
+    }
+
+    public int getFramebufferId() {
+        return framebufferId;
+    }
+
+    /** The GL_TEXTURE_2D name of the frame's RGBA texture, or 0 if none was created yet. */
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Records the GL objects the pool owner created for this frame, or zeros once they are
+     * deleted or lost with their context. GL thread only, while the frame is acquired and not
+     * yet handed on.
+     */
+    public void setTexture(int framebufferId, int textureId, int width, int height) {
+        this.framebufferId = framebufferId;
+        this.textureId = textureId;
+        this.width = width;
+        this.height = height;
+    }
+
+    public long getTimestampNs() {
+        return timestampNs;
+    }
+
+    public void setTimestampNs(long timestampNs) {
+        this.timestampNs = timestampNs;
+    }
+
+    /** Takes another reference, for a holder that releases independently. */
+    public void retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Texture frame retained after its last release");
+            }
+        } while (!references.compareAndSet(count, count + 1));
+    }
+
+    /** Gives back one reference; the last one returns the frame to its pool. Any thread. */
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Texture frame released more often than it was acquired");
+        }
+    }
+
+    /** Called by the pool when it hands the frame out. */
+    void acquired() {
+        references.set(1);
+    }
+}
@@ -0,0 +1,75 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link TextureFrame}s shared between the GL thread, which fills them, and a
+ * {@link TexturePublisher}, which holds them until the consumer is done. Unlike
+ * {@link FramePool} it never grows: every frame costs a texture, and running out means the
+ * consumer is behind, so the frame should be skipped rather than queued.
+ *
+ * <p>The pool does no GL work itself. {@link #acquire()} hands out frames as they were left,
+ * and the GL thread creates or resizes a frame's texture when it does not fit. Frames may be
+ * released from any thread.
+ */
+public class TextureFramePool {
+    private final TextureFrame[] frames;
+    private final ConcurrentLinkedQueue<TextureFrame> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile long exhausted;
+
+    public TextureFramePool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        }
+        frames = new TextureFrame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new TextureFrame(this);
+            free.offer(frames[i]);
+        }
+    }
+
+    /**
+     * A free frame holding one reference, or null when every frame is still held. The frame's
+     * texture may be missing or of another size; check before drawing into it. Called from
+     * one thread, the GL thread.
+     */
+    public TextureFrame acquire() {
+        TextureFrame frame = free.poll();
+        if (frame == null) {
+            exhausted++;
+            return null;
+        }
+        outstanding.incrementAndGet();
+        frame.acquired();
+        return frame;
+    }
+
+    void recycle(TextureFrame frame) {
+        outstanding.decrementAndGet();
+        free.offer(frame);
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    /**
+     * Every frame, including those currently held, so the GL thread can delete their
+     * textures, or forget them after losing its context.
+     */
+    public TextureFrame getFrame(int index) {
+        return frames[index];
+    }
+
+    /** Frames acquired and not yet released. */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /** Times {@link #acquire()} found every frame held. */
+    public long getExhausted() {
+        return exhausted;
+    }
+}
@@ -0,0 +1,12 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Final stage for composites that stay on the GPU, e.g. handing the texture to the RTC SDK on
+ * an EGL context shared with the renderer's. Called on the GL thread, with its context
+ * current, once the GPU has finished drawing the frame. The publisher takes ownership of one
+ * reference and must release it, from any thread, once the texture is no longer read; until
+ * then the renderer will not draw into it again.
+ */
+public interface TexturePublisher {
+    void publish(TextureFrame frame);
+}
@@ -0,0 +1,106 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fixed-size ring of trace events for hot threads such as the GL thread. Events are
+ * registered once by name and then recorded as an int id plus two long arguments into
+ * preallocated arrays, so tracing never builds strings or allocates; formatting happens only
+ * when the ring is dumped. While disabled, {@link #record} is a single volatile read.
+ *
+ * <p>One thread records; any thread may enable, disable or dump. A dump taken while the
+ * writer is active may show the oldest entry half-overwritten.
+ */
+public class TraceRing {
+    // Per event: name, then the labels of its two arguments
+    private final List<String[]> eventLabels = new ArrayList<>();
+    private final long[] times;
+    private final int[] events;
+    private final long[] args1, args2;
+    private final int mask;
+    private volatile boolean enabled;
+    private volatile long written;
+
+    /** @param capacity entries kept; rounded up to a power of two */
+    public TraceRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be >= 1: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        times = new long[size];
+        events = new int[size];
+        args1 = new long[size];
+        args2 = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Registers an event and the meaning of its two arguments, returning the id to record it
+     * with. Call at setup.
+     */
+    public synchronized int defineEvent(String name, String arg1Label, String arg2Label) {
+        eventLabels.add(new String[]{name, arg1Label, arg2Label});
+        return eventLabels.size() - 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void record(int event, long arg1, long arg2) {
+        if (!enabled) {
+            return;
+        }
+        long sequence = written;
+        int index = (int) sequence & mask;
+        times[index] = System.nanoTime();
+        events[index] = event;
+        args1[index] = arg1;
+        args2[index] = arg2;
+        written = sequence + 1; // Single writer, so the volatile store publishes the entry
+    }
+
+    /** Entries recorded since creation or the last {@link #clear()}, including overwritten ones. */
+    public long getRecordedCount() {
+        return written;
+    }
+
+    public void clear() {
+        written = 0;
+    }
+
+    /**
+     * Formats the retained entries, oldest first, one per line: milliseconds relative to the
+     * newest entry, event name and both labelled arguments.
+     */
+    public String dump() {
+        long end = written;
+        long start = Math.max(0, end - times.length);
+        if (end == start) {
+            return "";
+        }
+        long newest = times[(int) (end - 1) & mask];
+        StringBuilder dump = new StringBuilder();
+        synchronized (this) {
+            for (long sequence = start; sequence < end; sequence++) {
+                int index = (int) sequence & mask;
+                int event = events[index];
+                String[] labels = event >= 0 && event < eventLabels.size()
+                        ? eventLabels.get(event) : new String[]{"#" + event, "arg1", "arg2"};
+                dump.append(String.format(Locale.US, "%10.3f %s %s=%d %s=%d%n",
+                        (times[index] - newest) / 1e6, labels[0],
+                        labels[1], args1[index], labels[2], args2[index]));
+            }
+        }
+        return dump.toString();
+    }
+}
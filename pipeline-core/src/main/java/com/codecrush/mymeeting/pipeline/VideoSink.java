@@ -0,0 +1,15 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Final stage of the pipeline: where finished frames go, e.g. the RTC SDK, a file, or a
+ * loopback check when testing offline. The sink takes ownership of each frame and must release
+ * it once it no longer needs the data, possibly later and from another thread. A sink that
+ * throws has not taken ownership: it must not have released or kept the frame, which
+ * {@link FramePipeline} then releases itself. Sinks that
+ * trace latency mark {@link LatencyTracker.Stage#PUBLISHED} and record the frame before
+ * releasing it, as release clears the marks. Use {@link SwitchableVideoSink} to change sinks
+ * while frames are flowing.
+ */
+public interface VideoSink {
+    void onFrame(Frame frame);
+}
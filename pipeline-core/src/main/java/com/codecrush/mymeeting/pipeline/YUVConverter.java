@@ -0,0 +1,311 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+
+public class YUVConverter {
+    /** The pure-Java kernel below, the reference every other kernel must match. */
+    public static final ConversionKernel JAVA_KERNEL = new ConversionKernel() {
+        @Override
+        public void convertRows(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec,
+                                int rowStart, int rowEnd) {
+            YUVConverter.convertRows(rgba, width, height, nv21, spec, rowStart, rowEnd);
+        }
+
+        @Override
+        public void convertRows(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset,
+                                ColorSpec spec, int rowStart, int rowEnd) {
+            YUVConverter.convertRows(rgba, width, height, out, vOffset, spec, rowStart, rowEnd);
+        }
+    };
+
+    /**
+     * Same output as {@link #JAVA_KERNEL}, reading each pixel pair as one long instead of eight
+     * bytes; see {@link SwarConversionKernel}.
+     */
+    public static final ConversionKernel SWAR_KERNEL = new SwarConversionKernel();
+
+    /**
+     * The faster Java kernel for each input on a desktop JVM: byte loads for arrays, where the
+     * JIT already removes most bounds checks and a wrapping view only adds overhead, and
+     * {@link #SWAR_KERNEL} for buffers, where every byte get is a call with its own checks.
+     */
+    public static final ConversionKernel DEFAULT_KERNEL = new ConversionKernel() {
+        @Override
+        public void convertRows(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec,
+                                int rowStart, int rowEnd) {
+            YUVConverter.convertRows(rgba, width, height, nv21, spec, rowStart, rowEnd);
+        }
+
+        @Override
+        public void convertRows(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset,
+                                ColorSpec spec, int rowStart, int rowEnd) {
+            SWAR_KERNEL.convertRows(rgba, width, height, out, vOffset, spec, rowStart, rowEnd);
+        }
+    };
+
+    public static byte[] rgbaToNV21(byte[] rgba, int width, int height) {
+        byte[] nv21 = new byte[nv21Size(width, height)]; // NV21 size: width*height*1.5 for even sizes
+        rgbaToNV21(rgba, width, height, nv21);
+        return nv21;
+    }
+
+    /**
+     * Same conversion as {@link #rgbaToNV21(byte[], int, int)} but writes into a caller-supplied
+     * buffer, so a recycled output array can be reused frame after frame without allocating.
+     */
+    public static void rgbaToNV21(byte[] rgba, int width, int height, byte[] nv21) {
+        rgbaToNV21(rgba, width, height, nv21, ColorSpec.BT601_LIMITED);
+    }
+
+    /** As {@link #rgbaToNV21(byte[], int, int, byte[])} with the given matrix and range. */
+    public static void rgbaToNV21(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec) {
+        checkOutput(nv21, width, height);
+        convertRows(rgba, width, height, nv21, spec, 0, height);
+    }
+
+    /**
+     * Converts source rows [rowStart, rowEnd) only. rowStart must be even so that every 2x2
+     * chroma block falls inside a single band; bands never write overlapping bytes, which is
+     * what lets {@link ParallelNV21Converter} run them concurrently.
+     *
+     * <p>The main loop walks two rows and two columns at a time, so each iteration emits four
+     * luma samples and one VU pair without any per-pixel parity or bounds checks. An odd last
+     * column or row is handled by the tail loops, which substitute the block's top-left pixel
+     * for missing neighbours exactly like the original per-pixel loop did. Samples are looked
+     * up in the spec's tables, so the matrix costs nothing per pixel.
+     */
+    static void convertRows(byte[] rgba, int width, int height, byte[] nv21, ColorSpec spec,
+                            int rowStart, int rowEnd) {
+        int[] yt = spec.yTable, ut = spec.uTable, vt = spec.vTable;
+        int frameSize = width * height;
+        int stride = width * 4;
+        int evenWidth = width & ~1;
+        int uvRowStart = frameSize + (rowStart / 2) * chromaRowBytes(width);
+        int y = rowStart;
+
+        for (; y + 1 < rowEnd; y += 2, uvRowStart += chromaRowBytes(width)) {
+            int top = y * stride;
+            int bottom = top + stride;
+            int yTop = y * width;
+            int yBottom = yTop + width;
+            int uvIndex = uvRowStart;
+
+            int x = 0;
+            for (; x < evenWidth; x += 2) {
+                int p = top + x * 4;
+                int q = bottom + x * 4;
+
+                int r00 = rgba[p] & 0xFF, g00 = rgba[p + 1] & 0xFF, b00 = rgba[p + 2] & 0xFF;
+                int r01 = rgba[p + 4] & 0xFF, g01 = rgba[p + 5] & 0xFF, b01 = rgba[p + 6] & 0xFF;
+                int r10 = rgba[q] & 0xFF, g10 = rgba[q + 1] & 0xFF, b10 = rgba[q + 2] & 0xFF;
+                int r11 = rgba[q + 4] & 0xFF, g11 = rgba[q + 5] & 0xFF, b11 = rgba[q + 6] & 0xFF;
+
+                nv21[yTop + x] = (byte) ColorSpec.luma(yt, r00, g00, b00);
+                nv21[yTop + x + 1] = (byte) ColorSpec.luma(yt, r01, g01, b01);
+                nv21[yBottom + x] = (byte) ColorSpec.luma(yt, r10, g10, b10);
+                nv21[yBottom + x + 1] = (byte) ColorSpec.luma(yt, r11, g11, b11);
+
+                int avgR = (r00 + r01 + r10 + r11) >> 2;
+                int avgG = (g00 + g01 + g10 + g11) >> 2;
+                int avgB = (b00 + b01 + b10 + b11) >> 2;
+                // NV21 stores V first, then U
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(vt, avgR, avgG, avgB);
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(ut, avgR, avgG, avgB);
+            }
+
+            if (x < width) {
+                // Odd width: the block has no right-hand column
+                int p = top + x * 4;
+                int q = bottom + x * 4;
+                int r = rgba[p] & 0xFF, g = rgba[p + 1] & 0xFF, b = rgba[p + 2] & 0xFF;
+                int rb = rgba[q] & 0xFF, gb = rgba[q + 1] & 0xFF, bb = rgba[q + 2] & 0xFF;
+
+                nv21[yTop + x] = (byte) ColorSpec.luma(yt, r, g, b);
+                nv21[yBottom + x] = (byte) ColorSpec.luma(yt, rb, gb, bb);
+
+                int avgR = (3 * r + rb) >> 2;
+                int avgG = (3 * g + gb) >> 2;
+                int avgB = (3 * b + bb) >> 2;
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(vt, avgR, avgG, avgB);
+                nv21[uvIndex] = (byte) ColorSpec.chroma(ut, avgR, avgG, avgB);
+            }
+        }
+
+        if (y < rowEnd) {
+            // Odd height: the last block has no bottom row
+            int top = y * stride;
+            int yTop = y * width;
+            int uvIndex = uvRowStart;
+
+            for (int x = 0; x < width; x += 2) {
+                int p = top + x * 4;
+                int r = rgba[p] & 0xFF, g = rgba[p + 1] & 0xFF, b = rgba[p + 2] & 0xFF;
+                nv21[yTop + x] = (byte) ColorSpec.luma(yt, r, g, b);
+
+                int avgR = 3 * r, avgG = 3 * g, avgB = 3 * b;
+                if (x + 1 < width) {
+                    int rr = rgba[p + 4] & 0xFF, gr = rgba[p + 5] & 0xFF, br = rgba[p + 6] & 0xFF;
+                    nv21[yTop + x + 1] = (byte) ColorSpec.luma(yt, rr, gr, br);
+                    avgR += rr;
+                    avgG += gr;
+                    avgB += br;
+                } else {
+                    avgR += r;
+                    avgG += g;
+                    avgB += b;
+                }
+                avgR >>= 2;
+                avgG >>= 2;
+                avgB >>= 2;
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(vt, avgR, avgG, avgB);
+                nv21[uvIndex++] = (byte) ColorSpec.chroma(ut, avgR, avgG, avgB);
+            }
+        }
+    }
+
+    /**
+     * Converts straight out of a (typically mapped or direct) RGBA buffer into a direct output
+     * buffer, so a PBO mapping can be consumed without first copying it into a heap array.
+     * Both buffers are addressed absolutely from index 0; their positions are left untouched.
+     */
+    public static void rgbaToNV21(ByteBuffer rgba, int width, int height, ByteBuffer nv21) {
+        rgbaToNV21(rgba, width, height, nv21, ColorSpec.BT601_LIMITED);
+    }
+
+    /** As {@link #rgbaToNV21(ByteBuffer, int, int, ByteBuffer)} with the given matrix and range. */
+    public static void rgbaToNV21(ByteBuffer rgba, int width, int height, ByteBuffer nv21, ColorSpec spec) {
+        checkOutput(nv21, width, height);
+        convertRows(rgba, width, height, nv21, 0, spec, 0, height);
+    }
+
+    /**
+     * As {@link #rgbaToNV21(ByteBuffer, int, int, ByteBuffer)} but with the chroma pairs in
+     * U, V order, for consumers that only accept direct buffers as NV12.
+     */
+    public static void rgbaToNV12(ByteBuffer rgba, int width, int height, ByteBuffer nv12) {
+        rgbaToNV12(rgba, width, height, nv12, ColorSpec.BT601_LIMITED);
+    }
+
+    /** As {@link #rgbaToNV12(ByteBuffer, int, int, ByteBuffer)} with the given matrix and range. */
+    public static void rgbaToNV12(ByteBuffer rgba, int width, int height, ByteBuffer nv12, ColorSpec spec) {
+        checkOutput(nv12, width, height);
+        convertRows(rgba, width, height, nv12, 1, spec, 0, height);
+    }
+
+    /**
+     * Buffer counterpart of {@link #convertRows(byte[], int, int, byte[], ColorSpec, int, int)},
+     * with the same blocks, tails and banding rules. {@code vOffset} is 0 to write V first (NV21)
+     * or 1 to write U first (NV12).
+     */
+    static void convertRows(ByteBuffer rgba, int width, int height, ByteBuffer out, int vOffset,
+                            ColorSpec spec, int rowStart, int rowEnd) {
+        int[] yt = spec.yTable, ut = spec.uTable, vt = spec.vTable;
+        int frameSize = width * height;
+        int stride = width * 4;
+        int evenWidth = width & ~1;
+        int uOffset = 1 - vOffset;
+        int uvRowStart = frameSize + (rowStart / 2) * chromaRowBytes(width);
+        int y = rowStart;
+
+        for (; y + 1 < rowEnd; y += 2, uvRowStart += chromaRowBytes(width)) {
+            int top = y * stride;
+            int bottom = top + stride;
+            int yTop = y * width;
+            int yBottom = yTop + width;
+            int uvIndex = uvRowStart;
+
+            int x = 0;
+            for (; x < evenWidth; x += 2, uvIndex += 2) {
+                int p = top + x * 4;
+                int q = bottom + x * 4;
+
+                int r00 = rgba.get(p) & 0xFF, g00 = rgba.get(p + 1) & 0xFF, b00 = rgba.get(p + 2) & 0xFF;
+                int r01 = rgba.get(p + 4) & 0xFF, g01 = rgba.get(p + 5) & 0xFF, b01 = rgba.get(p + 6) & 0xFF;
+                int r10 = rgba.get(q) & 0xFF, g10 = rgba.get(q + 1) & 0xFF, b10 = rgba.get(q + 2) & 0xFF;
+                int r11 = rgba.get(q + 4) & 0xFF, g11 = rgba.get(q + 5) & 0xFF, b11 = rgba.get(q + 6) & 0xFF;
+
+                out.put(yTop + x, (byte) ColorSpec.luma(yt, r00, g00, b00));
+                out.put(yTop + x + 1, (byte) ColorSpec.luma(yt, r01, g01, b01));
+                out.put(yBottom + x, (byte) ColorSpec.luma(yt, r10, g10, b10));
+                out.put(yBottom + x + 1, (byte) ColorSpec.luma(yt, r11, g11, b11));
+
+                int avgR = (r00 + r01 + r10 + r11) >> 2;
+                int avgG = (g00 + g01 + g10 + g11) >> 2;
+                int avgB = (b00 + b01 + b10 + b11) >> 2;
+                out.put(uvIndex + vOffset, (byte) ColorSpec.chroma(vt, avgR, avgG, avgB));
+                out.put(uvIndex + uOffset, (byte) ColorSpec.chroma(ut, avgR, avgG, avgB));
+            }
+
+            if (x < width) {
+                // Odd width: the block has no right-hand column
+                int p = top + x * 4;
+                int q = bottom + x * 4;
+                int r = rgba.get(p) & 0xFF, g = rgba.get(p + 1) & 0xFF, b = rgba.get(p + 2) & 0xFF;
+                int rb = rgba.get(q) & 0xFF, gb = rgba.get(q + 1) & 0xFF, bb = rgba.get(q + 2) & 0xFF;
+
+                out.put(yTop + x, (byte) ColorSpec.luma(yt, r, g, b));
+                out.put(yBottom + x, (byte) ColorSpec.luma(yt, rb, gb, bb));
+
+                int avgR = (3 * r + rb) >> 2;
+                int avgG = (3 * g + gb) >> 2;
+                int avgB = (3 * b + bb) >> 2;
+                out.put(uvIndex + vOffset, (byte) ColorSpec.chroma(vt, avgR, avgG, avgB));
+                out.put(uvIndex + uOffset, (byte) ColorSpec.chroma(ut, avgR, avgG, avgB));
+            }
+        }
+
+        if (y < rowEnd) {
+            // Odd height: the last block has no bottom row
+            int top = y * stride;
+            int yTop = y * width;
+            int uvIndex = uvRowStart;
+
+            for (int x = 0; x < width; x += 2, uvIndex += 2) {
+                int p = top + x * 4;
+                int r = rgba.get(p) & 0xFF, g = rgba.get(p + 1) & 0xFF, b = rgba.get(p + 2) & 0xFF;
+                out.put(yTop + x, (byte) ColorSpec.luma(yt, r, g, b));
+
+                int avgR = 3 * r, avgG = 3 * g, avgB = 3 * b;
+                if (x + 1 < width) {
+                    int rr = rgba.get(p + 4) & 0xFF, gr = rgba.get(p + 5) & 0xFF, br = rgba.get(p + 6) & 0xFF;
+                    out.put(yTop + x + 1, (byte) ColorSpec.luma(yt, rr, gr, br));
+                    avgR += rr;
+                    avgG += gr;
+                    avgB += br;
+                } else {
+                    avgR += r;
+                    avgG += g;
+                    avgB += b;
+                }
+                avgR >>= 2;
+                avgG >>= 2;
+                avgB >>= 2;
+                out.put(uvIndex + vOffset, (byte) ColorSpec.chroma(vt, avgR, avgG, avgB));
+                out.put(uvIndex + uOffset, (byte) ColorSpec.chroma(ut, avgR, avgG, avgB));
+            }
+        }
+    }
+
+    static void checkOutput(byte[] nv21, int width, int height) {
+        if (nv21.length < nv21Size(width, height)) {
+            throw new IllegalArgumentException("NV21 buffer too small: " + nv21.length
+                    + " < " + nv21Size(width, height));
+        }
+    }
+
+    static void checkOutput(ByteBuffer out, int width, int height) {
+        if (out.capacity() < nv21Size(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small: " + out.capacity()
+                    + " < " + nv21Size(width, height));
+        }
+    }
+
+    static int chromaRowBytes(int width) {
+        return ((width + 1) / 2) * 2;
+    }
+
+    /** Bytes needed for a width x height NV21 frame; odd sizes round the chroma plane up. */
+    public static int nv21Size(int width, int height) {
+        return width * height + chromaRowBytes(width) * ((height + 1) / 2);
+    }
+}
@@ -0,0 +1,56 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Plane geometry of the tightly packed YUV 4:2:0 layouts the CPU paths read and write. Chroma
+ * is subsampled 2x2, rounding up, so odd widths and heights keep a chroma sample for their
+ * last column and row. Each chroma plane is described the way android.media.Image does it: an
+ * offset, a row stride and a pixel stride, so one loop can address every format.
+ */
+public enum YuvFormat {
+    /** Y plane, then interleaved V, U. */
+    NV21,
+    /** Y plane, then interleaved U, V. */
+    NV12,
+    /** Y plane, then a U plane, then a V plane. */
+    I420;
+
+    public static int chromaWidth(int width) {
+        return (width + 1) / 2;
+    }
+
+    public static int chromaHeight(int height) {
+        return (height + 1) / 2;
+    }
+
+    /** Bytes for a width x height frame; the same for every format. */
+    public static int size(int width, int height) {
+        return width * height + 2 * chromaWidth(width) * chromaHeight(height);
+    }
+
+    public int uOffset(int width, int height) {
+        int ySize = width * height;
+        return this == NV21 ? ySize + 1 : ySize;
+    }
+
+    public int vOffset(int width, int height) {
+        int ySize = width * height;
+        switch (this) {
+            case NV21:
+                return ySize;
+            case NV12:
+                return ySize + 1;
+            default:
+                return ySize + chromaWidth(width) * chromaHeight(height);
+        }
+    }
+
+    /** Bytes between vertically adjacent samples of a chroma plane. */
+    public int chromaRowStride(int width) {
+        return chromaWidth(width) * chromaPixelStride();
+    }
+
+    /** Bytes between horizontally adjacent samples of a chroma plane. */
+    public int chromaPixelStride() {
+        return this == I420 ? 1 : 2;
+    }
+}
@@ -0,0 +1,100 @@
+package com.codecrush.mymeeting.pipeline;
+
+/**
+ * Turns camera images upright. Sensors deliver images in their own orientation, which is
+ * usually 90 degrees off the display's, and a front camera's images are not mirrored the way
+ * its preview is; this rotates a packed NV21 frame clockwise by a multiple of 90 degrees and
+ * optionally mirrors it left to right, so a stream built from raw images matches the preview.
+ *
+ * <p>Both planes go through the same mapping, the chroma plane at half resolution, so odd
+ * sizes keep their rounded-up chroma row and column.
+ */
+public final class YuvOrientation {
+    private YuvOrientation() {}
+
+    /**
+     * Clockwise rotation that makes a camera's images upright on a display rotated by
+     * {@code displayRotationDegrees} (Surface.ROTATION_* in degrees), as in the Camera2 docs
+     * for JPEG_ORIENTATION. The front camera turns the other way, as seen from the lens.
+     */
+    public static int uprightRotation(int sensorOrientation, int displayRotationDegrees, boolean frontFacing) {
+        int rotation = frontFacing ? sensorOrientation + displayRotationDegrees
+                : sensorOrientation - displayRotationDegrees;
+        return ((rotation % 360) + 360) % 360;
+    }
+
+    /** Width of a width x height image after rotating it. */
+    public static int rotatedWidth(int width, int height, int rotationDegrees) {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? height : width;
+    }
+
+    /** Height of a width x height image after rotating it. */
+    public static int rotatedHeight(int width, int height, int rotationDegrees) {
+        return rotationDegrees == 90 || rotationDegrees == 270 ? width : height;
+    }
+
+    /**
+     * Rotates {@code nv21} clockwise by {@code rotationDegrees}, then mirrors it left to right
+     * if asked, into {@code out}, which is laid out for the rotated size.
+     *
+     * @param rotationDegrees 0, 90, 180 or 270
+     */
+    public static void transform(byte[] nv21, int width, int height, int rotationDegrees, boolean mirror,
+                                 byte[] out) {
+        if (rotationDegrees != 0 && rotationDegrees != 90 && rotationDegrees != 180 && rotationDegrees != 270) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + rotationDegrees);
+        }
+        if (nv21 == out) {
+            throw new IllegalArgumentException("Cannot transform in place");
+        }
+        YUVConverter.checkOutput(nv21, width, height);
+        YUVConverter.checkOutput(out, width, height);
+        transformPlane(nv21, 0, 1, width, height, rotationDegrees, mirror, out, 0);
+        int chromaWidth = YuvFormat.chromaWidth(width), chromaHeight = YuvFormat.chromaHeight(height);
+        int chroma = width * height;
+        // Each interleaved V, U pair moves as one sample
+        transformPlane(nv21, chroma, 2, chromaWidth, chromaHeight, rotationDegrees, mirror, out, chroma);
+        transformPlane(nv21, chroma + 1, 2, chromaWidth, chromaHeight, rotationDegrees, mirror, out, chroma + 1);
+    }
+
+    private static void transformPlane(byte[] in, int inOffset, int step, int width, int height,
+                                       int rotation, boolean mirror, byte[] out, int outOffset) {
+        int outWidth = rotatedWidth(width, height, rotation);
+        int outHeight = rotatedHeight(width, height, rotation);
+        // Source index of output (0, 0), and how it moves per output column and per output row
+        int origin, dx, dy;
+        switch (rotation) {
+            case 90:
+                origin = (height - 1) * width;
+                dx = -width;
+                dy = 1;
+                break;
+            case 180:
+                origin = height * width - 1;
+                dx = -1;
+                dy = -width;
+                break;
+            case 270:
+                origin = width - 1;
+                dx = width;
+                dy = -1;
+                break;
+            default:
+                origin = 0;
+                dx = 1;
+                dy = width;
+                break;
+        }
+        if (mirror) {
+            origin += (outWidth - 1) * dx;
+            dx = -dx;
+        }
+        int o = outOffset;
+        for (int row = 0; row < outHeight; row++, origin += dy) {
+            int s = origin;
+            for (int col = 0; col < outWidth; col++, s += dx, o += step) {
+                out[o] = in[inOffset + s * step];
+            }
+        }
+    }
+}
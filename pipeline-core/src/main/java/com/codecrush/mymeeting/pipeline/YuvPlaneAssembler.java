@@ -0,0 +1,90 @@
+package com.codecrush.mymeeting.pipeline;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs the three planes of a YUV_420_888 image (as android.media.Image exposes them: a buffer,
+ * a row stride and a pixel stride per plane) into a tightly packed NV21 array, without going
+ * through RGB. Plain Java so the layouts cameras produce can be tested on the JVM.
+ *
+ * <p>Most devices back the chroma planes with one NV21 buffer: pixel stride 2, with the V
+ * buffer starting one byte before the U buffer. Such images are copied with one bulk get per
+ * chroma row; fully planar and NV12-ordered images fall back to a per-sample loop. The Y plane
+ * is copied in one get when it has no row padding.
+ *
+ * <p>The planes' positions are used and left changed; their contents are not modified except
+ * for one byte that is temporarily written and restored to detect the NV21 layout.
+ */
+public final class YuvPlaneAssembler {
+    private YuvPlaneAssembler() {}
+
+    /**
+     * @param yRowStride    bytes between rows of the Y plane; its pixel stride must be 1
+     * @param uvRowStride   bytes between rows of the U and V planes
+     * @param uvPixelStride bytes between adjacent samples of the U and V planes
+     * @param nv21          receives width * height luma bytes followed by interleaved V, U
+     */
+    public static void toNV21(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+                              int uvRowStride, int uvPixelStride, int width, int height, byte[] nv21) {
+        YUVConverter.checkOutput(nv21, width, height);
+        copyLuma(y, yRowStride, width, height, nv21);
+
+        int chromaWidth = YuvFormat.chromaWidth(width);
+        int chromaHeight = YuvFormat.chromaHeight(height);
+        int out = width * height;
+        if (uvPixelStride == 2 && isInterleavedVu(u, v)) {
+            // V buffer row r holds V,U,V,U...,V; only the row's final U sample lies past it
+            int rowBytes = 2 * chromaWidth - 1;
+            for (int row = 0; row < chromaHeight; row++) {
+                int rowStart = row * uvRowStride;
+                v.position(rowStart);
+                v.get(nv21, out, rowBytes);
+                nv21[out + rowBytes] = u.get(rowStart + rowBytes - 1);
+                out += 2 * chromaWidth;
+            }
+            return;
+        }
+        for (int row = 0; row < chromaHeight; row++) {
+            int index = row * uvRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                nv21[out++] = v.get(index);
+                nv21[out++] = u.get(index);
+                index += uvPixelStride;
+            }
+        }
+    }
+
+    private static void copyLuma(ByteBuffer y, int rowStride, int width, int height, byte[] nv21) {
+        if (rowStride == width) {
+            y.position(0);
+            y.get(nv21, 0, width * height);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            y.position(row * rowStride);
+            y.get(nv21, row * width, width); // The last row may stop short of a full stride
+        }
+    }
+
+    /**
+     * Whether U starts one byte after V in shared memory. Buffers expose no address, so V's
+     * second byte is changed and U's first byte watched for the change, and for the restore,
+     * so U happening to hold the probe value is not mistaken for shared memory.
+     */
+    static boolean isInterleavedVu(ByteBuffer u, ByteBuffer v) {
+        if (v.limit() < 2 || u.limit() < 1 || v.isReadOnly()) {
+            return false;
+        }
+        byte saved = v.get(1);
+        byte probe = (byte) ~saved;
+        try {
+            v.put(1, probe);
+            if (u.get(0) != probe) {
+                return false;
+            }
+        } finally {
+            v.put(1, saved);
+        }
+        return u.get(0) == saved;
+    }
+}
@@ -0,0 +1,20 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Monotonic event count. Increments are a single atomic add and never block. */
+public final class Counter {
+    private final AtomicLong value = new AtomicLong();
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
@@ -0,0 +1,32 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Appends one line per snapshot to a file: the wall-clock timestamp in milliseconds followed
+ * by name=value pairs. The file is opened per report, which is fine at reporting rates of a
+ * few seconds and leaves nothing to close.
+ */
+public class FileMetricsReporter implements MetricsReporter {
+    private final File file;
+
+    public FileMetricsReporter(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public void report(MetricsSnapshot snapshot) {
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write(snapshot.getTimestampMs() + " " + snapshot + "\n");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write metrics to " + file, e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
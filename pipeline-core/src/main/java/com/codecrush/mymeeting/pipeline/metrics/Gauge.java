@@ -0,0 +1,9 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+/**
+ * A value sampled when metrics are reported, e.g. a queue depth or a counter a component
+ * already keeps. Read on the reporting thread, so it must be safe to call from any thread.
+ */
+public interface Gauge {
+    long read();
+}
@@ -0,0 +1,23 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Keeps every snapshot it is given, for tests and on-device diagnostics screens. */
+public class InMemoryMetricsReporter implements MetricsReporter {
+    private final List<MetricsSnapshot> snapshots = new ArrayList<>();
+
+    @Override
+    public synchronized void report(MetricsSnapshot snapshot) {
+        snapshots.add(snapshot);
+    }
+
+    public synchronized List<MetricsSnapshot> getSnapshots() {
+        return new ArrayList<>(snapshots);
+    }
+
+    /** The most recent snapshot, or null if none has been reported. */
+    public synchronized MetricsSnapshot getLatest() {
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+}
@@ -0,0 +1,50 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named counters and gauges for the frame pipeline. Registration takes a lock, so do it at
+ * setup; the hot path only touches the {@link Counter} it holds, and components that already
+ * count events (pools, the PBO ring) are exposed as gauges so the GL thread pays nothing
+ * extra. Snapshots are taken on the reporting thread.
+ */
+public class MetricsRegistry {
+    private final Map<String, Object> metrics = new LinkedHashMap<>();
+
+    /** Returns the counter of that name, creating it on first use. */
+    public synchronized Counter counter(String name) {
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            Counter counter = new Counter();
+            metrics.put(name, counter);
+            return counter;
+        }
+        if (!(metric instanceof Counter)) {
+            throw new IllegalArgumentException(name + " is already registered as a gauge");
+        }
+        return (Counter) metric;
+    }
+
+    /** Registers a gauge, replacing any earlier gauge of the same name. */
+    public synchronized void gauge(String name, Gauge gauge) {
+        if (metrics.get(name) instanceof Counter) {
+            throw new IllegalArgumentException(name + " is already registered as a counter");
+        }
+        metrics.put(name, gauge);
+    }
+
+    public synchronized MetricsSnapshot snapshot() {
+        LinkedHashMap<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            Object metric = entry.getValue();
+            long value = metric instanceof Counter ? ((Counter) metric).get() : ((Gauge) metric).read();
+            values.put(entry.getKey(), value);
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), values);
+    }
+
+    public void report(MetricsReporter reporter) {
+        reporter.report(snapshot());
+    }
+}
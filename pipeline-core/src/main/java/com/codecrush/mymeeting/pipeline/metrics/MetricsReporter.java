@@ -0,0 +1,6 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+/** Destination for periodic metrics snapshots: logcat, a file, or memory for tests. */
+public interface MetricsReporter {
+    void report(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,49 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Values of every registered metric at one instant, in registration order. */
+public final class MetricsSnapshot {
+    private final long timestampMs;
+    private final Map<String, Long> values;
+
+    MetricsSnapshot(long timestampMs, LinkedHashMap<String, Long> values) {
+        this.timestampMs = timestampMs;
+        this.values = Collections.unmodifiableMap(values);
+    }
+
+    /** Wall-clock time the snapshot was taken, for correlating with logs. */
+    public long getTimestampMs() {
+        return timestampMs;
+    }
+
+    public Map<String, Long> getValues() {
+        return values;
+    }
+
+    /**
+     * @throws IllegalArgumentException if no metric of that name was registered
+     */
+    public long get(String name) {
+        Long value = values.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Unknown metric: " + name);
+        }
+        return value;
+    }
+
+    /** Space-separated name=value pairs. */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder();
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return line.toString();
+    }
+}
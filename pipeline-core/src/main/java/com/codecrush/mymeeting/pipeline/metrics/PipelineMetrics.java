@@ -0,0 +1,46 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+/** Names of the metrics the capture and publish pipeline reports. */
+public final class PipelineMetrics {
+    /** Readbacks issued on the GL thread. */
+    public static final String FRAMES_PRODUCED = "frames.produced";
+    /** Rendered frames not read back because they were ahead of the target frame rate. */
+    public static final String FRAMES_RATE_SKIPPED = "frames.rateSkipped";
+    /** Readbacks converted into output frames. */
+    public static final String FRAMES_CONVERTED = "frames.converted";
+    /** Frames evicted from the publish queue because it was full. */
+    public static final String FRAMES_DROPPED = "frames.dropped";
+    /** Frames the video sink threw on; they were released without being published. */
+    public static final String FRAMES_SINK_FAILED = "frames.sinkFailed";
+    /** Frames pushed to the streaming SDK. */
+    public static final String FRAMES_PUSHED = "frames.pushed";
+    /** Output frames served from the pool. */
+    public static final String POOL_HITS = "pool.hits";
+    /** Output frames allocated because the pool was drained. */
+    public static final String POOL_MISSES = "pool.misses";
+    /** Output frames handed out and not yet released. */
+    public static final String POOL_OUTSTANDING = "pool.outstanding";
+    /** Output frames dropped without being released; only counted with leak detection on. */
+    public static final String POOL_LEAKS = "pool.leaks";
+    /** Readbacks not yet finished when polled, so the GL thread moved on instead of blocking. */
+    public static final String PBO_STALLS_AVOIDED = "pbo.stallsAvoided";
+    /** Frames not read back because every PBO was in flight. */
+    public static final String PBO_FRAMES_SKIPPED = "pbo.framesSkipped";
+    /** PBOs that could not be mapped; their frames are lost. */
+    public static final String PBO_MAP_FAILURES = "pbo.mapFailures";
+    /** 95th percentile of the capture time difference between paired camera images, in microseconds. */
+    public static final String SYNC_SKEW_P95_US = "sync.skewP95Us";
+    /** Composites made without a fresh image from one camera because it was late or stalled. */
+    public static final String SYNC_TIMEOUTS = "sync.timeouts";
+    /** Frames waiting in the publish queue. */
+    public static final String QUEUE_DEPTH = "queue.depth";
+    /** Composite textures handed to the streaming SDK without a readback. */
+    public static final String TEXTURES_PUBLISHED = "textures.published";
+    /** Composites not published as textures because the SDK still held every pooled texture. */
+    public static final String TEXTURES_SKIPPED = "textures.skipped";
+    /** Composite textures the SDK has not released yet. */
+    public static final String TEXTURES_OUTSTANDING = "textures.outstanding";
+
+    private PipelineMetrics() {
+    }
+}
@@ -0,0 +1,147 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ArgbConverterTest {
+    @Test
+    public void matchesDoubleReference_forEveryColorSpec() {
+        for (ColorSpec.Matrix matrix : ColorSpec.Matrix.values()) {
+            for (ColorSpec.Range range : ColorSpec.Range.values()) {
+                assertWithinOne(ColorSpec.of(matrix, range), 64, 48);
+                assertWithinOne(ColorSpec.of(matrix, range), 33, 17);
+            }
+        }
+    }
+
+    @Test
+    public void greys_haveNeutralChroma() {
+        ArgbConverter full = new ArgbConverter(ColorSpec.BT709_FULL);
+        ArgbConverter limited = new ArgbConverter(ColorSpec.BT709_LIMITED);
+
+        assertEquals(0, convertSolid(full, 0x000000)[0] & 0xFF);
+        assertEquals(255, convertSolid(full, 0xFFFFFF)[0] & 0xFF);
+        assertEquals(16, convertSolid(limited, 0x000000)[0] & 0xFF);
+        assertEquals(235, convertSolid(limited, 0xFFFFFF)[0] & 0xFF);
+        for (int grey : new int[]{0x000000, 0x808080, 0xFFFFFF}) {
+            byte[] nv21 = convertSolid(full, grey);
+            assertEquals(128, nv21[16] & 0xFF);
+            assertEquals(128, nv21[17] & 0xFF);
+        }
+    }
+
+    @Test
+    public void chroma_averagesTheBlock() {
+        ArgbConverter converter = new ArgbConverter(ColorSpec.BT601_FULL);
+        // Only the bottom-right pixel is red; top-left sampling would see pure black
+        int[] argb = {0xFF000000, 0xFF000000, 0xFF000000, 0xFFFF0000};
+        byte[] nv21 = new byte[6];
+        converter.convert(argb, 2, 2, nv21);
+
+        int v = nv21[4] & 0xFF;
+        assertEquals(128 + Math.round(0.5 * 255 / 4), v, 1);
+    }
+
+    @Test
+    public void matchesYUVConverter_onEvenFrames() {
+        int width = 64, height = 48;
+        int[] argb = new int[width * height];
+        byte[] rgba = new byte[width * height * 4];
+        Random random = new Random(19);
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt() | 0xFF000000;
+            rgba[i * 4] = (byte) (argb[i] >> 16);
+            rgba[i * 4 + 1] = (byte) (argb[i] >> 8);
+            rgba[i * 4 + 2] = (byte) argb[i];
+            rgba[i * 4 + 3] = (byte) 0xFF;
+        }
+        for (ColorSpec spec : new ColorSpec[]{ColorSpec.BT601_LIMITED, ColorSpec.BT709_FULL}) {
+            byte[] expected = new byte[YuvFormat.size(width, height)];
+            byte[] actual = new byte[expected.length];
+            YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, spec, 0, height);
+            new ArgbConverter(spec).convert(argb, width, height, actual);
+            assertArrayEquals(spec.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void convert_writesIntoGivenBuffer() {
+        ArgbConverter converter = new ArgbConverter(ColorSpec.BT601_LIMITED);
+        byte[] nv21 = new byte[YuvFormat.size(4, 4) + 8];
+        nv21[nv21.length - 1] = 42;
+        converter.convert(new int[16], 4, 4, nv21);
+        assertEquals(42, nv21[nv21.length - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convert_rejectsSmallOutput() {
+        new ArgbConverter(ColorSpec.BT601_FULL)
+                .convert(new int[16], 4, 4, new byte[16]);
+    }
+
+    private static byte[] convertSolid(ArgbConverter converter, int rgb) {
+        int[] argb = new int[16];
+        Arrays.fill(argb, 0xFF000000 | rgb);
+        byte[] nv21 = new byte[YuvFormat.size(4, 4)];
+        converter.convert(argb, 4, 4, nv21);
+        return nv21;
+    }
+
+    private static void assertWithinOne(ColorSpec spec, int width, int height) {
+        int[] argb = new int[width * height];
+        Random random = new Random(width);
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt();
+        }
+        byte[] nv21 = new byte[YuvFormat.size(width, height)];
+        new ArgbConverter(spec).convert(argb, width, height, nv21);
+
+        double kr = spec.getMatrix() == ColorSpec.Matrix.BT601 ? 0.299 : 0.2126;
+        double kb = spec.getMatrix() == ColorSpec.Matrix.BT601 ? 0.114 : 0.0722;
+        boolean limited = spec.getRange() == ColorSpec.Range.LIMITED;
+        double yScale = limited ? 219 / 255.0 : 1, uvScale = limited ? 224 / 255.0 : 1;
+        String label = spec + " " + width + "x" + height;
+
+        for (int i = 0; i < argb.length; i++) {
+            double luma = kr * r(argb[i]) + (1 - kr - kb) * g(argb[i]) + kb * b(argb[i]);
+            double expected = luma * yScale + (limited ? 16 : 0);
+            assertEquals(label + " Y" + i, expected, nv21[i] & 0xFF, 1);
+        }
+
+        int uvIndex = width * height;
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                double r = 0, g = 0, b = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        int pixel = argb[Math.min(y + dy, height - 1) * width + Math.min(x + dx, width - 1)];
+                        r += r(pixel) / 4.0;
+                        g += g(pixel) / 4.0;
+                        b += b(pixel) / 4.0;
+                    }
+                }
+                double luma = kr * r + (1 - kr - kb) * g + kb * b;
+                double u = Math.min(255, (b - luma) / (2 * (1 - kb)) * uvScale + 128);
+                double v = Math.min(255, (r - luma) / (2 * (1 - kr)) * uvScale + 128);
+                assertEquals(label + " V" + uvIndex, v, nv21[uvIndex++] & 0xFF, 1);
+                assertEquals(label + " U" + uvIndex, u, nv21[uvIndex++] & 0xFF, 1);
+            }
+        }
+    }
+
+    private static int r(int pixel) {
+        return (pixel >> 16) & 0xFF;
+    }
+
+    private static int g(int pixel) {
+        return (pixel >> 8) & 0xFF;
+    }
+
+    private static int b(int pixel) {
+        return pixel & 0xFF;
+    }
+}
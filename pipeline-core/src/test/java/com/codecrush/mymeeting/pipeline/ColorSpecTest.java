@@ -0,0 +1,96 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ColorSpecTest {
+    // {R, G, B, Y, U, V}; BT.601 values from the classic integer matrix, the rest from the
+    // standards' equations rounded to the nearest code
+    private static final int[][] BT601_LIMITED = {
+            {0, 0, 0, 16, 128, 128}, {255, 255, 255, 235, 128, 128},
+            {255, 0, 0, 82, 90, 240}, {0, 255, 0, 144, 54, 34}, {0, 0, 255, 41, 240, 110}};
+    private static final int[][] BT601_FULL = {
+            {0, 0, 0, 0, 128, 128}, {255, 255, 255, 255, 128, 128},
+            {255, 0, 0, 76, 85, 255}, {0, 255, 0, 150, 44, 21}, {0, 0, 255, 29, 255, 107}};
+    private static final int[][] BT709_LIMITED = {
+            {0, 0, 0, 16, 128, 128}, {255, 255, 255, 235, 128, 128},
+            {255, 0, 0, 63, 102, 240}, {0, 255, 0, 173, 42, 26}, {0, 0, 255, 32, 240, 118}};
+    private static final int[][] BT709_FULL = {
+            {0, 0, 0, 0, 128, 128}, {255, 255, 255, 255, 128, 128},
+            {255, 0, 0, 54, 99, 255}, {0, 255, 0, 182, 30, 12}, {0, 0, 255, 18, 255, 116}};
+
+    @Test
+    public void specs_matchReferenceVectors() {
+        assertVectors(ColorSpec.BT601_LIMITED, BT601_LIMITED);
+        assertVectors(ColorSpec.BT601_FULL, BT601_FULL);
+        assertVectors(ColorSpec.BT709_LIMITED, BT709_LIMITED);
+        assertVectors(ColorSpec.BT709_FULL, BT709_FULL);
+    }
+
+    @Test
+    public void bt601Limited_keepsTheConvertersOutput() {
+        byte[] rgba = LegacyYUVConverter.randomRgba(64, 48, 11);
+        byte[] out = new byte[YUVConverter.nv21Size(64, 48)];
+        YUVConverter.rgbaToNV21(rgba, 64, 48, out, ColorSpec.BT601_LIMITED);
+        assertArrayEquals(LegacyYUVConverter.rgbaToNV21(rgba, 64, 48), out);
+    }
+
+    @Test
+    public void converters_agreeOnEverySpec() {
+        int width = 34, height = 18;
+        byte[] rgba = LegacyYUVConverter.randomRgba(width, height, 5);
+        ParallelNV21Converter parallel = new ParallelNV21Converter(3);
+        try {
+            for (ColorSpec.Matrix matrix : ColorSpec.Matrix.values()) {
+                for (ColorSpec.Range range : ColorSpec.Range.values()) {
+                    ColorSpec spec = ColorSpec.of(matrix, range);
+                    byte[] serial = new byte[YUVConverter.nv21Size(width, height)];
+                    YUVConverter.rgbaToNV21(rgba, width, height, serial, spec);
+
+                    parallel.setColorSpec(spec);
+                    byte[] banded = new byte[serial.length];
+                    parallel.rgbaToNV21(rgba, width, height, banded);
+                    assertArrayEquals(spec.toString(), serial, banded);
+
+                    ByteBuffer direct = ByteBuffer.allocateDirect(serial.length);
+                    YUVConverter.rgbaToNV21(ByteBuffer.wrap(rgba), width, height, direct, spec);
+                    assertArrayEquals(spec.toString(), serial, YUVConverterTest.toArray(direct));
+                }
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void tables_matchCoefficients() {
+        Random random = new Random(3);
+        for (ColorSpec.Matrix matrix : ColorSpec.Matrix.values()) {
+            for (ColorSpec.Range range : ColorSpec.Range.values()) {
+                ColorSpec spec = ColorSpec.of(matrix, range);
+                int[] y = spec.getYCoefficients(), u = spec.getUCoefficients(), v = spec.getVCoefficients();
+                for (int i = 0; i < 1000; i++) {
+                    int r = random.nextInt(256), g = random.nextInt(256), b = random.nextInt(256);
+                    assertEquals((y[0] * r + y[1] * g + y[2] * b + y[3]) >> ColorSpec.SHIFT, spec.luma(r, g, b));
+                    assertEquals(Math.min(255, (u[0] * r + u[1] * g + u[2] * b + u[3]) >> ColorSpec.SHIFT),
+                            spec.chromaU(r, g, b));
+                    assertEquals(Math.min(255, (v[0] * r + v[1] * g + v[2] * b + v[3]) >> ColorSpec.SHIFT),
+                            spec.chromaV(r, g, b));
+                }
+            }
+        }
+    }
+
+    private static void assertVectors(ColorSpec spec, int[][] vectors) {
+        for (int[] vector : vectors) {
+            String label = spec + " " + vector[0] + "," + vector[1] + "," + vector[2];
+            assertEquals(label + " Y", vector[3], spec.luma(vector[0], vector[1], vector[2]));
+            assertEquals(label + " U", vector[4], spec.chromaU(vector[0], vector[1], vector[2]));
+            assertEquals(label + " V", vector[5], spec.chromaV(vector[0], vector[1], vector[2]));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompositeLayoutTest {
+    @Test
+    public void tiles_resolveToEvenPixels() {
+        CompositeLayout.Tile tile = new CompositeLayout.Tile(0, 0.33f, 0.25f, 0.34f, 0.5f, 0);
+
+        assertEquals(238, tile.left(720));
+        assertEquals(482, tile.right(720));
+        assertEquals(320, tile.top(1280));
+        assertEquals(960, tile.bottom(1280));
+        assertEquals(0, tile.left(720) % 2);
+        assertEquals(0, tile.right(718) % 2);
+    }
+
+    @Test
+    public void tiles_areDrawnByAscendingZ() {
+        CompositeLayout layout = new CompositeLayout(
+                new CompositeLayout.Tile(1, 0.5f, 0.5f, 0.5f, 0.5f, 2),
+                new CompositeLayout.Tile(0, 0, 0, 1, 1, 0),
+                new CompositeLayout.Tile(2, 0, 0, 0.5f, 0.5f, 2));
+
+        assertEquals(0, layout.getTile(0).getSource());
+        assertEquals(1, layout.getTile(1).getSource()); // Equal z keeps the given order
+        assertEquals(2, layout.getTile(2).getSource());
+    }
+
+    @Test
+    public void coverage_isDetected() {
+        assertTrue(CompositeLayout.split(0, 1).coversCanvas());
+        assertTrue(CompositeLayout.sideBySide(0, 1).coversCanvas());
+        assertTrue(CompositeLayout.pictureInPicture(0, 1).coversCanvas());
+        assertFalse(new CompositeLayout(new CompositeLayout.Tile(0, 0, 0, 1, 0.75f, 0)).coversCanvas());
+        assertFalse(new CompositeLayout(
+                new CompositeLayout.Tile(0, 0, 0, 0.5f, 0.5f, 0),
+                new CompositeLayout.Tile(1, 0.5f, 0.5f, 0.5f, 0.5f, 0)).coversCanvas());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tileOutsideCanvas_isRejected() {
+        new CompositeLayout.Tile(0, 0.75f, 0, 0.5f, 1, 0);
+    }
+}
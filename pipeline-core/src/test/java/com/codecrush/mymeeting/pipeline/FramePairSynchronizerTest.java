@@ -0,0 +1,103 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FramePairSynchronizerTest {
+    private static final long MS = 1_000_000L;
+    private static final long INTERVAL = 33_333_333L; // 30 fps
+
+    private final FramePairSynchronizer sync = new FramePairSynchronizer(8 * MS, 50 * MS);
+    // Newest image each camera has delivered, as SurfaceTexture.updateTexImage() would latch
+    private final long[] newest = {-1, -1};
+    private int composites;
+
+    @Test
+    public void alignedCameras_compositeEveryPair() {
+        runCameras(0, 5 * MS, 90);
+
+        assertEquals(90, sync.getPairs(), 1);
+        assertTrue(sync.getSkew().getMaxNs() <= 5 * MS);
+        assertEquals(0, sync.getTimeouts());
+    }
+
+    @Test
+    public void offsetCameras_pairWithNearestImage() {
+        // The back camera runs 25 ms behind; its next image is only 8.3 ms after the front one
+        runCameras(0, 25 * MS, 90);
+
+        assertTrue(sync.getPairs() >= 85);
+        assertTrue("p95 " + sync.getSkew().percentileNs(95),
+                sync.getSkew().percentileNs(95) <= 9 * MS);
+    }
+
+    @Test
+    public void stalledCamera_timesOutInsteadOfFreezing() {
+        runCameras(0, 5 * MS, 10);
+        int before = composites;
+
+        // Only the front camera keeps delivering
+        for (int i = 10; i < 40; i++) {
+            deliver(FramePairSynchronizer.FRONT, i * INTERVAL);
+        }
+
+        assertTrue("composites " + (composites - before), composites - before >= 25);
+        assertTrue(sync.getTimeouts() > 0);
+    }
+
+    @Test
+    public void singleCamera_compositesEveryImage() {
+        for (int i = 0; i < 10; i++) {
+            deliver(FramePairSynchronizer.BACK, i * INTERVAL);
+        }
+
+        assertEquals(10, composites);
+        assertEquals(0, sync.getPairs());
+    }
+
+    @Test
+    public void staleLatch_isNotFresh() {
+        deliver(FramePairSynchronizer.FRONT, 0);
+        deliver(FramePairSynchronizer.BACK, MS);
+        int before = composites;
+
+        // Announced but nothing newer to latch, as when the listener races updateTexImage()
+        sync.onFrameAvailable(FramePairSynchronizer.FRONT);
+        draw(2 * MS);
+
+        assertEquals(before, composites);
+    }
+
+    private void runCameras(long frontOffset, long backOffset, int frames) {
+        for (int i = 0; i < frames; i++) {
+            long front = i * INTERVAL + frontOffset;
+            long back = i * INTERVAL + backOffset;
+            if (front <= back) {
+                deliver(FramePairSynchronizer.FRONT, front);
+                deliver(FramePairSynchronizer.BACK, back);
+            } else {
+                deliver(FramePairSynchronizer.BACK, back);
+                deliver(FramePairSynchronizer.FRONT, front);
+            }
+        }
+    }
+
+    private void deliver(int camera, long timestampNs) {
+        newest[camera] = timestampNs;
+        sync.onFrameAvailable(camera);
+        draw(timestampNs);
+    }
+
+    private void draw(long nowNs) {
+        for (int camera = 0; camera < 2; camera++) {
+            if (sync.beginLatch(camera, nowNs)) {
+                sync.onLatched(camera, newest[camera], nowNs);
+            }
+        }
+        if (sync.shouldComposite(nowNs)) {
+            sync.onComposited();
+            composites++;
+        }
+    }
+}
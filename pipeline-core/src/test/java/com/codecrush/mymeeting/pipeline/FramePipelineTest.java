@@ -0,0 +1,150 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class FramePipelineTest {
+    @Test
+    public void framePool_recyclesReleasedFrames() {
+        FramePool pool = new FramePool(1, 4, 2);
+        Frame first = pool.acquire();
+        first.release();
+
+        assertSame(first, pool.acquire());
+        assertEquals(YUVConverter.nv21Size(4, 2), pool.acquire().getData().length); // Drained pool grows
+    }
+
+    @Test
+    public void framePool_countsHitsAndMisses() {
+        FramePool pool = new FramePool(1, 4, 2);
+        Frame recycled = pool.acquire();
+        pool.acquire();
+        recycled.release();
+        pool.acquire();
+
+        assertEquals(2, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void directPool_recyclesDirectFrames() {
+        FramePool pool = new FramePool(1, 4, 2, Frame.Format.NV12);
+        Frame frame = pool.acquire();
+        assertTrue(frame.isDirect());
+        assertTrue(frame.getBuffer().isDirect());
+        assertEquals(Frame.Format.NV12, frame.getFormat());
+        assertEquals(YUVConverter.nv21Size(4, 2), frame.getBuffer().capacity());
+
+        frame.getBuffer().position(3);
+        frame.release();
+
+        assertSame(frame, pool.acquire());
+        assertEquals(0, frame.getBuffer().position());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void directFrame_hasNoBackingArray() {
+        new FramePool(1, 4, 2, Frame.Format.NV12).acquire().getData();
+    }
+
+    @Test
+    public void fullQueue_evictsAndReleasesOldestFrame() throws InterruptedException {
+        FramePool pool = new FramePool(3, 2, 2);
+        FramePipeline pipeline = new FramePipeline(new BlockingFrameQueue(2), Frame::release);
+        Frame oldest = pool.acquire();
+        pipeline.submit(oldest);
+        pipeline.submit(pool.acquire());
+        pipeline.submit(pool.acquire());
+
+        assertEquals(1, pipeline.getDroppedFrames());
+        assertSame(oldest, pool.acquire()); // Back in the pool, not leaked
+    }
+
+    @Test
+    public void throwingSink_releasesFrameAndKeepsPublishing() throws InterruptedException {
+        FramePool pool = new FramePool(1, 2, 2);
+        AtomicInteger calls = new AtomicInteger();
+        FramePipeline pipeline = new FramePipeline(new BlockingFrameQueue(2), frame -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalArgumentException("sink rejected frame");
+            }
+            frame.release();
+        });
+        pipeline.start();
+        Frame frame = pool.acquire();
+        pipeline.submit(frame);
+        while (pipeline.getSinkFailures() < 1) {
+            Thread.sleep(1);
+        }
+
+        assertSame(frame, pool.acquire()); // Released by the pipeline, not leaked
+        pipeline.submit(frame);
+        while (pipeline.getPublishedFrames() < 1) {
+            Thread.sleep(1);
+        }
+        pipeline.stop();
+
+        assertEquals(1, pipeline.getSinkFailures());
+        assertEquals(1, pipeline.getPublishedFrames());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void composite_stacksConvertedTiles() {
+        SyntheticFrameSource source = new SyntheticFrameSource(2, 8, 4);
+        byte[][] rgba = new byte[2][8 * 4 * 4];
+        source.read(rgba);
+        CompositeStage stage = new CompositeStage(FrameConverter.SERIAL, new NV21Compositor(), 8, 4, 2, 1);
+
+        Frame frame = stage.process(rgba, 42);
+
+        assertEquals(8, frame.getWidth());
+        assertEquals(8, frame.getHeight());
+        assertEquals(42, frame.getTimestampNs());
+        byte[] expected = NV21Compositor.combineFrames(
+                YUVConverter.rgbaToNV21(rgba[0], 8, 4), YUVConverter.rgbaToNV21(rgba[1], 8, 4), 8, 8);
+        assertArrayEquals(expected, frame.getData());
+    }
+
+    @Test
+    public void soak_syntheticSourceThroughPublish() throws InterruptedException {
+        final int frames = 600;
+        SyntheticFrameSource source = new SyntheticFrameSource(2, 320, 240);
+        byte[][] rgba = new byte[2][320 * 240 * 4];
+        ParallelNV21Converter converter = new ParallelNV21Converter(2);
+        CompositeStage stage = new CompositeStage(converter, new NV21Compositor(), 320, 240, 2, 8);
+
+        AtomicInteger published = new AtomicInteger();
+        AtomicLong lastTimestamp = new AtomicLong();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        FramePipeline pipeline = new FramePipeline(new BlockingFrameQueue(5), frame -> {
+            if (frame.getWidth() != 320 || frame.getHeight() != 480
+                    || frame.getTimestampNs() <= lastTimestamp.getAndSet(frame.getTimestampNs())) {
+                outOfOrder.incrementAndGet();
+            }
+            frame.release();
+            published.incrementAndGet();
+        });
+
+        pipeline.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            pipeline.submit(stage.process(rgba, source.read(rgba)));
+        }
+        long elapsedNs = System.nanoTime() - start;
+        while (published.get() + pipeline.getDroppedFrames() < frames) {
+            Thread.sleep(1);
+        }
+        pipeline.stop();
+        converter.shutdown();
+
+        assertEquals(0, outOfOrder.get());
+        assertEquals(frames, published.get() + pipeline.getDroppedFrames());
+        double fps = frames * 1e9 / elapsedNs;
+        assertTrue("Pipeline ran at " + fps + " fps", fps > 100);
+    }
+}
@@ -0,0 +1,194 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FramePoolTest {
+    @Test
+    public void sizeClass_servesEveryResolutionOfTheSameSize() {
+        FramePool pool = new FramePool(2, null);
+        Frame portrait = pool.acquire(720, 1280);
+        portrait.release();
+
+        Frame landscape = pool.acquire(1280, 720);
+        assertSame(portrait, landscape);
+        assertEquals(1280, landscape.getWidth());
+        assertEquals(720, landscape.getHeight());
+    }
+
+    @Test
+    public void resolutionChange_keepsInFlightFrames() {
+        FramePool pool = new FramePool(2, null);
+        Frame old = pool.acquire(64, 48);
+        Frame current = pool.acquire(32, 24);
+        old.release(); // Returns to its own class after the switch
+        current.release();
+
+        assertSame(current, pool.acquire(32, 24));
+        assertSame(old, pool.acquire(64, 48));
+        assertEquals(YUVConverter.nv21Size(64, 48), old.getData().length);
+    }
+
+    @Test
+    public void resolutionChange_dropsIdleFramesOfOtherSizes() {
+        FramePool pool = new FramePool(2, 64, 48);
+        Frame idle = pool.acquire();
+        idle.release();
+        pool.acquire(32, 24).release();
+
+        pool.acquire(64, 48); // The switch back found nothing retained
+        assertNotSame(idle, pool.acquire(64, 48));
+        assertEquals(3, pool.getMisses()); // The 32x24 frame, then both 64x48 frames
+    }
+
+    @Test
+    public void idleFrames_areBoundedByCapacity() {
+        FramePool pool = new FramePool(2, 4, 2);
+        List<Frame> frames = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            frames.add(pool.acquire());
+        }
+        assertEquals(5, pool.getOutstanding());
+        for (Frame frame : frames) {
+            frame.release();
+        }
+
+        for (int i = 0; i < 5; i++) {
+            pool.acquire();
+        }
+        assertEquals(4, pool.getHits()); // Two preallocated, then two retained of five released
+        assertEquals(6, pool.getMisses());
+        assertEquals(5, pool.getHighWaterMark());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unsizedPool_needsASize() {
+        new FramePool(1, null).acquire();
+    }
+
+    @Test
+    public void doubleRelease_throwsAndLeavesPoolIntact() {
+        FramePool pool = new FramePool(2, 4, 2);
+        Frame frame = pool.acquire();
+        frame.release();
+        try {
+            frame.release();
+            fail("Second release accepted");
+        } catch (IllegalStateException expected) {
+            // The frame must not have been offered to the pool again
+        }
+
+        assertEquals(0, pool.getOutstanding());
+        Frame first = pool.acquire(), second = pool.acquire();
+        assertNotSame(first, second);
+        first.release(); // Acquiring again re-arms release
+        second.release();
+    }
+
+    @Test
+    public void droppedFrame_isReportedAsLeak() throws InterruptedException {
+        FramePool pool = new FramePool(1, 4, 2);
+        pool.setLeakDetection(true);
+        AtomicReference<Throwable> reported = new AtomicReference<>();
+        pool.setLeakListener(reported::set);
+
+        pool.acquire().release();
+        acquireAndDrop(pool);
+        for (int i = 0; i < 100 && pool.getLeakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, pool.getLeakCount());
+        assertNotNull(reported.get());
+        assertEquals(0, pool.getOutstanding());
+        boolean fromAcquire = false;
+        for (StackTraceElement element : reported.get().getStackTrace()) {
+            fromAcquire |= element.getMethodName().equals("acquireAndDrop");
+        }
+        assertTrue(fromAcquire);
+    }
+
+    private static void acquireAndDrop(FramePool pool) {
+        pool.acquire();
+    }
+
+    @Test
+    public void stress_neverHandsOutAFrameTwice() throws InterruptedException {
+        int producers = 4, consumers = 2, perProducer = 20_000;
+        int[][] sizes = {{16, 8}, {8, 16}, {32, 8}, {10, 6}};
+        FramePool pool = new FramePool(4, null);
+        pool.setLeakDetection(true);
+        Set<Frame> out = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Frame, Boolean>()));
+        BlockingQueue<Frame> handoff = new ArrayBlockingQueue<>(16);
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch producersDone = new CountDownLatch(producers);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            final byte token = (byte) (p + 1);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        int[] size = sizes[(i + token) % sizes.length];
+                        Frame frame = pool.acquire(size[0], size[1]);
+                        if (!out.add(frame) || frame.getWidth() != size[0]) {
+                            failures.incrementAndGet();
+                        }
+                        frame.getData()[0] = token;
+                        frame.setTimestampNs(token);
+                        handoff.put(frame);
+                    }
+                } catch (InterruptedException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    producersDone.countDown();
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (producersDone.getCount() > 0 || !handoff.isEmpty()) {
+                        Frame frame = handoff.poll(10, TimeUnit.MILLISECONDS);
+                        if (frame == null) {
+                            continue;
+                        }
+                        // Another owner writing meanwhile would have changed the token
+                        if (frame.getData()[0] != (byte) frame.getTimestampNs() || !out.remove(frame)) {
+                            failures.incrementAndGet();
+                        }
+                        frame.release();
+                    }
+                } catch (InterruptedException e) {
+                    failures.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60_000);
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(0, pool.getOutstanding());
+        assertEquals((long) producers * perProducer, pool.getHits() + pool.getMisses());
+        assertEquals(0, pool.getLeakCount());
+        assertTrue(pool.getHighWaterMark() <= 16 + producers + consumers);
+    }
+}
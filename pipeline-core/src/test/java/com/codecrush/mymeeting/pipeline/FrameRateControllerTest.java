@@ -0,0 +1,95 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameRateControllerTest {
+    private static final long SECOND_NS = 1_000_000_000L;
+
+    @Test
+    public void halfRate_keepsEveryOtherFrame() {
+        FrameRateController controller = new FrameRateController(15);
+
+        boolean[] kept = new boolean[60];
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = controller.shouldCapture(i * SECOND_NS / 30);
+        }
+
+        for (int i = 0; i < kept.length; i++) {
+            assertEquals("frame " + i, i % 2 == 0, kept[i]);
+        }
+        assertEquals(30, controller.getSkippedFrames());
+    }
+
+    @Test
+    public void sameRate_withJitter_keepsEveryFrame() {
+        FrameRateController controller = new FrameRateController(30);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 300; i++) {
+            long jitter = (random.nextInt(9) - 4) * 1_000_000L; // +-4 ms
+            assertTrue("frame " + i, controller.shouldCapture(i * SECOND_NS / 30 + jitter));
+        }
+    }
+
+    @Test
+    public void fractionalRate_averagesToTarget() {
+        FrameRateController controller = new FrameRateController(24);
+
+        int kept = 0;
+        for (int i = 0; i < 600; i++) { // 10 s at 60 fps
+            if (controller.shouldCapture(i * SECOND_NS / 60)) {
+                kept++;
+            }
+        }
+
+        assertTrue("kept " + kept, Math.abs(kept - 240) <= 2);
+    }
+
+    @Test
+    public void repeatedTimestamp_isSkipped() {
+        FrameRateController controller = new FrameRateController(30);
+
+        assertTrue(controller.shouldCapture(SECOND_NS));
+        assertFalse(controller.shouldCapture(SECOND_NS));
+        assertTrue(controller.shouldCapture(SECOND_NS + SECOND_NS / 30));
+    }
+
+    @Test
+    public void gap_restartsSchedule() {
+        FrameRateController controller = new FrameRateController(10);
+
+        assertTrue(controller.shouldCapture(0));
+        // Camera paused for 5 s: the next frame is taken rather than treated as a backlog
+        assertTrue(controller.shouldCapture(5 * SECOND_NS));
+        assertFalse(controller.shouldCapture(5 * SECOND_NS + SECOND_NS / 30));
+        assertTrue(controller.shouldCapture(5 * SECOND_NS + SECOND_NS / 10));
+    }
+
+    @Test
+    public void encoderFeedback_lowersButNeverRaisesTarget() {
+        FrameRateController controller = new FrameRateController(24);
+
+        controller.setEncoderFps(15);
+        assertEquals(15, controller.getTargetFps());
+        controller.setEncoderFps(30);
+        assertEquals(24, controller.getTargetFps());
+        controller.setEncoderFps(1);
+        assertEquals(5, controller.getTargetFps());
+        controller.setEncoderFps(0);
+        assertEquals(24, controller.getTargetFps());
+    }
+
+    @Test
+    public void zeroTarget_capturesEveryFrame() {
+        FrameRateController controller = new FrameRateController(0);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(controller.shouldCapture(i * 1_000L));
+        }
+        assertEquals(0, controller.getSkippedFrames());
+    }
+}
@@ -0,0 +1,60 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyTrackerTest {
+    @Test
+    public void record_splitsLatencyIntoStages() {
+        LatencyTracker tracker = new LatencyTracker();
+        Frame frame = Frame.wrap(new byte[YUVConverter.nv21Size(2, 2)], 2, 2);
+        frame.setTimestampNs(1_000_000);
+        frame.mark(LatencyTracker.Stage.MAPPED, 9_000_000);
+        frame.mark(LatencyTracker.Stage.CONVERTED, 12_000_000);
+        // No SUBMITTED mark: the queue stage is measured from the conversion
+        frame.mark(LatencyTracker.Stage.DEQUEUED, 13_000_000);
+        frame.mark(LatencyTracker.Stage.PUBLISHED, 13_500_000);
+
+        tracker.record(frame);
+
+        assertStage(8_000_000, tracker.getHistogram(LatencyTracker.Stage.MAPPED));
+        assertStage(3_000_000, tracker.getHistogram(LatencyTracker.Stage.CONVERTED));
+        assertEquals(0, tracker.getHistogram(LatencyTracker.Stage.SUBMITTED).getCount());
+        assertStage(1_000_000, tracker.getHistogram(LatencyTracker.Stage.DEQUEUED));
+        assertStage(500_000, tracker.getHistogram(LatencyTracker.Stage.PUBLISHED));
+        assertStage(12_500_000, tracker.getTotal());
+        assertTrue(tracker.report().contains("total    n=1"));
+    }
+
+    @Test
+    public void record_unmarkedFrameCountsTowardsOneStage() {
+        LatencyTracker tracker = new LatencyTracker();
+
+        tracker.record(1_000_000, LatencyTracker.Stage.PUBLISHED, 4_000_000);
+        tracker.record(0, LatencyTracker.Stage.PUBLISHED, 4_000_000); // No capture time
+
+        assertStage(3_000_000, tracker.getHistogram(LatencyTracker.Stage.PUBLISHED));
+        assertEquals(0, tracker.getHistogram(LatencyTracker.Stage.MAPPED).getCount());
+        assertStage(3_000_000, tracker.getTotal());
+    }
+
+    @Test
+    public void release_clearsCaptureTimeAndMarks() {
+        FramePool pool = new FramePool(1, 2, 2);
+        Frame frame = pool.acquire();
+        frame.setTimestampNs(5);
+        frame.mark(LatencyTracker.Stage.SUBMITTED);
+
+        frame.release();
+
+        assertSame(frame, pool.acquire());
+        assertEquals(0, frame.getTimestampNs());
+        assertEquals(0, frame.getMarkNs(LatencyTracker.Stage.SUBMITTED));
+    }
+
+    private static void assertStage(long expectedNs, LatencyHistogram histogram) {
+        assertEquals(1, histogram.getCount());
+        assertEquals(expectedNs, histogram.getMaxNs());
+    }
+}
@@ -0,0 +1,257 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LayoutCompositorTest {
+    @Test
+    public void split_matchesStackedComposite() {
+        Random random = new Random(5);
+        byte[] front = new byte[YUVConverter.nv21Size(8, 4)];
+        byte[] back = new byte[front.length];
+        random.nextBytes(front);
+        random.nextBytes(back);
+        LayoutCompositor compositor = new LayoutCompositor(8, 8, CompositeLayout.split(0, 1));
+        byte[] output = new byte[YUVConverter.nv21Size(8, 8)];
+
+        compositor.compose(new byte[][]{front, back}, 8, 4, output);
+
+        assertArrayEquals(NV21Compositor.combineFrames(front, back, 8, 8), output);
+    }
+
+    @Test
+    public void pictureInPicture_insetCoversMainTile() {
+        byte[] main = solid(16, 16, 50, 60);
+        byte[] inset = solid(16, 16, 200, 70);
+        LayoutCompositor compositor = new LayoutCompositor(20, 20, CompositeLayout.pictureInPicture(0, 1));
+        byte[] output = new byte[YUVConverter.nv21Size(20, 20)];
+
+        compositor.compose(new byte[][]{main, inset}, 16, 16, output);
+
+        // Inset spans 0.66..0.96 of 20 pixels, rounded to even: [14, 20) on both axes
+        assertEquals(50, output[0] & 0xFF);
+        assertEquals(50, output[13 * 20 + 13] & 0xFF);
+        assertEquals(200, output[14 * 20 + 14] & 0xFF);
+        assertEquals(200, output[19 * 20 + 19] & 0xFF);
+        int uv = 20 * 20;
+        assertEquals(60, output[uv] & 0xFF);
+        assertEquals(70, output[uv + 7 * 20 + 14] & 0xFF);
+        assertEquals(70, output[uv + 9 * 20 + 19] & 0xFF);
+    }
+
+    @Test
+    public void uncoveredCanvas_isBlack() {
+        LayoutCompositor compositor = new LayoutCompositor(4, 4,
+                new CompositeLayout(new CompositeLayout.Tile(0, 0, 0, 1, 0.5f, 0)));
+        byte[] output = new byte[YUVConverter.nv21Size(4, 4)];
+
+        compositor.compose(new byte[][]{solid(4, 2, 100, 90)}, 4, 2, output);
+
+        assertEquals(100, output[0] & 0xFF);
+        assertEquals(16, output[2 * 4] & 0xFF);
+        assertEquals(90, output[16] & 0xFF);
+        assertEquals(128, output[16 + 4] & 0xFF);
+    }
+
+    @Test
+    public void switchingLayouts_keepsCanvasSize() {
+        LayoutCompositor compositor = new LayoutCompositor(8, 8, CompositeLayout.split(0, 1));
+        int width = compositor.compositeWidth(8, 4, 2);
+        int height = compositor.compositeHeight(8, 4, 2);
+        byte[] output = new byte[YUVConverter.nv21Size(width, height)];
+        byte[][] tiles = {solid(8, 4, 30, 40), solid(8, 4, 120, 130)};
+
+        compositor.setLayout(CompositeLayout.sideBySide(1, 0));
+        compositor.compose(tiles, 8, 4, output);
+
+        assertEquals(width, compositor.compositeWidth(8, 4, 2));
+        assertEquals(height, compositor.compositeHeight(8, 4, 2));
+        assertEquals(120, output[0] & 0xFF);
+        assertEquals(30, output[7 * 8 + 7] & 0xFF);
+    }
+
+    @Test
+    public void oddTileAtCanvasEdge_isCopiedExactly() {
+        byte[] tile = random(5, 3, 1);
+        LayoutCompositor compositor = new LayoutCompositor(7, 5, CompositeLayout.split(0, 1));
+        byte[] output = new byte[YuvFormat.size(7, 5)];
+
+        compositor.blit(tile, YuvFormat.NV21, 5, 3, output, 2, 2, 5, 3);
+
+        assertArrayEquals(reference(tile, YuvFormat.NV21, 5, 3, YuvFormat.NV21, 7, 5, 2, 2, 7, 5, false), output);
+    }
+
+    @Test
+    public void nearest_matchesReferenceOnOddGeometries() {
+        int[][] cases = {
+                // source w, h, canvas w, h, rect left, top, right, bottom (already chroma-aligned)
+                {7, 5, 13, 11, 2, 2, 12, 8},
+                {13, 9, 9, 7, 0, 2, 6, 6},
+                {3, 3, 11, 11, 4, 0, 11, 11},
+                {640, 480, 361, 203, 0, 0, 361, 203},
+        };
+        for (int[] c : cases) {
+            for (YuvFormat format : YuvFormat.values()) {
+                byte[] tile = random(c[0], c[1], c[2]);
+                LayoutCompositor compositor = new LayoutCompositor(c[2], c[3], YuvFormat.NV21,
+                        CompositeLayout.split(0, 1), LayoutCompositor.Filter.NEAREST, 1);
+                byte[] output = new byte[YuvFormat.size(c[2], c[3])];
+
+                compositor.blit(tile, format, c[0], c[1], output, c[4], c[5], c[6] - c[4], c[7] - c[5]);
+
+                assertArrayEquals(format + " " + Arrays.toString(c),
+                        reference(tile, format, c[0], c[1], YuvFormat.NV21, c[2], c[3], c[4], c[5], c[6], c[7], false), output);
+            }
+        }
+    }
+
+    @Test
+    public void bilinear_isWithinRoundingOfReference() {
+        byte[] tile = random(9, 7, 4);
+        LayoutCompositor compositor = new LayoutCompositor(21, 15, YuvFormat.I420,
+                CompositeLayout.split(0, 1), LayoutCompositor.Filter.BILINEAR, 1);
+        byte[] output = new byte[YuvFormat.size(21, 15)];
+
+        compositor.blit(tile, YuvFormat.NV21, 9, 7, output, 0, 0, 21, 15);
+
+        byte[] expected = reference(tile, YuvFormat.NV21, 9, 7, YuvFormat.I420, 21, 15, 0, 0, 21, 15, true);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("byte " + i, expected[i] & 0xFF, output[i] & 0xFF, 1);
+        }
+    }
+
+    @Test
+    public void bilinear_keepsFlatTilesFlat() {
+        LayoutCompositor compositor = new LayoutCompositor(30, 30, YuvFormat.NV21,
+                CompositeLayout.split(0, 1), LayoutCompositor.Filter.BILINEAR, 1);
+        byte[] output = new byte[YuvFormat.size(30, 30)];
+
+        compositor.compose(new byte[][]{solid(7, 3, 90, 150), solid(7, 3, 40, 20)}, YuvFormat.NV21, 7, 3, output);
+
+        for (int i = 0; i < 30 * 30; i++) {
+            assertEquals(i < 30 * 16 ? 90 : 40, output[i] & 0xFF); // The split rounds to row 16
+        }
+    }
+
+    @Test
+    public void unalignedRect_neverTouchesNeighbours() {
+        LayoutCompositor compositor = new LayoutCompositor(16, 16, CompositeLayout.split(0, 1));
+        byte[] output = new byte[YuvFormat.size(16, 16)];
+        Arrays.fill(output, (byte) 7);
+
+        compositor.blit(solid(5, 5, 200, 210), YuvFormat.NV21, 5, 5, output, 3, 5, 9, 7);
+
+        // Snapped to [2, 12) x [4, 12)
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                boolean inside = x >= 2 && x < 12 && y >= 4 && y < 12;
+                assertEquals(x + "," + y, inside ? 200 : 7, output[y * 16 + x] & 0xFF);
+            }
+        }
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 16; x++) {
+                boolean inside = x >= 2 && x < 12 && y >= 2 && y < 6;
+                assertEquals("uv " + x + "," + y, inside ? 210 : 7, output[256 + y * 16 + x] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void parallelBands_matchSerialOutput() {
+        byte[][] tiles = {random(640, 480, 6), random(640, 480, 7)};
+        CompositeLayout layout = CompositeLayout.pictureInPicture(1, 0);
+        LayoutCompositor serial = new LayoutCompositor(721, 1283, YuvFormat.NV21, layout,
+                LayoutCompositor.Filter.BILINEAR, 1);
+        LayoutCompositor parallel = new LayoutCompositor(721, 1283, YuvFormat.NV21, layout,
+                LayoutCompositor.Filter.BILINEAR, 4);
+        byte[] expected = new byte[YuvFormat.size(721, 1283)];
+        byte[] actual = new byte[expected.length];
+
+        try {
+            serial.compose(tiles, 640, 480, expected);
+            parallel.compose(tiles, 640, 480, actual);
+        } finally {
+            parallel.shutdown();
+        }
+
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * Straightforward per-sample scaling of a tile into [left, right) x [top, bottom) of a
+     * canvas, with pixel centres mapped to pixel centres and everything else left zero.
+     */
+    private static byte[] reference(byte[] tile, YuvFormat format, int tileWidth, int tileHeight,
+                                    YuvFormat canvasFormat, int canvasWidth, int canvasHeight,
+                                    int left, int top, int right, int bottom, boolean bilinear) {
+        byte[] canvas = new byte[YuvFormat.size(canvasWidth, canvasHeight)];
+        // Luma
+        scalePlane(tile, 0, tileWidth, 1, tileWidth, tileHeight,
+                canvas, top * canvasWidth + left, canvasWidth, 1, right - left, bottom - top, bilinear);
+        // Chroma
+        int chromaLeft = left / 2, chromaTop = top / 2;
+        int chromaWidth = YuvFormat.chromaWidth(right) - chromaLeft;
+        int chromaHeight = YuvFormat.chromaHeight(bottom) - chromaTop;
+        int[][] planes = {
+                {format.uOffset(tileWidth, tileHeight), canvasFormat.uOffset(canvasWidth, canvasHeight)},
+                {format.vOffset(tileWidth, tileHeight), canvasFormat.vOffset(canvasWidth, canvasHeight)},
+        };
+        int canvasRowStride = canvasFormat.chromaRowStride(canvasWidth);
+        int canvasPixelStride = canvasFormat.chromaPixelStride();
+        for (int[] plane : planes) {
+            scalePlane(tile, plane[0], format.chromaRowStride(tileWidth), format.chromaPixelStride(),
+                    YuvFormat.chromaWidth(tileWidth), YuvFormat.chromaHeight(tileHeight),
+                    canvas, plane[1] + chromaTop * canvasRowStride + chromaLeft * canvasPixelStride,
+                    canvasRowStride, canvasPixelStride,
+                    chromaWidth, chromaHeight, bilinear);
+        }
+        return canvas;
+    }
+
+    private static void scalePlane(byte[] src, int srcOffset, int srcRowStride, int srcPixelStride,
+                                   int srcWidth, int srcHeight, byte[] dst, int dstOffset, int dstRowStride,
+                                   int dstPixelStride, int dstWidth, int dstHeight, boolean bilinear) {
+        for (int y = 0; y < dstHeight; y++) {
+            double sy = Math.max(0, Math.min(srcHeight - 1, (y + 0.5) * srcHeight / dstHeight - 0.5));
+            for (int x = 0; x < dstWidth; x++) {
+                double sx = Math.max(0, Math.min(srcWidth - 1, (x + 0.5) * srcWidth / dstWidth - 0.5));
+                double value;
+                if (bilinear) {
+                    int x0 = (int) sx, y0 = (int) sy;
+                    int x1 = Math.min(x0 + 1, srcWidth - 1), y1 = Math.min(y0 + 1, srcHeight - 1);
+                    double fx = sx - x0, fy = sy - y0;
+                    value = (1 - fy) * ((1 - fx) * sample(src, srcOffset, srcRowStride, srcPixelStride, x0, y0)
+                            + fx * sample(src, srcOffset, srcRowStride, srcPixelStride, x1, y0))
+                            + fy * ((1 - fx) * sample(src, srcOffset, srcRowStride, srcPixelStride, x0, y1)
+                            + fx * sample(src, srcOffset, srcRowStride, srcPixelStride, x1, y1));
+                } else {
+                    value = sample(src, srcOffset, srcRowStride, srcPixelStride,
+                            (int) Math.floor((x + 0.5) * srcWidth / dstWidth),
+                            (int) Math.floor((y + 0.5) * srcHeight / dstHeight));
+                }
+                dst[dstOffset + y * dstRowStride + x * dstPixelStride] = (byte) Math.round(value);
+            }
+        }
+    }
+
+    private static int sample(byte[] plane, int offset, int rowStride, int pixelStride, int x, int y) {
+        return plane[offset + y * rowStride + x * pixelStride] & 0xFF;
+    }
+
+    private static byte[] random(int width, int height, long seed) {
+        byte[] frame = new byte[YuvFormat.size(width, height)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    private static byte[] solid(int width, int height, int y, int uv) {
+        byte[] frame = new byte[YuvFormat.size(width, height)];
+        Arrays.fill(frame, 0, width * height, (byte) y);
+        Arrays.fill(frame, width * height, frame.length, (byte) uv);
+        return frame;
+    }
+}
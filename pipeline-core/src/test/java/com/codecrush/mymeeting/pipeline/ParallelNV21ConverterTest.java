@@ -0,0 +1,74 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ParallelNV21ConverterTest {
+    private static final int[][] SIZES = {{2, 2}, {4, 6}, {5, 7}, {64, 48}, {641, 479}, {640, 960}, {1080, 1920}};
+
+    @Test
+    public void parallelOutput_matchesSerialConverter() {
+        for (int workers = 1; workers <= 8; workers++) {
+            ParallelNV21Converter converter = new ParallelNV21Converter(workers);
+            try {
+                for (int[] size : SIZES) {
+                    byte[] rgba = LegacyYUVConverter.randomRgba(size[0], size[1], workers * 131L + size[1]);
+                    byte[] out = new byte[YUVConverter.nv21Size(size[0], size[1])];
+
+                    converter.rgbaToNV21(rgba, size[0], size[1], out);
+
+                    assertArrayEquals(workers + " workers, " + size[0] + "x" + size[1],
+                            LegacyYUVConverter.rgbaToNV21(rgba, size[0], size[1]), out);
+                }
+            } finally {
+                converter.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void directBuffers_matchSerialConverter() {
+        ParallelNV21Converter converter = new ParallelNV21Converter(4);
+        try {
+            for (int[] size : SIZES) {
+                byte[] rgba = LegacyYUVConverter.randomRgba(size[0], size[1], 977L + size[1]);
+                byte[] expected = LegacyYUVConverter.rgbaToNV21(rgba, size[0], size[1]);
+                ByteBuffer source = ByteBuffer.allocateDirect(rgba.length);
+                source.put(rgba);
+                ByteBuffer out = ByteBuffer.allocateDirect(expected.length);
+
+                converter.rgbaToNV21(source, size[0], size[1], out);
+                assertArrayEquals(size[0] + "x" + size[1], expected, YUVConverterTest.toArray(out));
+
+                converter.rgbaToNV12(source, size[0], size[1], out);
+                assertArrayEquals(size[0] + "x" + size[1],
+                        YUVConverterTest.swapChroma(expected, size[0] * size[1]), YUVConverterTest.toArray(out));
+            }
+        } finally {
+            converter.shutdown();
+        }
+    }
+
+    @Test
+    public void bandsFollowingABadFrame_stillConvert() {
+        ParallelNV21Converter converter = new ParallelNV21Converter(4);
+        try {
+            try {
+                converter.rgbaToNV21(new byte[16], 64, 48, new byte[YUVConverter.nv21Size(64, 48)]);
+                fail("Short RGBA input should fail");
+            } catch (RuntimeException expected) {
+                // Either the caller's band or a worker band trips over the short input
+            }
+
+            byte[] rgba = LegacyYUVConverter.randomRgba(64, 48, 3);
+            byte[] out = new byte[YUVConverter.nv21Size(64, 48)];
+            converter.rgbaToNV21(rgba, 64, 48, out);
+            assertArrayEquals(LegacyYUVConverter.rgbaToNV21(rgba, 64, 48), out);
+        } finally {
+            converter.shutdown();
+        }
+    }
+}
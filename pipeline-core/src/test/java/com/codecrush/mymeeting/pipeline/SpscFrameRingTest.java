@@ -0,0 +1,140 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SpscFrameRingTest {
+    @Test
+    public void fullRing_evictsOldestFirst() throws InterruptedException {
+        SpscFrameRing ring = new SpscFrameRing(3);
+        Frame[] frames = new Frame[5];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = frame(i);
+        }
+
+        assertNull(ring.offer(frames[0]));
+        assertNull(ring.offer(frames[1]));
+        assertNull(ring.offer(frames[2]));
+        assertSame(frames[0], ring.offer(frames[3]));
+        assertSame(frames[1], ring.offer(frames[4]));
+        assertEquals(3, ring.size());
+
+        assertSame(frames[2], ring.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(frames[3], ring.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(frames[4], ring.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(ring.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void emptyRing_timesOut() throws InterruptedException {
+        SpscFrameRing ring = new SpscFrameRing(2);
+        long start = System.nanoTime();
+
+        assertNull(ring.poll(20, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void parkedConsumer_wakesOnOffer() throws InterruptedException {
+        SpscFrameRing ring = new SpscFrameRing(2);
+        AtomicReference<Frame> received = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                received.set(ring.poll(10, TimeUnit.SECONDS));
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        consumer.start();
+        Thread.sleep(50); // Let the consumer park
+
+        Frame frame = frame(1);
+        ring.offer(frame);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertSame(frame, received.get());
+    }
+
+    @Test
+    public void interruptedConsumer_throws() throws InterruptedException {
+        SpscFrameRing ring = new SpscFrameRing(2);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                ring.poll(10, TimeUnit.SECONDS);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+        consumer.start();
+        Thread.sleep(50);
+
+        consumer.interrupt();
+        consumer.join(1000);
+
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+
+    @Test
+    public void stress_everyFrameConsumedOrEvictedExactlyOnce() throws InterruptedException {
+        final int frames = 500_000;
+        for (int capacity : new int[]{1, 3, 5, 8}) {
+            SpscFrameRing ring = new SpscFrameRing(capacity);
+            Frame[] sent = new Frame[frames];
+            for (int i = 0; i < frames; i++) {
+                sent[i] = frame(i);
+            }
+            int[] seen = new int[frames];
+            long[] lastConsumed = {-1};
+            int[] outOfOrder = {0};
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    Frame frame;
+                    while ((frame = ring.poll(500, TimeUnit.MILLISECONDS)) != null) {
+                        int sequence = (int) frame.getTimestampNs();
+                        seen[sequence]++;
+                        if (sequence <= lastConsumed[0]) {
+                            outOfOrder[0]++;
+                        }
+                        lastConsumed[0] = sequence;
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }, "ring-consumer");
+            consumer.start();
+
+            int evicted = 0;
+            for (int i = 0; i < frames; i++) {
+                Frame dropped = ring.offer(sent[i]);
+                if (dropped != null) {
+                    seen[(int) dropped.getTimestampNs()]++;
+                    evicted++;
+                }
+                if ((i & 0xFFF) == 0) {
+                    Thread.yield(); // Vary the interleaving so both sides see full and empty rings
+                }
+            }
+            consumer.join();
+
+            for (int i = 0; i < frames; i++) {
+                assertEquals("capacity " + capacity + ", frame " + i, 1, seen[i]);
+            }
+            assertEquals(0, outOfOrder[0]);
+            assertTrue(evicted < frames);
+        }
+    }
+
+    private static Frame frame(long sequence) {
+        Frame frame = Frame.wrap(new byte[YUVConverter.nv21Size(2, 2)], 2, 2);
+        frame.setTimestampNs(sequence);
+        return frame;
+    }
+}
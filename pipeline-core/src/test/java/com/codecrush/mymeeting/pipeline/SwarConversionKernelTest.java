@@ -0,0 +1,127 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class SwarConversionKernelTest {
+    private static final int[][] SIZES = {{1, 1}, {2, 1}, {1, 2}, {2, 2}, {3, 3}, {5, 4}, {4, 5},
+            {17, 9}, {64, 48}, {641, 479}};
+    private static final ColorSpec[] SPECS = {ColorSpec.BT601_LIMITED, ColorSpec.BT601_FULL,
+            ColorSpec.BT709_LIMITED, ColorSpec.BT709_FULL};
+
+    @Test
+    public void arrays_matchByteKernel() {
+        for (ColorSpec spec : SPECS) {
+            for (int[] size : SIZES) {
+                int width = size[0], height = size[1];
+                byte[] rgba = LegacyYUVConverter.randomRgba(width, height, width * 13L + height);
+                byte[] expected = new byte[YuvFormat.size(width, height)];
+                byte[] actual = new byte[expected.length];
+
+                YUVConverter.JAVA_KERNEL.convertRows(rgba, width, height, expected, spec, 0, height);
+                YUVConverter.SWAR_KERNEL.convertRows(rgba, width, height, actual, spec, 0, height);
+
+                assertArrayEquals(spec + " " + width + "x" + height, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void saturatedChannels_doNotCarryBetweenLanes() {
+        // All four samples of a channel at 255 is the largest lane sum
+        int[] colours = {0xFFFFFFFF, 0xFF0000FF, 0xFF00FF00, 0xFFFF0000, 0x00FFFFFF, 0x00000000};
+        for (int colour : colours) {
+            ByteBuffer pixels = ByteBuffer.allocate(4 * 4 * 4).order(ByteOrder.LITTLE_ENDIAN);
+            while (pixels.hasRemaining()) {
+                pixels.putInt(colour);
+            }
+            byte[] rgba = pixels.array();
+            byte[] expected = new byte[YuvFormat.size(4, 4)];
+            byte[] actual = new byte[expected.length];
+
+            YUVConverter.JAVA_KERNEL.convertRows(rgba, 4, 4, expected, ColorSpec.BT601_FULL, 0, 4);
+            YUVConverter.SWAR_KERNEL.convertRows(rgba, 4, 4, actual, ColorSpec.BT601_FULL, 0, 4);
+
+            assertArrayEquals(Integer.toHexString(colour), expected, actual);
+        }
+    }
+
+    @Test
+    public void directBuffers_matchByteKernel() {
+        for (int vOffset = 0; vOffset <= 1; vOffset++) {
+            for (int[] size : SIZES) {
+                int width = size[0], height = size[1];
+                byte[] rgba = LegacyYUVConverter.randomRgba(width, height, width * 7L + height);
+                ByteBuffer source = ByteBuffer.allocateDirect(rgba.length); // Big-endian, as mapped
+                source.put(rgba).position(3);
+                ByteBuffer expected = ByteBuffer.allocateDirect(YuvFormat.size(width, height));
+                ByteBuffer actual = ByteBuffer.allocateDirect(expected.capacity());
+
+                YUVConverter.JAVA_KERNEL.convertRows(source, width, height, expected, vOffset,
+                        ColorSpec.BT709_LIMITED, 0, height);
+                YUVConverter.SWAR_KERNEL.convertRows(source, width, height, actual, vOffset,
+                        ColorSpec.BT709_LIMITED, 0, height);
+
+                assertArrayEquals(width + "x" + height, toArray(expected), toArray(actual));
+                assertEquals(3, source.position()); // Caller's buffer state untouched
+                assertEquals(ByteOrder.BIG_ENDIAN, source.order());
+            }
+        }
+    }
+
+    @Test
+    public void reusedSources_areReadAfresh() {
+        // Views are cached per source, so a refilled source must not be read stale
+        int width = 6, height = 4;
+        byte[] rgba = new byte[width * height * 4];
+        ByteBuffer little = ByteBuffer.allocateDirect(rgba.length).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer big = ByteBuffer.allocateDirect(rgba.length);
+        for (long seed = 1; seed <= 2; seed++) {
+            byte[] fill = LegacyYUVConverter.randomRgba(width, height, seed);
+            System.arraycopy(fill, 0, rgba, 0, rgba.length);
+            little.clear();
+            little.put(fill);
+            big.clear();
+            big.put(fill);
+            byte[] expected = YUVConverter.rgbaToNV21(fill, width, height);
+            byte[] fromArray = new byte[expected.length];
+            ByteBuffer fromLittle = ByteBuffer.allocate(expected.length);
+            ByteBuffer fromBig = ByteBuffer.allocate(expected.length);
+
+            YUVConverter.SWAR_KERNEL.convertRows(rgba, width, height, fromArray, ColorSpec.BT601_LIMITED, 0, height);
+            YUVConverter.SWAR_KERNEL.convertRows(little, width, height, fromLittle, 0, ColorSpec.BT601_LIMITED, 0, height);
+            YUVConverter.SWAR_KERNEL.convertRows(big, width, height, fromBig, 0, ColorSpec.BT601_LIMITED, 0, height);
+
+            assertArrayEquals(expected, fromArray);
+            assertArrayEquals(expected, fromLittle.array());
+            assertArrayEquals(expected, fromBig.array());
+        }
+    }
+
+    @Test
+    public void bands_matchWholeFrame() {
+        int width = 30, height = 21;
+        byte[] rgba = LegacyYUVConverter.randomRgba(width, height, 3);
+        byte[] expected = YUVConverter.rgbaToNV21(rgba, width, height);
+        byte[] actual = new byte[expected.length];
+
+        for (int row = 0; row < height; row += 4) {
+            YUVConverter.SWAR_KERNEL.convertRows(rgba, width, height, actual, ColorSpec.BT601_LIMITED,
+                    row, Math.min(height, row + 4));
+        }
+
+        assertArrayEquals(expected, actual);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(i);
+        }
+        return bytes;
+    }
+}
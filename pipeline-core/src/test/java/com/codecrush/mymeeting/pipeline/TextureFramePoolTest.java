@@ -0,0 +1,86 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TextureFramePoolTest {
+    /** Stands in for the SDK: holds each frame until told to let go, like its release callback. */
+    private static final class FakeTexturePublisher implements TexturePublisher {
+        final List<TextureFrame> held = new ArrayList<>();
+
+        @Override
+        public void publish(TextureFrame frame) {
+            held.add(frame);
+        }
+
+        void releaseOldest() {
+            held.remove(0).release();
+        }
+    }
+
+    @Test
+    public void heldFrames_areNotHandedOutAgain() {
+        TextureFramePool pool = new TextureFramePool(2);
+        FakeTexturePublisher publisher = new FakeTexturePublisher();
+        publisher.publish(pool.acquire());
+        publisher.publish(pool.acquire());
+
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getExhausted());
+        assertEquals(2, pool.getOutstanding());
+
+        TextureFrame oldest = publisher.held.get(0);
+        publisher.releaseOldest();
+        assertSame(oldest, pool.acquire());
+    }
+
+    @Test
+    public void frameKeepsItsTexture_acrossReuse() {
+        TextureFramePool pool = new TextureFramePool(1);
+        TextureFrame frame = pool.acquire();
+        assertEquals(0, frame.getTextureId()); // Created by the GL thread on first use
+        frame.setTexture(3, 4, 720, 1280);
+        frame.release();
+
+        TextureFrame again = pool.acquire();
+        assertEquals(4, again.getTextureId());
+        assertEquals(720, again.getWidth());
+        assertEquals(1280, again.getHeight());
+    }
+
+    @Test
+    public void retainedFrame_returnsAfterLastRelease() {
+        TextureFramePool pool = new TextureFramePool(1);
+        TextureFrame frame = pool.acquire();
+        frame.retain();
+
+        frame.release();
+        assertNull(pool.acquire());
+
+        frame.release();
+        assertEquals(0, pool.getOutstanding());
+        assertSame(frame, pool.acquire());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleRelease_isRejected() {
+        TextureFrame frame = new TextureFramePool(1).acquire();
+        frame.release();
+        frame.release();
+    }
+
+    @Test
+    public void releaseFromAnotherThread_returnsFrame() throws InterruptedException {
+        TextureFramePool pool = new TextureFramePool(1);
+        TextureFrame frame = pool.acquire();
+        Thread sdk = new Thread(frame::release);
+        sdk.start();
+        sdk.join();
+
+        assertSame(frame, pool.acquire());
+    }
+}
@@ -0,0 +1,49 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TraceRingTest {
+    @Test
+    public void disabledRing_recordsNothing() {
+        TraceRing trace = new TraceRing(4);
+        int event = trace.defineEvent("readback", "pending", "bytes");
+
+        trace.record(event, 1, 2);
+
+        assertEquals(0, trace.getRecordedCount());
+        assertEquals("", trace.dump());
+    }
+
+    @Test
+    public void fullRing_keepsNewestEntriesInOrder() {
+        TraceRing trace = new TraceRing(3); // Rounded up to 4
+        int readback = trace.defineEvent("readback", "pending", "bytes");
+        int skipped = trace.defineEvent("skipped", "pending", "depth");
+        trace.setEnabled(true);
+
+        for (int i = 0; i < 6; i++) {
+            trace.record(i % 2 == 0 ? readback : skipped, i, i * 10);
+        }
+
+        String[] lines = trace.dump().trim().split("\\R");
+        assertEquals(6, trace.getRecordedCount());
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].endsWith("readback pending=2 bytes=20"));
+        assertTrue(lines[3], lines[3].endsWith("skipped pending=5 depth=50"));
+        assertTrue(lines[3], lines[3].trim().startsWith("0.000"));
+    }
+
+    @Test
+    public void clear_emptiesTheRing() {
+        TraceRing trace = new TraceRing(8);
+        int event = trace.defineEvent("mapped", "bytes", "captureNs");
+        trace.setEnabled(true);
+        trace.record(event, 1, 2);
+
+        trace.clear();
+
+        assertEquals("", trace.dump());
+    }
+}
@@ -0,0 +1,203 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class VideoSinkTest {
+    @Test
+    public void countingSink_countsAndReleases() {
+        FramePool pool = new FramePool(1, 4, 2);
+        CountingVideoSink sink = new CountingVideoSink();
+        Frame frame = pool.acquire();
+        sink.onFrame(frame);
+        sink.onFrame(pool.acquire());
+
+        assertEquals(2, sink.getFrames());
+        assertEquals(2 * YuvFormat.size(4, 2), sink.getBytes());
+        assertSame(frame, pool.acquire());
+    }
+
+    @Test
+    public void switchableSink_forwardsToCurrentSinkAndReleasesWithoutOne() {
+        FramePool pool = new FramePool(1, 4, 2);
+        CountingVideoSink first = new CountingVideoSink();
+        CountingVideoSink second = new CountingVideoSink();
+        SwitchableVideoSink sink = new SwitchableVideoSink(first);
+
+        sink.onFrame(pool.acquire());
+        sink.setSink(second);
+        sink.onFrame(pool.acquire());
+        sink.setSink(null);
+        Frame unpublished = pool.acquire();
+        sink.onFrame(unpublished);
+
+        assertEquals(1, first.getFrames());
+        assertEquals(1, second.getFrames());
+        assertSame(unpublished, pool.acquire());
+    }
+
+    @Test
+    public void loopbackSink_detectsFramesChangedAfterSubmit() {
+        FramePool pool = new FramePool(2, 4, 2);
+        LoopbackVideoSink sink = new LoopbackVideoSink();
+        Frame intact = pool.acquire();
+        Frame overwritten = pool.acquire();
+        intact.setTimestampNs(System.nanoTime());
+        sink.expect(intact);
+        sink.expect(overwritten);
+        overwritten.getData()[5] ^= 1;
+
+        sink.onFrame(intact);
+        sink.onFrame(overwritten);
+        sink.onFrame(Frame.wrap(new byte[YuvFormat.size(4, 2)], 4, 2));
+
+        assertEquals(3, sink.getFrames());
+        assertEquals(1, sink.getCorrupted());
+        assertEquals(1, sink.getUnexpected());
+        assertEquals(1, sink.getLatency().getTotal().getCount()); // Only the timestamped frame
+    }
+
+    @Test
+    public void loopbackSink_checksumsDirectFramesLikeHeapFrames() {
+        byte[] bytes = new byte[YuvFormat.size(6, 4)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 7);
+        }
+        Frame direct = new FramePool(1, 6, 4, Frame.Format.NV12).acquire();
+        direct.getBuffer().put(bytes);
+
+        assertEquals(LoopbackVideoSink.checksum(Frame.wrap(bytes, 6, 4)), LoopbackVideoSink.checksum(direct));
+    }
+
+    @Test
+    public void fileSink_writesPlanarY4m() throws IOException {
+        // 2x2: four luma bytes, then one chroma pair
+        byte[] nv21 = {1, 2, 3, 4, 50, 60};
+        Frame nv12 = new FramePool(1, 2, 2, Frame.Format.NV12).acquire();
+        nv12.getBuffer().put(new byte[]{1, 2, 3, 4, 60, 50});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileVideoSink sink = new FileVideoSink(out, 30);
+
+        sink.onFrame(Frame.wrap(nv21, 2, 2));
+        sink.onFrame(nv12);
+        sink.onFrame(Frame.wrap(new byte[YuvFormat.size(4, 2)], 4, 2)); // Wrong size
+        sink.close();
+
+        byte[] header = "YUV4MPEG2 W2 H2 F30:1 Ip A1:1 C420\n".getBytes(Charset.forName("US-ASCII"));
+        byte[] frame = "FRAME\n".getBytes(Charset.forName("US-ASCII"));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(header);
+        for (int i = 0; i < 2; i++) {
+            expected.write(frame);
+            expected.write(new byte[]{1, 2, 3, 4, 60, 50}); // Y, then U, then V
+        }
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        assertEquals(2, sink.getFramesWritten());
+        assertEquals(1, sink.getFramesSkipped());
+        assertNull(sink.getError());
+    }
+
+    @Test
+    public void fileSink_roundTripsOddSizedFramesOfBothChromaOrders() throws IOException {
+        int width = 5, height = 3;
+        int size = YuvFormat.size(width, height);
+        byte[] nv21 = new byte[size];
+        for (int i = 0; i < size; i++) {
+            nv21[i] = (byte) (i * 11 + 3);
+        }
+        Frame nv12 = new FramePool(1, width, height, Frame.Format.NV12).acquire();
+        // The same pixels, with each chroma pair swapped into U, V order
+        for (int i = 0; i < size; i++) {
+            int pair = i - width * height;
+            nv12.getBuffer().put(i, pair < 0 ? nv21[i] : nv21[i + ((pair & 1) == 0 ? 1 : -1)]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileVideoSink sink = new FileVideoSink(out, 30);
+
+        sink.onFrame(Frame.wrap(nv21, width, height));
+        sink.onFrame(nv12);
+        sink.close();
+
+        byte[] header = "YUV4MPEG2 W5 H3 F30:1 Ip A1:1 C420\n".getBytes(Charset.forName("US-ASCII"));
+        byte[] y4m = out.toByteArray();
+        int frameBytes = "FRAME\n".length() + width * height + 2 * 3 * 2; // Two 3x2 chroma planes
+        assertEquals(header.length + 2 * frameBytes, y4m.length);
+        for (int i = 0; i < 2; i++) {
+            int planes = header.length + i * frameBytes + "FRAME\n".length();
+            assertArrayEquals(nv21, toNv21(y4m, planes, width, height));
+        }
+    }
+
+    /** Re-interleaves the I420 planes at {@code offset} into NV21. */
+    private static byte[] toNv21(byte[] y4m, int offset, int width, int height) {
+        int chromaWidth = (width + 1) / 2, chromaHeight = (height + 1) / 2;
+        int chromaSize = chromaWidth * chromaHeight;
+        byte[] nv21 = new byte[YuvFormat.size(width, height)];
+        System.arraycopy(y4m, offset, nv21, 0, width * height);
+        int u = offset + width * height, v = u + chromaSize;
+        for (int i = 0; i < chromaSize; i++) {
+            nv21[width * height + 2 * i] = y4m[v + i];
+            nv21[width * height + 2 * i + 1] = y4m[u + i];
+        }
+        return nv21;
+    }
+
+    @Test
+    public void fileSink_keepsFirstErrorAndStillReleases() {
+        IOException failure = new IOException("disk full");
+        FileVideoSink sink = new FileVideoSink(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw failure;
+            }
+        }, 30);
+        FramePool pool = new FramePool(1, 2, 2);
+        Frame frame = pool.acquire();
+
+        sink.onFrame(frame);
+        sink.onFrame(pool.acquire());
+
+        assertSame(failure, sink.getError());
+        assertEquals(0, sink.getFramesWritten());
+        assertEquals(2, sink.getFramesSkipped());
+        assertSame(frame, pool.acquire());
+    }
+
+    @Test
+    public void loopback_syntheticPipelineDeliversIntactFrames() throws InterruptedException {
+        final int frames = 300;
+        SyntheticFrameSource source = new SyntheticFrameSource(2, 160, 120);
+        byte[][] rgba = new byte[2][160 * 120 * 4];
+        CompositeStage stage = new CompositeStage(FrameConverter.SERIAL, new NV21Compositor(), 160, 120, 2, 6);
+        LoopbackVideoSink loopback = new LoopbackVideoSink();
+        CountingVideoSink counting = new CountingVideoSink();
+        SwitchableVideoSink sink = new SwitchableVideoSink(counting);
+        FramePipeline pipeline = new FramePipeline(new BlockingFrameQueue(3), sink);
+
+        pipeline.start();
+        for (int i = 0; i < frames; i++) {
+            if (i == frames / 3) {
+                sink.setSink(loopback); // Swapped while frames are in flight
+            }
+            Frame frame = stage.process(rgba, source.read(rgba));
+            loopback.expect(frame);
+            pipeline.submit(frame);
+        }
+        while (pipeline.getPublishedFrames() + pipeline.getDroppedFrames() < frames) {
+            Thread.sleep(1);
+        }
+        pipeline.stop();
+
+        assertEquals(pipeline.getPublishedFrames(), counting.getFrames() + loopback.getFrames());
+        assertTrue(loopback.getFrames() > 0);
+        assertEquals(0, loopback.getCorrupted());
+        assertEquals(0, loopback.getUnexpected());
+        assertEquals(loopback.getFrames(), loopback.getLatency().getTotal().getCount());
+    }
+}
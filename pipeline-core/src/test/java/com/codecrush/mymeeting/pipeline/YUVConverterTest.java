@@ -0,0 +1,110 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class YUVConverterTest {
+    private static final int[][] SIZES = {{2, 2}, {16, 8}, {64, 48}, {640, 480}, {1080, 2340}};
+
+    @Test
+    public void callerBuffer_matchesAllocatingConverter() {
+        for (int[] size : SIZES) {
+            byte[] rgba = LegacyYUVConverter.randomRgba(size[0], size[1], size[0] * 31L + size[1]);
+            byte[] expected = LegacyYUVConverter.rgbaToNV21(rgba, size[0], size[1]);
+
+            byte[] out = new byte[YUVConverter.nv21Size(size[0], size[1])];
+            YUVConverter.rgbaToNV21(rgba, size[0], size[1], out);
+
+            assertArrayEquals(size[0] + "x" + size[1], expected, out);
+            assertArrayEquals(expected, YUVConverter.rgbaToNV21(rgba, size[0], size[1]));
+        }
+    }
+
+    @Test
+    public void oddSizes_useTailLoopsWithLegacyEdgeRules() {
+        int[][] oddSizes = {{1, 1}, {1, 2}, {2, 1}, {3, 3}, {5, 4}, {4, 5}, {17, 9}, {641, 479}};
+        for (int[] size : oddSizes) {
+            byte[] rgba = LegacyYUVConverter.randomRgba(size[0], size[1], size[0] * 17L + size[1]);
+            byte[] expected = LegacyYUVConverter.rgbaToNV21(rgba, size[0], size[1]);
+
+            byte[] out = YUVConverter.rgbaToNV21(rgba, size[0], size[1]);
+
+            assertEquals(expected.length, YUVConverter.nv21Size(size[0], size[1]));
+            assertArrayEquals(size[0] + "x" + size[1], expected, out);
+        }
+    }
+
+    @Test
+    public void extremeColours_stayInLimitedRange() {
+        byte[] rgba = {0, 0, 0, -1, -1, -1, -1, -1, -1, 0, 0, -1, 0, -1, 0, -1};
+        byte[] out = YUVConverter.rgbaToNV21(rgba, 2, 2);
+        assertArrayEquals(LegacyYUVConverter.rgbaToNV21(rgba, 2, 2), out);
+        for (byte value : out) {
+            int v = value & 0xFF;
+            assertTrue(v >= 16 && v <= 240);
+        }
+    }
+
+    @Test
+    public void reusedBuffer_isFullyOverwritten() {
+        byte[] out = new byte[YUVConverter.nv21Size(64, 48)];
+        Arrays.fill(out, (byte) 0x5A);
+        byte[] rgba = LegacyYUVConverter.randomRgba(64, 48, 7);
+
+        YUVConverter.rgbaToNV21(rgba, 64, 48, out);
+
+        assertArrayEquals(LegacyYUVConverter.rgbaToNV21(rgba, 64, 48), out);
+    }
+
+    @Test
+    public void directBuffers_matchArrayConverter() {
+        int[][] sizes = {{2, 2}, {5, 3}, {64, 48}, {641, 479}};
+        for (int[] size : sizes) {
+            byte[] rgba = LegacyYUVConverter.randomRgba(size[0], size[1], size[0] * 7L + size[1]);
+            byte[] expected = LegacyYUVConverter.rgbaToNV21(rgba, size[0], size[1]);
+            ByteBuffer source = ByteBuffer.allocateDirect(rgba.length);
+            source.put(rgba);
+            ByteBuffer out = ByteBuffer.allocateDirect(expected.length);
+
+            YUVConverter.rgbaToNV21(source, size[0], size[1], out);
+
+            assertEquals(expected.length, out.position() + out.remaining()); // Positions untouched
+            assertArrayEquals(size[0] + "x" + size[1], expected, toArray(out));
+
+            YUVConverter.rgbaToNV12(source, size[0], size[1], out);
+
+            assertArrayEquals(size[0] + "x" + size[1], swapChroma(expected, size[0] * size[1]), toArray(out));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undersizedDirectBuffer_isRejected() {
+        YUVConverter.rgbaToNV21(ByteBuffer.allocateDirect(16 * 16 * 4), 16, 16, ByteBuffer.allocateDirect(16 * 16));
+    }
+
+    static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(i);
+        }
+        return bytes;
+    }
+
+    static byte[] swapChroma(byte[] nv21, int lumaSize) {
+        byte[] nv12 = nv21.clone();
+        for (int i = lumaSize; i + 1 < nv12.length; i += 2) {
+            nv12[i] = nv21[i + 1];
+            nv12[i + 1] = nv21[i];
+        }
+        return nv12;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undersizedBuffer_isRejected() {
+        YUVConverter.rgbaToNV21(new byte[16 * 16 * 4], 16, 16, new byte[16 * 16]);
+    }
+}
@@ -0,0 +1,103 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvOrientationTest {
+    @Test
+    public void rotate90_turnsTheImageClockwise() {
+        // 2x2 luma 1 2 / 3 4 becomes 3 1 / 4 2; the single chroma pair stays put
+        byte[] nv21 = {1, 2, 3, 4, 50, 60};
+        byte[] out = new byte[6];
+
+        YuvOrientation.transform(nv21, 2, 2, 90, false, out);
+
+        assertArrayEquals(new byte[]{3, 1, 4, 2, 50, 60}, out);
+    }
+
+    @Test
+    public void mirror_flipsColumns() {
+        byte[] nv21 = {1, 2, 3, 4, 5, 6, 7, 8, 10, 11, 12, 13};
+        byte[] out = new byte[nv21.length];
+
+        YuvOrientation.transform(nv21, 4, 2, 0, true, out);
+
+        assertArrayEquals(new byte[]{4, 3, 2, 1, 8, 7, 6, 5, 12, 13, 10, 11}, out);
+    }
+
+    @Test
+    public void everyRotationAndMirror_matchesCoordinateReference() {
+        for (int[] size : new int[][]{{6, 4}, {5, 3}, {7, 2}}) {
+            int width = size[0], height = size[1];
+            byte[] nv21 = new byte[YuvFormat.size(width, height)];
+            new Random(width * 31 + height).nextBytes(nv21);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    byte[] out = new byte[nv21.length];
+                    YuvOrientation.transform(nv21, width, height, rotation, mirror, out);
+                    assertArrayEquals(width + "x" + height + " " + rotation + " " + mirror,
+                            reference(nv21, width, height, rotation, mirror), out);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void uprightRotation_followsCamera2Convention() {
+        assertEquals(90, YuvOrientation.uprightRotation(90, 0, false));
+        assertEquals(0, YuvOrientation.uprightRotation(90, 90, false));
+        assertEquals(270, YuvOrientation.uprightRotation(270, 0, true));
+        assertEquals(0, YuvOrientation.uprightRotation(270, 90, true));
+        assertEquals(180, YuvOrientation.uprightRotation(90, 270, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void transform_rejectsOddAngles() {
+        YuvOrientation.transform(new byte[6], 2, 2, 45, false, new byte[6]);
+    }
+
+    /** Maps every output coordinate back to its source, one plane at a time. */
+    private static byte[] reference(byte[] in, int width, int height, int rotation, boolean mirror) {
+        int outWidth = YuvOrientation.rotatedWidth(width, height, rotation);
+        int outHeight = YuvOrientation.rotatedHeight(width, height, rotation);
+        byte[] out = new byte[in.length];
+        for (int y = 0; y < outHeight; y++) {
+            for (int x = 0; x < outWidth; x++) {
+                int[] source = source(x, y, outWidth, width, height, rotation, mirror);
+                out[y * outWidth + x] = in[source[1] * width + source[0]];
+            }
+        }
+        int cw = YuvFormat.chromaWidth(width), ch = YuvFormat.chromaHeight(height);
+        int outCw = YuvFormat.chromaWidth(outWidth), outCh = YuvFormat.chromaHeight(outHeight);
+        int chroma = width * height;
+        for (int y = 0; y < outCh; y++) {
+            for (int x = 0; x < outCw; x++) {
+                int[] source = source(x, y, outCw, cw, ch, rotation, mirror);
+                int from = chroma + 2 * (source[1] * cw + source[0]);
+                int to = chroma + 2 * (y * outCw + x);
+                out[to] = in[from];
+                out[to + 1] = in[from + 1];
+            }
+        }
+        return out;
+    }
+
+    private static int[] source(int x, int y, int outWidth, int width, int height, int rotation, boolean mirror) {
+        if (mirror) {
+            x = outWidth - 1 - x;
+        }
+        switch (rotation) {
+            case 90:
+                return new int[]{y, height - 1 - x};
+            case 180:
+                return new int[]{width - 1 - x, height - 1 - y};
+            case 270:
+                return new int[]{width - 1 - y, x};
+            default:
+                return new int[]{x, y};
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.codecrush.mymeeting.pipeline;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvPlaneAssemblerTest {
+    private static final int PADDING = 24;
+
+    @Test
+    public void planarImage_withRowPadding() {
+        assertAssembles(64, 48, Layout.PLANAR);
+    }
+
+    @Test
+    public void interleavedVuImage_usesSharedBuffer() {
+        assertAssembles(64, 48, Layout.VU);
+    }
+
+    @Test
+    public void interleavedUvImage_isReordered() {
+        assertAssembles(64, 48, Layout.UV);
+    }
+
+    @Test
+    public void oddDimensions() {
+        for (Layout layout : Layout.values()) {
+            assertAssembles(37, 23, layout);
+        }
+    }
+
+    @Test
+    public void separateBuffers_areNotMistakenForSharedMemory() {
+        ByteBuffer u = ByteBuffer.wrap(new byte[]{(byte) ~5});
+        ByteBuffer v = ByteBuffer.wrap(new byte[]{0, 5});
+        assertFalse(YuvPlaneAssembler.isInterleavedVu(u, v));
+        assertEquals(5, v.get(1));
+    }
+
+    private enum Layout { PLANAR, VU, UV }
+
+    /** Lays a random NV21 frame out the way a camera would, and checks it is packed back. */
+    private static void assertAssembles(int width, int height, Layout layout) {
+        byte[] expected = new byte[YuvFormat.size(width, height)];
+        new Random(width * 31 + layout.ordinal()).nextBytes(expected);
+        int chromaWidth = YuvFormat.chromaWidth(width);
+        int chromaHeight = YuvFormat.chromaHeight(height);
+
+        int yRowStride = width + PADDING;
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+        for (int row = 0; row < height; row++) {
+            y.position(row * yRowStride);
+            y.put(expected, row * width, width);
+        }
+
+        ByteBuffer u, v;
+        int pixelStride = layout == Layout.PLANAR ? 1 : 2;
+        int uvRowStride = chromaWidth * pixelStride + PADDING;
+        int planeBytes = uvRowStride * (chromaHeight - 1) + (chromaWidth - 1) * pixelStride + 1;
+        if (layout == Layout.PLANAR) {
+            u = ByteBuffer.allocateDirect(planeBytes);
+            v = ByteBuffer.allocateDirect(planeBytes);
+        } else {
+            ByteBuffer shared = ByteBuffer.allocateDirect(planeBytes + 1);
+            ByteBuffer first = slice(shared, 0, planeBytes);
+            ByteBuffer second = slice(shared, 1, planeBytes);
+            v = layout == Layout.VU ? first : second;
+            u = layout == Layout.VU ? second : first;
+        }
+        int ySize = width * height;
+        for (int row = 0; row < chromaHeight; row++) {
+            for (int col = 0; col < chromaWidth; col++) {
+                int src = ySize + (row * chromaWidth + col) * 2;
+                int dst = row * uvRowStride + col * pixelStride;
+                v.put(dst, expected[src]);
+                u.put(dst, expected[src + 1]);
+            }
+        }
+
+        byte[] nv21 = new byte[expected.length];
+        YuvPlaneAssembler.toNV21(y, yRowStride, u, v, uvRowStride, pixelStride, width, height, nv21);
+        assertArrayEquals(layout + " " + width + "x" + height, expected, nv21);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+}
@@ -0,0 +1,100 @@
+package com.codecrush.mymeeting.pipeline.metrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshot_readsCountersAndGaugesInRegistrationOrder() {
+        MetricsRegistry registry = new MetricsRegistry();
+        AtomicLong depth = new AtomicLong(3);
+        Counter pushed = registry.counter(PipelineMetrics.FRAMES_PUSHED);
+        registry.gauge(PipelineMetrics.QUEUE_DEPTH, depth::get);
+        pushed.increment();
+        pushed.add(4);
+        assertSame(pushed, registry.counter(PipelineMetrics.FRAMES_PUSHED));
+
+        MetricsSnapshot first = registry.snapshot();
+        depth.set(1);
+        MetricsSnapshot second = registry.snapshot();
+
+        assertEquals(Arrays.asList(PipelineMetrics.FRAMES_PUSHED, PipelineMetrics.QUEUE_DEPTH),
+                new ArrayList<>(first.getValues().keySet()));
+        assertEquals(5, first.get(PipelineMetrics.FRAMES_PUSHED));
+        assertEquals(3, first.get(PipelineMetrics.QUEUE_DEPTH));
+        assertEquals(1, second.get(PipelineMetrics.QUEUE_DEPTH)); // Earlier snapshots stay put
+        assertEquals("frames.pushed=5 queue.depth=3", first.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gaugeName_cannotBeReusedForCounter() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("depth", () -> 0);
+        registry.counter("depth");
+    }
+
+    @Test
+    public void counters_areExactUnderContention() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("events");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    counter.increment();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(200_000, registry.snapshot().get("events"));
+    }
+
+    @Test
+    public void inMemoryReporter_keepsEverySnapshot() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter produced = registry.counter(PipelineMetrics.FRAMES_PRODUCED);
+        InMemoryMetricsReporter reporter = new InMemoryMetricsReporter();
+        assertNull(reporter.getLatest());
+
+        registry.report(reporter);
+        produced.increment();
+        registry.report(reporter);
+
+        assertEquals(2, reporter.getSnapshots().size());
+        assertEquals(0, reporter.getSnapshots().get(0).get(PipelineMetrics.FRAMES_PRODUCED));
+        assertEquals(1, reporter.getLatest().get(PipelineMetrics.FRAMES_PRODUCED));
+    }
+
+    @Test
+    public void fileReporter_appendsOneLinePerSnapshot() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter(PipelineMetrics.FRAMES_DROPPED).add(2);
+        File file = new File(folder.getRoot(), "metrics.log");
+        FileMetricsReporter reporter = new FileMetricsReporter(file);
+
+        registry.report(reporter);
+        registry.report(reporter);
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(1), lines.get(1).matches("\\d+ frames\\.dropped=2"));
+    }
+}